@@ -0,0 +1,416 @@
+package edu.csye6225.neu.webapp.config;
+
+import edu.csye6225.neu.webapp.exception.UploadCapacityExceededException;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import edu.csye6225.neu.webapp.service.UploadMemoryBudget;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.tomcat.util.http.fileupload.FileItemIterator;
+import org.apache.tomcat.util.http.fileupload.FileItemStream;
+import org.apache.tomcat.util.http.fileupload.FileUpload;
+import org.apache.tomcat.util.http.fileupload.impl.FileUploadIOException;
+import org.apache.tomcat.util.http.fileupload.impl.SizeException;
+import org.apache.tomcat.util.http.fileupload.servlet.ServletRequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.multipart.MultipartException;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.multipart.MultipartResolver;
+import org.springframework.web.multipart.support.DefaultMultipartHttpServletRequest;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.util.WebUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Multipart parsing that keeps upload buffers within the process-wide {@link UploadMemoryBudget}.
+ * <p>
+ * The request body is read as a stream instead of being handed to the servlet container, so each
+ * part can be placed as it arrives: in heap chunks while the budget has permits, and in a temp
+ * file once it does not or the part outgrows the per-part limit. Spilled parts are read back
+ * through a {@link FileChannel}. Before anything is read the request is counted against the
+ * in-flight limit and refused with {@link UploadCapacityExceededException} if it does not fit.
+ * <p>
+ * Parsing is deferred until a handler first asks for the parts or parameters, so handlers that
+ * read the body themselves, such as streaming uploads, get it untouched.
+ */
+@Component(DispatcherServlet.MULTIPART_RESOLVER_BEAN_NAME)
+public class BudgetedMultipartResolver implements MultipartResolver {
+    private static final Logger logger = LoggerFactory.getLogger(BudgetedMultipartResolver.class);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    // Async handlers are dispatched a second time with the original request; the parsed request is
+    // kept here so that dispatch reuses it and cleans it up once the handler's result is written
+    private static final String PARSED_REQUEST_ATTRIBUTE = BudgetedMultipartResolver.class.getName() + ".PARSED";
+
+    private final UploadMemoryBudget budget;
+    private final MetricsService metricsService;
+    private final long maxFileSize;
+    private final long maxRequestSize;
+    private final Path spillDirectory;
+    private final long maxInMemoryPartBytes;
+
+    @Autowired
+    public BudgetedMultipartResolver(UploadMemoryBudget budget,
+                                     MetricsService metricsService,
+                                     MultipartProperties multipartProperties,
+                                     @Value("${app.uploads.memory.max-part-bytes:16777216}") long maxInMemoryPartBytes) {
+        this.budget = budget;
+        this.metricsService = metricsService;
+        this.maxFileSize = multipartProperties.getMaxFileSize().toBytes();
+        this.maxRequestSize = multipartProperties.getMaxRequestSize().toBytes();
+        this.spillDirectory = Path.of(StringUtils.hasText(multipartProperties.getLocation())
+                ? multipartProperties.getLocation()
+                : System.getProperty("java.io.tmpdir"));
+        this.maxInMemoryPartBytes = maxInMemoryPartBytes;
+    }
+
+    @Override
+    public boolean isMultipart(@NonNull HttpServletRequest request) {
+        return StringUtils.startsWithIgnoreCase(request.getContentType(), "multipart/");
+    }
+
+    @Override
+    @NonNull
+    public MultipartHttpServletRequest resolveMultipart(@NonNull HttpServletRequest request) throws MultipartException {
+        if (request.getAttribute(PARSED_REQUEST_ATTRIBUTE) instanceof BufferedMultipartRequest parsed) {
+            return parsed;
+        }
+        BufferedMultipartRequest parsed = new BufferedMultipartRequest(request);
+        request.setAttribute(PARSED_REQUEST_ATTRIBUTE, parsed);
+        return parsed;
+    }
+
+    // Reads the whole body into budgeted part buffers, counting it against the in-flight limit first
+    private void parse(BufferedMultipartRequest request) {
+        // Requests without a declared length are counted as their parts are read
+        long declaredLength = request.getContentLengthLong();
+        Admission admission = request.admission;
+        if (declaredLength >= 0) {
+            admission.admit(declaredLength);
+        } else {
+            admission.countIncrementally();
+        }
+
+        MultiValueMap<String, MultipartFile> files = new LinkedMultiValueMap<>();
+        Map<String, String[]> parameters = new HashMap<>();
+        Map<String, String> parameterContentTypes = new HashMap<>();
+        try {
+            FileUpload upload = new FileUpload();
+            upload.setFileSizeMax(maxFileSize);
+            upload.setSizeMax(maxRequestSize);
+            Charset charset = request.getCharacterEncoding() != null
+                    ? Charset.forName(request.getCharacterEncoding())
+                    : StandardCharsets.UTF_8;
+
+            FileItemIterator items = upload.getItemIterator(new ServletRequestContext(request));
+            while (items.hasNext()) {
+                FileItemStream item = items.next();
+                try (InputStream in = item.openStream()) {
+                    if (item.isFormField()) {
+                        String value = new String(in.readAllBytes(), charset);
+                        parameters.merge(item.getFieldName(), new String[]{value}, BudgetedMultipartResolver::append);
+                        parameterContentTypes.putIfAbsent(item.getFieldName(), item.getContentType());
+                    } else {
+                        BufferedMultipartFile part = new BufferedMultipartFile(item.getFieldName(), item.getName(),
+                                item.getContentType());
+                        request.parts.add(part);
+                        part.read(in, admission);
+                        files.add(part.getName(), part);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            request.release();
+            throw translate(e);
+        }
+
+        request.setParsed(files, parameters, parameterContentTypes);
+    }
+
+    @Override
+    public void cleanupMultipart(@NonNull MultipartHttpServletRequest request) {
+        BufferedMultipartRequest parsed = WebUtils.getNativeRequest(request, BufferedMultipartRequest.class);
+        if (parsed != null) {
+            parsed.release();
+            request.removeAttribute(PARSED_REQUEST_ATTRIBUTE);
+        }
+    }
+
+    private static String[] append(String[] existing, String[] added) {
+        String[] values = new String[existing.length + added.length];
+        System.arraycopy(existing, 0, values, 0, existing.length);
+        System.arraycopy(added, 0, values, existing.length, added.length);
+        return values;
+    }
+
+    private MultipartException translate(Exception e) {
+        Throwable cause = e instanceof FileUploadIOException ? e.getCause() : e;
+        if (cause instanceof SizeException sizeException) {
+            return new MaxUploadSizeExceededException(sizeException.getPermittedSize(), sizeException);
+        }
+        if (cause instanceof MultipartException multipartException) {
+            return multipartException;
+        }
+        return new MultipartException("Failed to parse multipart servlet request", cause);
+    }
+
+    /**
+     * The bytes one request has counted against the in-flight limit
+     */
+    private final class Admission {
+        private boolean incremental;
+        private long admitted;
+
+        void countIncrementally() {
+            incremental = true;
+        }
+
+        void admit(long bytes) {
+            if (!budget.tryAdmit(bytes)) {
+                throw new UploadCapacityExceededException(budget.retryAfter());
+            }
+            admitted += bytes;
+        }
+
+        void received(long bytes) {
+            if (incremental) {
+                admit(bytes);
+            }
+        }
+
+        void release() {
+            budget.releaseAdmission(admitted);
+            admitted = 0;
+        }
+    }
+
+    /**
+     * The multipart request, parsed on first access to its parts or parameters so that handlers
+     * that read the body themselves are never buffered. It owns the buffers of its parts until the
+     * dispatcher cleans it up.
+     */
+    private final class BufferedMultipartRequest extends DefaultMultipartHttpServletRequest {
+        private final List<BufferedMultipartFile> parts = new ArrayList<>();
+        private final Admission admission = new Admission();
+
+        BufferedMultipartRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        protected void initializeMultipart() {
+            // Left empty if parsing fails, so the consumed body is not parsed again
+            setParsed(new LinkedMultiValueMap<>(), Map.of(), Map.of());
+            parse(this);
+        }
+
+        void setParsed(MultiValueMap<String, MultipartFile> files, Map<String, String[]> parameters,
+                       Map<String, String> parameterContentTypes) {
+            setMultipartFiles(files);
+            setMultipartParameters(parameters);
+            setMultipartParameterContentTypes(parameterContentTypes);
+        }
+
+        void release() {
+            parts.forEach(BufferedMultipartFile::release);
+            parts.clear();
+            admission.release();
+        }
+    }
+
+    /**
+     * An uploaded file held in budgeted heap chunks or, once spilled, in a temp file
+     */
+    final class BufferedMultipartFile implements MultipartFile {
+        private final String name;
+        private final String originalFilename;
+        private final String contentType;
+        private final List<byte[]> chunks = new ArrayList<>();
+        private int reservedBytes;
+        private Path file;
+        private long size;
+        private boolean released;
+
+        BufferedMultipartFile(String name, String originalFilename, String contentType) {
+            this.name = name;
+            this.originalFilename = originalFilename;
+            this.contentType = contentType;
+        }
+
+        void read(InputStream in, Admission admission) throws IOException {
+            while (file == null) {
+                if (size + CHUNK_SIZE > maxInMemoryPartBytes || !budget.tryReserveMemory(CHUNK_SIZE)) {
+                    spill();
+                    break;
+                }
+                byte[] chunk = new byte[CHUNK_SIZE];
+                int read = in.readNBytes(chunk, 0, CHUNK_SIZE);
+                // Keep permits only for the bytes actually held
+                budget.releaseMemory(CHUNK_SIZE - read);
+                if (read == 0) {
+                    return;
+                }
+                chunks.add(read == CHUNK_SIZE ? chunk : Arrays.copyOf(chunk, read));
+                reservedBytes += read;
+                size += read;
+                admission.received(read);
+                if (read < CHUNK_SIZE) {
+                    return;
+                }
+            }
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                byte[] buffer = new byte[CHUNK_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    admission.received(read);
+                    ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                    size += read;
+                }
+            }
+        }
+
+        // Moves what is already in memory into a temp file and returns its permits
+        private void spill() throws IOException {
+            file = Files.createTempFile(spillDirectory, "upload-", ".part");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                for (byte[] chunk : chunks) {
+                    ByteBuffer bytes = ByteBuffer.wrap(chunk);
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                }
+            }
+            chunks.clear();
+            budget.releaseMemory(reservedBytes);
+            reservedBytes = 0;
+            metricsService.incrementApiCounter("uploads.spilled");
+            logger.debug("Spilled upload part {} to {}", originalFilename, file);
+        }
+
+        void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            chunks.clear();
+            budget.releaseMemory(reservedBytes);
+            reservedBytes = 0;
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    logger.warn("Failed to delete spilled upload part {}: {}", file, e.getMessage());
+                }
+            }
+        }
+
+        @Override
+        @NonNull
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return originalFilename;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        @NonNull
+        public byte[] getBytes() throws IOException {
+            try (InputStream in = getInputStream()) {
+                return in.readAllBytes();
+            }
+        }
+
+        @Override
+        @NonNull
+        public InputStream getInputStream() throws IOException {
+            if (released) {
+                throw new IOException("Upload part " + originalFilename + " has already been released");
+            }
+            if (file != null) {
+                return Channels.newInputStream(FileChannel.open(file, StandardOpenOption.READ));
+            }
+            List<InputStream> streams = new ArrayList<>(chunks.size());
+            for (byte[] chunk : chunks) {
+                streams.add(new ByteArrayInputStream(chunk));
+            }
+            return new SequenceInputStream(Collections.enumeration(streams));
+        }
+
+        @Override
+        public void transferTo(@NonNull File dest) throws IOException {
+            transferTo(dest.toPath());
+        }
+
+        @Override
+        public void transferTo(@NonNull Path dest) throws IOException {
+            if (file == null) {
+                try (OutputStream out = Files.newOutputStream(dest)) {
+                    for (byte[] chunk : chunks) {
+                        out.write(chunk);
+                    }
+                }
+                return;
+            }
+            try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(dest, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                long position = 0;
+                while (position < size) {
+                    position += source.transferTo(position, size - position, target);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package edu.csye6225.neu.webapp.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Sends connections for read-only transactions to the read replica and everything else to the
+ * primary.
+ * <p>
+ * Once a request has used the primary inside a read-write transaction, its later read-only
+ * transactions stay on the primary too, so a request never reads around its own write while the
+ * replica catches up. The lookup happens when a connection is first used, so this must sit behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: the transaction's
+ * read-only flag is only known after the transaction manager has asked for its connection.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public enum Target {
+        PRIMARY,
+        REPLICA
+    }
+
+    private static final String PRIMARY_PINNED = ReplicaRoutingDataSource.class.getName() + ".PRIMARY_PINNED";
+
+    /**
+     * Create a routing data source over the two pools, ready for use
+     *
+     * @param primary The pool for the primary
+     * @param replica The pool for the read replica
+     * @return The initialized data source
+     */
+    public static ReplicaRoutingDataSource create(DataSource primary, DataSource replica) {
+        ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource();
+        dataSource.setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+        dataSource.setDefaultTargetDataSource(primary);
+        dataSource.afterPropertiesSet();
+        return dataSource;
+    }
+
+    @Override
+    protected Target determineCurrentLookupKey() {
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            // Statements outside a transaction (schema updates, notifications) are not pinned
+            if (request != null && TransactionSynchronizationManager.isActualTransactionActive()) {
+                request.setAttribute(PRIMARY_PINNED, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+            }
+            return Target.PRIMARY;
+        }
+        if (request != null && request.getAttribute(PRIMARY_PINNED, RequestAttributes.SCOPE_REQUEST) != null) {
+            return Target.PRIMARY;
+        }
+        return Target.REPLICA;
+    }
+}
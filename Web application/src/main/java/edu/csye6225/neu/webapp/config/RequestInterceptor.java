@@ -1,6 +1,7 @@
 package edu.csye6225.neu.webapp.config;
 
 import edu.csye6225.neu.webapp.service.MetricsService;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
@@ -28,6 +29,11 @@ public class RequestInterceptor implements HandlerInterceptor {
             @NonNull HttpServletResponse response, 
             @NonNull Object handler
     ) {
+        // Async handlers are dispatched a second time when their result is ready; the request was already counted
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+        
         String method = request.getMethod();
         String path = request.getRequestURI();
         String queryString = request.getQueryString();
@@ -1,11 +1,17 @@
 package edu.csye6225.neu.webapp.config;
 
+import edu.csye6225.neu.webapp.service.S3ConnectionMetrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.time.Duration;
 
 @Configuration
 public class S3Config {
@@ -13,16 +19,45 @@ public class S3Config {
     @Value("${aws.region}")
     private String awsRegion;
 
+    @Value("${app.s3.async.max-concurrency:100}")
+    private int asyncMaxConcurrency;
+
+    @Value("${app.s3.async.connection-acquisition-timeout:30s}")
+    private Duration asyncConnectionAcquisitionTimeout;
+
     @Bean
-    public S3Client s3Client() {
+    public S3Client s3Client(S3ConnectionMetrics connectionMetrics) {
         // Use DefaultCredentialsProvider which will check for:
         // 1. Environment variables
         // 2. Java system properties
         // 3. AWS profile credentials
         // 4. EC2 Instance profile credentials
         return S3Client.builder()
+                .region(Region.of(awsRegion))
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .overrideConfiguration(config -> config.addMetricPublisher(connectionMetrics.publisher("sync")))
+                .build();
+    }
+
+    @Bean
+    public S3AsyncClient s3AsyncClient(S3ConnectionMetrics connectionMetrics) {
+        // Netty-based client: in-flight requests are bounded by connections, not by threads
+        return S3AsyncClient.builder()
+                .region(Region.of(awsRegion))
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(asyncMaxConcurrency)
+                        .connectionAcquisitionTimeout(asyncConnectionAcquisitionTimeout))
+                .overrideConfiguration(config -> config.addMetricPublisher(connectionMetrics.publisher("async")))
+                .build();
+    }
+
+    @Bean
+    public S3Presigner s3Presigner() {
+        // Presigning is a local signing operation, no request is sent to S3
+        return S3Presigner.builder()
                 .region(Region.of(awsRegion))
                 .credentialsProvider(DefaultCredentialsProvider.create())
                 .build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,18 @@
+package edu.csye6225.neu.webapp.controller;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Request body for starting a direct-to-S3 upload
+ *
+ * @param fileName The client's file name
+ * @param contentType The content type of the file
+ * @param sizeBytes The exact size of the file in bytes
+ * @param sha256 The hex encoded SHA-256 of the file
+ */
+public record DirectUploadRequest(
+        @JsonProperty("file_name") String fileName,
+        @JsonProperty("content_type") String contentType,
+        @JsonProperty("size_bytes") Long sizeBytes,
+        @JsonProperty("sha256") String sha256) {
+}
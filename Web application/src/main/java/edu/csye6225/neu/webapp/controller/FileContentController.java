@@ -0,0 +1,329 @@
+package edu.csye6225.neu.webapp.controller;
+
+import edu.csye6225.neu.webapp.entity.FileMetadata;
+import edu.csye6225.neu.webapp.service.FileService;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import edu.csye6225.neu.webapp.service.StoredContent;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import software.amazon.awssdk.http.Abortable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Streams file contents from S3 to the client.
+ * <p>
+ * Bytes are copied from the source stream to the servlet output with {@link InputStream#transferTo},
+ * which uses one fixed buffer for S3 responses and channel transfers for locally cached files, so
+ * memory use does not depend on file size. Single and multiple byte ranges, If-None-Match and
+ * If-Range are supported; HEAD requests are answered from the metadata alone.
+ * <p>
+ * Files stored compressed are sent as stored, with Content-Encoding, to clients whose Accept-Encoding
+ * allows it; everyone else, and every range request, gets the decoded bytes.
+ */
+@RestController
+@RequestMapping("/v1/file")
+public class FileContentController {
+    private static final Logger logger = LoggerFactory.getLogger(FileContentController.class);
+
+    // Requests asking for more ranges than this get the whole file, as RFC 9110 allows
+    private static final int MAX_RANGES = 16;
+
+    private final FileService fileService;
+    private final MetricsService metricsService;
+
+    @Autowired
+    public FileContentController(FileService fileService, MetricsService metricsService) {
+        this.fileService = fileService;
+        this.metricsService = metricsService;
+    }
+
+    private HttpHeaders getContentHeaders(FileMetadata metadata, String etag) {
+        HttpHeaders headers = new HttpHeaders();
+        // Revalidate instead of no-store, so clients can keep a copy and send If-None-Match
+        headers.setCacheControl("private, no-cache");
+        headers.set("X-Content-Type-Options", "nosniff");
+        headers.setETag(etag);
+        headers.setLastModified(metadata.getUploadDate().atZone(ZoneId.systemDefault()));
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.setContentDisposition(ContentDisposition.attachment()
+                .filename(metadata.getOriginalFileName(), StandardCharsets.UTF_8)
+                .build());
+        return headers;
+    }
+
+    @GetMapping("/{id}/content")
+    public void downloadFile(@PathVariable UUID id, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        logger.info("Received request to download file with ID: {}", id);
+        metricsService.incrementApiCounter("file_download");
+        Instant startTime = Instant.now();
+
+        try {
+            Optional<FileMetadata> found = fileService.getFileById(id);
+            if (found.isEmpty()) {
+                response.setStatus(HttpStatus.NOT_FOUND.value());
+                return;
+            }
+
+            FileMetadata metadata = found.get();
+            String encoding = metadata.getContentEncoding();
+            // Ranges always refer to the decoded bytes
+            boolean sendEncoded = encoding != null && request.getHeader(HttpHeaders.RANGE) == null
+                    && acceptsEncoding(request.getHeader(HttpHeaders.ACCEPT_ENCODING), encoding);
+            String etag = fileService.getContentETag(metadata);
+            if (sendEncoded) {
+                // Each content-coding is a different representation and needs its own strong validator
+                etag = etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+            }
+            long size = metadata.getSizeBytes();
+            getContentHeaders(metadata, etag).forEach((name, values) -> values.forEach(value ->
+                    response.addHeader(name, value)));
+            if (encoding != null) {
+                response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+
+            if (matchesETag(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+                metricsService.incrementApiCounter("file_download.not_modified");
+                response.setStatus(HttpStatus.NOT_MODIFIED.value());
+                return;
+            }
+
+            if (HttpMethod.HEAD.matches(request.getMethod())) {
+                response.setStatus(HttpStatus.OK.value());
+                response.setContentType(metadata.getContentType());
+                if (sendEncoded) {
+                    // The stored size is only known from the object itself, and HEAD may omit the length
+                    response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+                } else {
+                    response.setContentLengthLong(size);
+                }
+                return;
+            }
+
+            if (sendEncoded) {
+                metricsService.incrementApiCounter("file_download.precompressed");
+                writeEncoded(response, metadata, encoding);
+                return;
+            }
+
+            List<ByteRange> ranges = resolveRanges(request.getHeader(HttpHeaders.RANGE),
+                    request.getHeader(HttpHeaders.IF_RANGE), etag, size);
+            if (ranges == null) {
+                writeRange(response, metadata, new ByteRange(0, size - 1), HttpStatus.OK);
+            } else if (ranges.isEmpty()) {
+                logger.warn("Unsatisfiable range for file {}: {}", id, request.getHeader(HttpHeaders.RANGE));
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+            } else if (ranges.size() == 1) {
+                metricsService.incrementApiCounter("file_download.range");
+                writeRange(response, metadata, ranges.get(0), HttpStatus.PARTIAL_CONTENT);
+            } else {
+                metricsService.incrementApiCounter("file_download.multi_range");
+                writeRanges(response, metadata, ranges);
+            }
+        } catch (IllegalStateException e) {
+            // Metadata exists but the object does not; past the first part the response is already on its way
+            if (response.isCommitted()) {
+                throw e;
+            }
+            response.reset();
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+        } finally {
+            metricsService.timeApiExecution("file_download", Duration.between(startTime, Instant.now()).toMillis());
+        }
+    }
+
+    private void writeRange(HttpServletResponse response, FileMetadata metadata, ByteRange range, HttpStatus status)
+            throws IOException {
+        // Opened before the status is set, so a missing object can still become a 404
+        InputStream content = fileService.openContent(metadata, range.start(), range.end());
+
+        response.setStatus(status.value());
+        response.setContentType(metadata.getContentType());
+        response.setContentLengthLong(range.length());
+        if (status == HttpStatus.PARTIAL_CONTENT) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, contentRange(range, metadata.getSizeBytes()));
+        }
+
+        copy(content, response.getOutputStream());
+    }
+
+    private void writeEncoded(HttpServletResponse response, FileMetadata metadata, String encoding) throws IOException {
+        StoredContent stored = fileService.openStoredContent(metadata);
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(metadata.getContentType());
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+        response.setContentLengthLong(stored.length());
+
+        copy(stored.content(), response.getOutputStream());
+    }
+
+    private void writeRanges(HttpServletResponse response, FileMetadata metadata, List<ByteRange> ranges)
+            throws IOException {
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+
+        // Every part header is known up front, so the exact Content-Length can be sent
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = closing.length;
+        for (ByteRange range : ranges) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + metadata.getContentType() + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + contentRange(range, metadata.getSizeBytes()) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + range.length();
+        }
+
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+
+        OutputStream out = response.getOutputStream();
+        for (int i = 0; i < ranges.size(); i++) {
+            ByteRange range = ranges.get(i);
+            out.write(partHeaders.get(i));
+            copy(fileService.openContent(metadata, range.start(), range.end()), out);
+        }
+        out.write(closing);
+    }
+
+    private void copy(InputStream content, OutputStream out) throws IOException {
+        long copied = 0;
+        try {
+            copied = content.transferTo(out);
+        } catch (IOException e) {
+            // Usually the client went away; drop the S3 connection instead of draining the rest of the object
+            if (content instanceof Abortable abortable) {
+                abortable.abort();
+            }
+            throw e;
+        } finally {
+            metricsService.incrementCounter("file_download.bytes", copied);
+            try {
+                content.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close download stream", e);
+            }
+        }
+    }
+
+    /**
+     * Resolve the Range header against the file size
+     *
+     * @return null to serve the whole file, an empty list if no range can be satisfied, or the ranges to send
+     */
+    private static List<ByteRange> resolveRanges(String rangeHeader, String ifRange, String etag, long size) {
+        if (rangeHeader == null) {
+            return null;
+        }
+        // A stale (or date-based) If-Range validator means the client's partial copy is unusable
+        if (ifRange != null && !ifRange.trim().equals(etag)) {
+            return null;
+        }
+
+        List<HttpRange> parsed;
+        try {
+            parsed = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            // Malformed Range headers are ignored rather than rejected
+            return null;
+        }
+        if (parsed.isEmpty() || parsed.size() > MAX_RANGES) {
+            return null;
+        }
+
+        List<ByteRange> ranges = new ArrayList<>(parsed.size());
+        for (HttpRange range : parsed) {
+            long start = range.getRangeStart(size);
+            long end = range.getRangeEnd(size);
+            if (start < size && start <= end) {
+                ranges.add(new ByteRange(start, end));
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Whether an Accept-Encoding header allows the given coding, either by name or through "*"
+     */
+    private static boolean acceptsEncoding(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double wildcard = null;
+        for (String candidate : acceptEncoding.split(",")) {
+            String[] parts = candidate.trim().split(";");
+            String coding = parts[0].trim();
+            double quality = 1.0;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (coding.equalsIgnoreCase(encoding)) {
+                return quality > 0;
+            }
+            if (coding.equals("*")) {
+                wildcard = quality;
+            }
+        }
+        return wildcard != null && wildcard > 0;
+    }
+
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            // If-None-Match uses weak comparison
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String contentRange(ByteRange range, long size) {
+        return "bytes " + range.start() + "-" + range.end() + "/" + size;
+    }
+
+    private record ByteRange(long start, long end) {
+        long length() {
+            return end - start + 1;
+        }
+    }
+}
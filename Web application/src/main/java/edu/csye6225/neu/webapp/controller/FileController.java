@@ -1,8 +1,22 @@
 package edu.csye6225.neu.webapp.controller;
 
 import edu.csye6225.neu.webapp.entity.FileMetadata;
+import edu.csye6225.neu.webapp.exception.EmptyUploadException;
+import edu.csye6225.neu.webapp.exception.GlobalExceptionHandler;
+import edu.csye6225.neu.webapp.exception.UploadCapacityExceededException;
+import edu.csye6225.neu.webapp.repository.FileSummary;
+import edu.csye6225.neu.webapp.service.BatchUploadResult;
+import edu.csye6225.neu.webapp.service.DirectUpload;
+import edu.csye6225.neu.webapp.service.FilePage;
 import edu.csye6225.neu.webapp.service.FileService;
 import edu.csye6225.neu.webapp.service.MetricsService;
+import edu.csye6225.neu.webapp.service.UploadMemoryBudget;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.tomcat.util.http.fileupload.FileItemIterator;
+import org.apache.tomcat.util.http.fileupload.FileItemStream;
+import org.apache.tomcat.util.http.fileupload.FileUpload;
+import org.apache.tomcat.util.http.fileupload.impl.SizeException;
+import org.apache.tomcat.util.http.fileupload.servlet.ServletRequestContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,13 +29,20 @@ import org.springframework.web.HttpRequestMethodNotSupportedException;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
 
 @RestController
 @RequestMapping("/v1/file")
@@ -37,17 +58,32 @@ public class FileController {
         "text/plain", "text/csv", "application/json", "application/xml"
     );
     
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-fA-F]{64}");
+    
     // Maximum file size in bytes (default 10MB)
     @Value("${app.max-file-size:10485760}")
     private long maxFileSize;
 
+    // Maximum number of files accepted in one batch upload
+    @Value("${app.uploads.batch-max-files:100}")
+    private int maxBatchFiles;
+
+    // Page size of file listings when the client does not ask for one, and the largest allowed
+    @Value("${app.files.list.default-limit:100}")
+    private int defaultPageSize;
+
+    @Value("${app.files.list.max-limit:1000}")
+    private int maxPageSize;
+
     private final FileService fileService;
     private final MetricsService metricsService;
+    private final UploadMemoryBudget uploadBudget;
 
     @Autowired
-    public FileController(FileService fileService, MetricsService metricsService) {
+    public FileController(FileService fileService, MetricsService metricsService, UploadMemoryBudget uploadBudget) {
         this.fileService = fileService;
         this.metricsService = metricsService;
+        this.uploadBudget = uploadBudget;
     }
 
     private HttpHeaders getSecurityHeaders() {
@@ -58,57 +94,365 @@ public class FileController {
         return headers;
     }
 
+    // Format response according to API specification
+    private Map<String, Object> toResponse(FileMetadata metadata) {
+        return toResponse(metadata.getId(), metadata.getOriginalFileName(), metadata.getS3BucketPath(), metadata.getUploadDate());
+    }
+
+    private Map<String, Object> toResponse(FileSummary file) {
+        return toResponse(file.id(), file.originalFileName(), file.s3BucketPath(), file.uploadDate());
+    }
+
+    private static Map<String, Object> toResponse(UUID id, String fileName, String url, LocalDateTime uploadDate) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("id", id);
+        response.put("file_name", fileName);
+        response.put("url", url);
+        response.put("upload_date", uploadDate.toLocalDate().format(DateTimeFormatter.ISO_DATE));
+        return response;
+    }
+
+    // Validate an uploaded file, returning the error response or null if the file is acceptable
+    private ResponseEntity<Map<String, Object>> validateFile(MultipartFile file) {
+        return validateUpload(file.isEmpty(), file.getSize(), file.getContentType());
+    }
+
+    private ResponseEntity<Map<String, Object>> validateUpload(boolean empty, long size, String contentType) {
+        // Validate file is not empty
+        if (empty) {
+            logger.warn("Empty file upload attempt");
+            return ResponseEntity.badRequest()
+                    .headers(getSecurityHeaders())
+                    .body(Map.of("error", "File cannot be empty"));
+        }
+        
+        // Validate file size
+        if (size > maxFileSize) {
+            logger.warn("File size exceeds limit: {} bytes", size);
+            return payloadTooLarge();
+        }
+        
+        return validateContentType(contentType);
+    }
+
+    private ResponseEntity<Map<String, Object>> validateContentType(String contentType) {
+        // Validate content type for security
+        if (contentType == null || !ALLOWED_CONTENT_TYPES.contains(contentType.toLowerCase())) {
+            logger.warn("Unsupported content type: {}", contentType);
+            return ResponseEntity.badRequest()
+                    .headers(getSecurityHeaders())
+                    .body(Map.of("error", "File type not supported"));
+        }
+        
+        return null;
+    }
+
+    private ResponseEntity<Map<String, Object>> payloadTooLarge() {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                .headers(getSecurityHeaders())
+                .body(Map.of("error", "File size exceeds the maximum allowed limit of " + (maxFileSize / 1024 / 1024) + " MB"));
+    }
+
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<Map<String, Object>> uploadFile(@RequestParam("file") MultipartFile file) {
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> uploadFile(@RequestParam("file") MultipartFile file) {
         logger.info("Received file upload request for file: {}", file.getOriginalFilename());
         metricsService.incrementApiCounter("file_upload");
         
-        return metricsService.timeApiExecution("file_upload", () -> {
+        return metricsService.timeApiExecutionAsync("file_upload", () -> {
+            ResponseEntity<Map<String, Object>> rejection = validateFile(file);
+            if (rejection != null) {
+                return CompletableFuture.completedFuture(rejection);
+            }
+            
+            // The request thread is released while the S3 transfer is in flight
+            return fileService.uploadFileAsync(file)
+                    .thenApply(metadata -> {
+                        logger.info("File uploaded successfully: {}", metadata.getS3BucketPath());
+                        
+                        return ResponseEntity.status(HttpStatus.CREATED)
+                                .headers(getSecurityHeaders())
+                                .body(toResponse(metadata));
+                    })
+                    .exceptionally(e -> {
+                        logger.error("Failed to upload file", e);
+                        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                                .headers(getSecurityHeaders())
+                                .body(Map.of("error", "Failed to upload file: " + GlobalExceptionHandler.rootMessage(e)));
+                    });
+        });
+    }
+
+    /**
+     * Upload a file while the client is still sending it. The multipart body is read straight from
+     * the request as it arrives and passed on to S3 part by part, so nothing is buffered to disk and
+     * the S3 transfer overlaps the receive. The content type is checked from the part headers before
+     * any content is read, and the size limit is enforced as the bytes come in. The request is counted
+     * against the same in-flight limit as buffered uploads and refused with 503 if it does not fit.
+     */
+    @PostMapping(value = "/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Map<String, Object>> uploadFileStreaming(HttpServletRequest request) {
+        logger.info("Received streaming file upload request");
+        metricsService.incrementApiCounter("file_upload_stream");
+        
+        return metricsService.timeApiExecution("file_upload_stream", () -> {
+            StreamAdmission admission = new StreamAdmission(request.getContentLengthLong());
             try {
-                // Validate file is not empty
-                if (file.isEmpty()) {
-                    logger.warn("Empty file upload attempt");
-                    return ResponseEntity.badRequest()
+                FileUpload upload = new FileUpload();
+                upload.setFileSizeMax(maxFileSize);
+                FileItemIterator items = upload.getItemIterator(new ServletRequestContext(request));
+                while (items.hasNext()) {
+                    FileItemStream item = items.next();
+                    // Anything before the file part is skipped unread
+                    if (item.isFormField() || !"file".equals(item.getFieldName())) {
+                        continue;
+                    }
+                    
+                    ResponseEntity<Map<String, Object>> rejection = validateContentType(item.getContentType());
+                    if (rejection != null) {
+                        return rejection;
+                    }
+                    
+                    FileMetadata metadata = fileService.uploadStream(item.getName(),
+                            item.getContentType().toLowerCase(), admission.counted(item.openStream()));
+                    logger.info("File streamed successfully: {}", metadata.getS3BucketPath());
+                    
+                    return ResponseEntity.status(HttpStatus.CREATED)
                             .headers(getSecurityHeaders())
-                            .body(Map.of("error", "File cannot be empty"));
+                            .body(toResponse(metadata));
                 }
-                
-                // Validate file size
-                if (file.getSize() > maxFileSize) {
-                    logger.warn("File size exceeds limit: {} bytes", file.getSize());
-                    return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
-                            .headers(getSecurityHeaders())
-                            .body(Map.of("error", "File size exceeds the maximum allowed limit of " + (maxFileSize / 1024 / 1024) + " MB"));
+                return validateUpload(true, 0, null);
+            } catch (EmptyUploadException e) {
+                return validateUpload(true, 0, null);
+            } catch (Exception e) {
+                if (isSizeLimitExceeded(e)) {
+                    logger.warn("Streamed file exceeds the size limit");
+                    return payloadTooLarge();
                 }
-                
-                // Validate content type for security
-                String contentType = file.getContentType();
-                if (contentType == null || !ALLOWED_CONTENT_TYPES.contains(contentType.toLowerCase())) {
-                    logger.warn("Unsupported content type: {}", contentType);
-                    return ResponseEntity.badRequest()
-                            .headers(getSecurityHeaders())
-                            .body(Map.of("error", "File type not supported"));
+                UploadCapacityExceededException refused = capacityExceeded(e);
+                if (refused != null) {
+                    throw refused;
                 }
+                logger.error("Failed to stream file upload", e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .headers(getSecurityHeaders())
+                        .body(Map.of("error", "Failed to upload file: " + e.getMessage()));
+            } finally {
+                admission.release();
+            }
+        });
+    }
+
+    // A request without a declared length is refused part-way, inside whatever read the transfer made
+    private static UploadCapacityExceededException capacityExceeded(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof UploadCapacityExceededException refused) {
+                return refused;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The bytes a streaming upload has counted against the in-flight limit: the declared length up
+     * front, or the bytes as they are read when the request has none
+     */
+    private final class StreamAdmission {
+        private final boolean incremental;
+        private long admitted;
+
+        StreamAdmission(long declaredLength) {
+            incremental = declaredLength < 0;
+            if (!incremental) {
+                admit(declaredLength);
+            }
+        }
+
+        InputStream counted(InputStream in) {
+            if (!incremental) {
+                return in;
+            }
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        admit(1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    if (n > 0) {
+                        admit(n);
+                    }
+                    return n;
+                }
+            };
+        }
+
+        private void admit(long bytes) {
+            if (!uploadBudget.tryAdmit(bytes)) {
+                throw new UploadCapacityExceededException(uploadBudget.retryAfter());
+            }
+            admitted += bytes;
+        }
+
+        void release() {
+            uploadBudget.releaseAdmission(admitted);
+            admitted = 0;
+        }
+    }
+
+    // The size limit trips inside the part stream, wherever the read happened to be
+    private static boolean isSizeLimitExceeded(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SizeException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @PostMapping(value = "/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Map<String, Object>> uploadFiles(@RequestParam("files") List<MultipartFile> files) {
+        logger.info("Received batch upload request for {} files", files.size());
+        metricsService.incrementApiCounter("file_upload_batch");
+        
+        return metricsService.timeApiExecution("file_upload_batch", () -> {
+            if (files.isEmpty()) {
+                return ResponseEntity.badRequest()
+                        .headers(getSecurityHeaders())
+                        .body(Map.of("error", "At least one file is required"));
+            }
+            if (files.size() > maxBatchFiles) {
+                logger.warn("Batch upload of {} files exceeds the limit of {}", files.size(), maxBatchFiles);
+                return ResponseEntity.badRequest()
+                        .headers(getSecurityHeaders())
+                        .body(Map.of("error", "A batch may contain at most " + maxBatchFiles + " files"));
+            }
+            
+            // Invalid files are reported individually; the rest of the batch is still uploaded
+            List<Map<String, Object>> results = new ArrayList<>(Collections.nCopies(files.size(), null));
+            List<MultipartFile> accepted = new ArrayList<>();
+            List<Integer> acceptedIndexes = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                ResponseEntity<Map<String, Object>> rejection = validateFile(files.get(i));
+                if (rejection != null) {
+                    results.set(i, failureResponse(files.get(i).getOriginalFilename(), rejection.getBody().get("error")));
+                } else {
+                    accepted.add(files.get(i));
+                    acceptedIndexes.add(i);
+                }
+            }
+            
+            try {
+                if (!accepted.isEmpty()) {
+                    List<BatchUploadResult> uploaded = fileService.uploadFiles(accepted);
+                    for (int i = 0; i < uploaded.size(); i++) {
+                        BatchUploadResult result = uploaded.get(i);
+                        results.set(acceptedIndexes.get(i), result.isSuccess()
+                                ? toResponse(result.metadata())
+                                : failureResponse(result.originalFileName(), result.error()));
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("Failed to upload batch", e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .headers(getSecurityHeaders())
+                        .body(Map.of("error", "Failed to upload files: " + e.getMessage()));
+            }
+            
+            long failed = results.stream().filter(result -> result.containsKey("error")).count();
+            logger.info("Batch upload completed: {} stored, {} failed", files.size() - failed, failed);
+            
+            // 207 Multi-Status tells the client to inspect the per-file results
+            return ResponseEntity.status(failed == 0 ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS)
+                    .headers(getSecurityHeaders())
+                    .body(Map.of("files", results));
+        });
+    }
+
+    private Map<String, Object> failureResponse(String fileName, Object error) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("file_name", fileName);
+        response.put("error", error);
+        return response;
+    }
+
+    @PostMapping(value = "/presigned", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> initiateDirectUpload(@RequestBody DirectUploadRequest request) {
+        logger.info("Received direct upload request for file: {}", request.fileName());
+        metricsService.incrementApiCounter("file_upload_presigned");
+        
+        return metricsService.timeApiExecution("file_upload_presigned", () -> {
+            if (request.fileName() == null || request.fileName().isBlank()
+                    || request.sha256() == null || !SHA256_HEX.matcher(request.sha256()).matches()) {
+                return ResponseEntity.badRequest()
+                        .headers(getSecurityHeaders())
+                        .body(Map.of("error", "file_name and a hex encoded sha256 are required"));
+            }
+            long size = request.sizeBytes() != null ? request.sizeBytes() : 0;
+            ResponseEntity<Map<String, Object>> rejection = validateUpload(size <= 0, size, request.contentType());
+            if (rejection != null) {
+                return rejection;
+            }
+            
+            try {
+                DirectUpload upload = fileService.initiateDirectUpload(request.fileName(),
+                        request.contentType().toLowerCase(), size, request.sha256().toLowerCase());
                 
-                FileMetadata metadata = fileService.uploadFile(file);
-                logger.info("File uploaded successfully: {}", metadata.getS3BucketPath());
-                
-                // Format response according to API specification
                 Map<String, Object> response = new HashMap<>();
-                response.put("id", metadata.getId());
-                response.put("file_name", metadata.getOriginalFileName());
-                response.put("url", metadata.getS3BucketPath());
-                response.put("upload_date", metadata.getUploadDate().toLocalDate().format(DateTimeFormatter.ISO_DATE));
+                response.put("id", upload.metadata().getId());
+                response.put("file_name", upload.metadata().getOriginalFileName());
+                response.put("upload_required", upload.isUploadRequired());
+                if (upload.isUploadRequired()) {
+                    response.put("upload_url", upload.uploadUrl());
+                    response.put("upload_headers", upload.headers());
+                    response.put("expires_at", upload.expiresAt().toString());
+                }
                 
                 return ResponseEntity.status(HttpStatus.CREATED)
                         .headers(getSecurityHeaders())
                         .body(response);
+            } catch (Exception e) {
+                logger.error("Failed to start direct upload", e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .headers(getSecurityHeaders())
+                        .body(Map.of("error", "Failed to start upload: " + e.getMessage()));
+            }
+        });
+    }
+
+    @PostMapping("/{id}/confirm")
+    public ResponseEntity<Map<String, Object>> confirmDirectUpload(@PathVariable UUID id) {
+        logger.info("Received upload confirmation for ID: {}", id);
+        metricsService.incrementApiCounter("file_upload_confirm");
+        
+        return metricsService.timeApiExecution("file_upload_confirm", () -> {
+            try {
+                FileMetadata metadata = fileService.confirmDirectUpload(id);
+                logger.info("Direct upload confirmed: {}", metadata.getS3BucketPath());
                 
-            } catch (IOException e) {
-                logger.error("Failed to upload file", e);
+                return ResponseEntity.status(HttpStatus.CREATED)
+                        .headers(getSecurityHeaders())
+                        .body(toResponse(metadata));
+            } catch (IllegalArgumentException e) {
+                logger.warn("Pending upload not found with ID: {}", id);
+                return ResponseEntity.notFound()
+                        .headers(getSecurityHeaders())
+                        .build();
+            } catch (IllegalStateException e) {
+                logger.warn("Upload {} cannot be confirmed: {}", id, e.getMessage());
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .headers(getSecurityHeaders())
+                        .body(Map.of("error", e.getMessage()));
+            } catch (Exception e) {
+                logger.error("Failed to confirm upload with ID: {}", id, e);
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                         .headers(getSecurityHeaders())
-                        .body(Map.of("error", "Failed to upload file: " + e.getMessage()));
+                        .body(Map.of("error", "Failed to confirm upload: " + e.getMessage()));
             }
         });
     }
@@ -122,17 +466,11 @@ public class FileController {
             try {
                 return fileService.getFileById(id)
                         .map(metadata -> {
-                            // Format response according to API specification
-                            Map<String, Object> response = new HashMap<>();
-                            response.put("id", metadata.getId());
-                            response.put("file_name", metadata.getOriginalFileName());
-                            response.put("url", metadata.getS3BucketPath());
-                            response.put("upload_date", metadata.getUploadDate().toLocalDate().format(DateTimeFormatter.ISO_DATE));
                             logger.info("Retrieved file metadata for ID: {}", id);
                             
                             return ResponseEntity.ok()
                                     .headers(getSecurityHeaders())
-                                    .body(response);
+                                    .body(toResponse(metadata));
                         })
                         .orElse(ResponseEntity.notFound()
                                 .headers(getSecurityHeaders())
@@ -148,32 +486,36 @@ public class FileController {
     }
     
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteFile(@PathVariable UUID id) {
+    public CompletableFuture<ResponseEntity<Void>> deleteFile(@PathVariable UUID id) {
         logger.info("Received request to delete file with ID: {}", id);
         metricsService.incrementApiCounter("file_delete");
         
-        return metricsService.timeApiExecution("file_delete", () -> {
+        return metricsService.timeApiExecutionAsync("file_delete", () -> {
+            CompletableFuture<Void> deletion;
             try {
-                fileService.deleteFile(id);
-                logger.info("File deleted successfully with ID: {}", id);
-                
-                // Return 204 No Content as per API specification
-                return ResponseEntity.noContent()
-                        .headers(getSecurityHeaders())
-                        .build();
-                
+                deletion = fileService.deleteFileAsync(id);
             } catch (IllegalArgumentException e) {
                 logger.warn("File not found with ID: {}", id);
-                return ResponseEntity.notFound()
+                return CompletableFuture.completedFuture(ResponseEntity.notFound()
                         .headers(getSecurityHeaders())
-                        .build();
-                
-            } catch (Exception e) {
-                logger.error("Failed to delete file with ID: {}", id, e);
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                        .headers(getSecurityHeaders())
-                        .build();
+                        .build());
             }
+            
+            return deletion
+                    .thenApply(ignored -> {
+                        logger.info("File deleted successfully with ID: {}", id);
+                        
+                        // Return 204 No Content as per API specification
+                        return ResponseEntity.noContent()
+                                .headers(getSecurityHeaders())
+                                .<Void>build();
+                    })
+                    .exceptionally(e -> {
+                        logger.error("Failed to delete file with ID: {}", id, e);
+                        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                                .headers(getSecurityHeaders())
+                                .build();
+                    });
         });
     }
     
@@ -203,14 +545,42 @@ public class FileController {
                 .build();
     }
     
-    // Handle GET /v1/file (without id) which should return 400 Bad Request
+    // List files a page at a time; the cursor of each page is returned with the previous one
     @GetMapping
-    public ResponseEntity<Map<String, String>> getAllFiles() {
-        logger.warn("GET without ID is not supported");
+    public ResponseEntity<Map<String, Object>> listFiles(@RequestParam(required = false) String after,
+                                                         @RequestParam(required = false) Integer limit,
+                                                         @RequestParam(name = "content_type", required = false) String contentType) {
+        logger.info("Received request to list files after cursor: {}", after);
         metricsService.incrementApiCounter("file_get_all");
-        return ResponseEntity.badRequest()
-                .headers(getSecurityHeaders())
-                .build();
+
+        int pageSize = limit != null ? limit : defaultPageSize;
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            return ResponseEntity.badRequest()
+                    .headers(getSecurityHeaders())
+                    .body(Map.of("error", "limit must be between 1 and " + maxPageSize));
+        }
+
+        return metricsService.timeApiExecution("file_get_all", () -> {
+            try {
+                FilePage page = fileService.listFiles(after, pageSize, contentType);
+                Map<String, Object> response = new HashMap<>();
+                response.put("files", page.files().stream().map(this::toResponse).toList());
+                response.put("next_cursor", page.nextCursor());
+                return ResponseEntity.ok()
+                        .headers(getSecurityHeaders())
+                        .body(response);
+            } catch (IllegalArgumentException e) {
+                logger.warn("Invalid listing cursor: {}", after);
+                return ResponseEntity.badRequest()
+                        .headers(getSecurityHeaders())
+                        .body(Map.of("error", e.getMessage()));
+            } catch (Exception e) {
+                logger.error("Error listing files", e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .headers(getSecurityHeaders())
+                        .body(Map.of("error", "Failed to list files: " + e.getMessage()));
+            }
+        });
     }
     
     // Add this method to handle DELETE without ID
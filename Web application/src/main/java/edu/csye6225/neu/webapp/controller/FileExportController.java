@@ -0,0 +1,71 @@
+package edu.csye6225.neu.webapp.controller;
+
+import edu.csye6225.neu.webapp.service.FileExportService;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+
+/**
+ * Streams a dump of all file metadata for operations use, as NDJSON or CSV
+ */
+@RestController
+@RequestMapping("/v1/file")
+public class FileExportController {
+    private static final Logger logger = LoggerFactory.getLogger(FileExportController.class);
+
+    private final FileExportService fileExportService;
+    private final MetricsService metricsService;
+
+    @Autowired
+    public FileExportController(FileExportService fileExportService, MetricsService metricsService) {
+        this.fileExportService = fileExportService;
+        this.metricsService = metricsService;
+    }
+
+    @GetMapping("/export")
+    public void exportFiles(@RequestParam(defaultValue = "ndjson") String format, HttpServletResponse response)
+            throws IOException {
+        logger.info("Received request to export file metadata as {}", format);
+        metricsService.incrementApiCounter("file_export");
+        Instant startTime = Instant.now();
+
+        FileExportService.Format exportFormat;
+        try {
+            exportFormat = FileExportService.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "format must be ndjson or csv");
+            return;
+        }
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(exportFormat.contentType());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename("file-metadata." + exportFormat.extension()).build().toString());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+
+        try {
+            fileExportService.export(exportFormat, response.getOutputStream());
+        } catch (IOException | RuntimeException e) {
+            // The status is already sent, so the client only sees a truncated body
+            logger.error("File metadata export failed", e);
+            metricsService.incrementApiCounter("file_export.error");
+            throw e;
+        } finally {
+            metricsService.timeApiExecution("file_export", Duration.between(startTime, Instant.now()).toMillis());
+        }
+    }
+}
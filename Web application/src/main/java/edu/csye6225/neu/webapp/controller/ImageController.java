@@ -1,30 +1,47 @@
 package edu.csye6225.neu.webapp.controller;
 
+import edu.csye6225.neu.webapp.exception.GlobalExceptionHandler;
+import edu.csye6225.neu.webapp.service.ImageDerivativeService;
 import edu.csye6225.neu.webapp.service.S3Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 
-import java.io.IOException;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
 
 @RestController
 @RequestMapping("/api/images")
 public class ImageController {
     private static final Logger logger = LoggerFactory.getLogger(ImageController.class);
 
+    public static final String IMAGE_KEY_PREFIX = "images/";
+
+    // Names are generated on upload as a UUID plus the original extension
+    private static final Pattern IMAGE_NAME = Pattern.compile("[0-9a-f]{8}(-[0-9a-f]{4}){3}-[0-9a-f]{12}(\\.[A-Za-z0-9]+)?");
+
     private final S3Service s3Service;
+    private final ImageDerivativeService imageDerivativeService;
 
     @Autowired
-    public ImageController(S3Service s3Service) {
+    public ImageController(S3Service s3Service, ImageDerivativeService imageDerivativeService) {
         this.s3Service = s3Service;
+        this.imageDerivativeService = imageDerivativeService;
     }
 
     private HttpHeaders getSecurityHeaders() {
@@ -36,63 +53,113 @@ public class ImageController {
     }
 
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<Map<String, String>> uploadImage(@RequestParam("file") MultipartFile file) {
-        try {
-            if (file.isEmpty()) {
-                return ResponseEntity.badRequest()
-                        .headers(getSecurityHeaders())
-                        .body(Map.of("error", "File cannot be empty"));
-            }
-            
-            // Check if the file is an image
-            String contentType = file.getContentType();
-            if (contentType == null || !contentType.startsWith("image/")) {
-                return ResponseEntity.badRequest()
-                        .headers(getSecurityHeaders())
-                        .body(Map.of("error", "File must be an image"));
-            }
-            
-            // Upload to S3
-            String fileUrl = s3Service.uploadFile(file);
-            logger.info("File uploaded successfully: {}", fileUrl);
-            
-            Map<String, String> response = new HashMap<>();
-            response.put("message", "Image successfully uploaded");
-            response.put("url", fileUrl);
-            
-            return ResponseEntity.status(HttpStatus.CREATED)
+    public CompletableFuture<ResponseEntity<Map<String, String>>> uploadImage(@RequestParam("file") MultipartFile file) {
+        if (file.isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
                     .headers(getSecurityHeaders())
-                    .body(response);
-            
-        } catch (IOException e) {
-            logger.error("Failed to upload image", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "File cannot be empty")));
+        }
+        
+        // Check if the file is an image
+        String contentType = file.getContentType();
+        if (contentType == null || !contentType.startsWith("image/")) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
                     .headers(getSecurityHeaders())
-                    .body(Map.of("error", "Failed to upload image: " + e.getMessage()));
+                    .body(Map.of("error", "File must be an image")));
         }
+        
+        // Upload to S3 without holding the request thread. Images have no metadata rows,
+        // so they live under their own prefix that the reconciler leaves alone
+        String name = s3Service.generateUniqueFileName(file.getOriginalFilename());
+        String key = IMAGE_KEY_PREFIX + name;
+        return s3Service.uploadFileAsync(file, key)
+                .thenApply(fileUrl -> {
+                    logger.info("File uploaded successfully: {}", fileUrl);
+                    // Resized variants are generated in the background once the original is stored
+                    imageDerivativeService.submit(key, contentType);
+                    
+                    Map<String, String> response = new HashMap<>();
+                    response.put("message", "Image successfully uploaded");
+                    response.put("url", fileUrl);
+                    response.put("name", name);
+                    
+                    return ResponseEntity.status(HttpStatus.CREATED)
+                            .headers(getSecurityHeaders())
+                            .body(response);
+                })
+                .exceptionally(e -> {
+                    logger.error("Failed to upload image", e);
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .headers(getSecurityHeaders())
+                            .body(Map.of("error", "Failed to upload image: " + GlobalExceptionHandler.rootMessage(e)));
+                });
     }
     
-    @DeleteMapping("/delete")
-    public ResponseEntity<Map<String, String>> deleteImage(@RequestParam("url") String imageUrl) {
+    /**
+     * Serve an image, or the variant closest to the requested width in the smallest format the client
+     * accepts. Variants may not exist yet right after upload, in which case the original is served.
+     */
+    @GetMapping("/{name}")
+    public ResponseEntity<InputStreamResource> getImage(@PathVariable String name,
+                                                        @RequestParam(value = "w", required = false) Integer width,
+                                                        @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        if (!IMAGE_NAME.matcher(name).matches() || (width != null && width <= 0)) {
+            return ResponseEntity.badRequest().headers(getSecurityHeaders()).build();
+        }
+
+        List<MediaType> accepted;
         try {
-            if (imageUrl == null || imageUrl.isEmpty()) {
-                return ResponseEntity.badRequest()
-                        .headers(getSecurityHeaders())
-                        .body(Map.of("error", "Image URL cannot be empty"));
-            }
-            
-            s3Service.deleteFile(imageUrl);
-            logger.info("File deleted successfully: {}", imageUrl);
-            
-            return ResponseEntity.ok()
-                    .headers(getSecurityHeaders())
-                    .body(Map.of("message", "Image successfully deleted"));
-            
-        } catch (Exception e) {
-            logger.error("Failed to delete image", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+            accepted = accept != null ? MediaType.parseMediaTypes(accept) : List.of();
+        } catch (InvalidMediaTypeException e) {
+            accepted = List.of();
+        }
+
+        ResponseInputStream<GetObjectResponse> content =
+                imageDerivativeService.openVariant(IMAGE_KEY_PREFIX + name, width, accepted);
+        if (content == null) {
+            return ResponseEntity.notFound().headers(getSecurityHeaders()).build();
+        }
+
+        // Image keys are never reused, so the bytes behind a URL never change
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl(CacheControl.maxAge(Duration.ofDays(1)).cachePublic());
+        headers.setVary(List.of(HttpHeaders.ACCEPT));
+        headers.set("X-Content-Type-Options", "nosniff");
+        GetObjectResponse object = content.response();
+        if (object.contentType() != null) {
+            headers.setContentType(MediaType.parseMediaType(object.contentType()));
+        }
+        if (object.contentLength() != null) {
+            headers.setContentLength(object.contentLength());
+        }
+        return ResponseEntity.ok().headers(headers).body(new InputStreamResource(content));
+    }
+
+    @DeleteMapping("/delete")
+    public CompletableFuture<ResponseEntity<Map<String, String>>> deleteImage(@RequestParam("url") String imageUrl) {
+        if (imageUrl == null || imageUrl.isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
                     .headers(getSecurityHeaders())
-                    .body(Map.of("error", "Failed to delete image: " + e.getMessage()));
+                    .body(Map.of("error", "Image URL cannot be empty")));
         }
+        
+        String key = s3Service.extractKeyFromUrl(imageUrl);
+        return s3Service.deleteFileAsync(imageUrl)
+                .thenApply(ignored -> {
+                    logger.info("File deleted successfully: {}", imageUrl);
+                    if (key != null) {
+                        imageDerivativeService.deleteDerivatives(key);
+                    }
+                    
+                    return ResponseEntity.ok()
+                            .headers(getSecurityHeaders())
+                            .body(Map.of("message", "Image successfully deleted"));
+                })
+                .exceptionally(e -> {
+                    logger.error("Failed to delete image", e);
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .headers(getSecurityHeaders())
+                            .body(Map.of("error", "Failed to delete image: " + GlobalExceptionHandler.rootMessage(e)));
+                });
     }
-}
\ No newline at end of file
+}
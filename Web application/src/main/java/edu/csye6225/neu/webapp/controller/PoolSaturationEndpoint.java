@@ -0,0 +1,31 @@
+package edu.csye6225.neu.webapp.controller;
+
+import edu.csye6225.neu.webapp.service.PoolSaturation;
+import edu.csye6225.neu.webapp.service.PoolSaturationMonitor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Actuator endpoint ({@code /actuator/saturation}) listing the usage of the database, Tomcat and S3
+ * pools
+ */
+@Component
+@Endpoint(id = "saturation")
+public class PoolSaturationEndpoint {
+
+    private final PoolSaturationMonitor monitor;
+
+    @Autowired
+    public PoolSaturationEndpoint(PoolSaturationMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @ReadOperation
+    public List<PoolSaturation> saturation() {
+        return monitor.snapshot();
+    }
+}
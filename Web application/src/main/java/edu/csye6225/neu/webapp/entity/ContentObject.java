@@ -0,0 +1,51 @@
+package edu.csye6225.neu.webapp.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A distinct piece of uploaded content, stored once in S3 under a key derived from its SHA-256 digest
+ * and shared by every file_metadata row with the same digest
+ */
+@Entity
+@Table(name = "content_object", indexes = {
+    @Index(name = "uk_content_object_s3_key", columnList = "s3_key", unique = true)
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContentObject {
+    
+    @Id
+    @Column(name = "digest", length = 64)
+    private String digest;
+    
+    @Column(name = "s3_key", nullable = false)
+    private String s3Key;
+    
+    @Column(name = "size_bytes", nullable = false)
+    private Long sizeBytes;
+    
+    @Column(name = "crc32c", length = 12)
+    private String crc32c;
+    
+    // Fixed by the first upload of the content; later references read the bytes the same way
+    @Column(name = "content_encoding", length = 16)
+    private String contentEncoding;
+    
+    // Number of file_metadata rows (pending or committed) that point at this content
+    @Column(name = "ref_count", nullable = false)
+    private Long refCount;
+    
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+    
+    // Set when the last reference is dropped. The row stays behind as a tombstone until the object is
+    // deleted after commit, so the same content cannot be registered under the key meanwhile.
+    @Column(name = "deleting_since")
+    private LocalDateTime deletingSince;
+}
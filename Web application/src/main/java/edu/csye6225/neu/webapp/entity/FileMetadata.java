@@ -4,19 +4,29 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.UuidGenerator;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "file_metadata")
+@Table(name = "file_metadata", indexes = {
+    @Index(name = "idx_file_metadata_content_digest", columnList = "content_digest"),
+    @Index(name = "idx_file_metadata_status_upload_date_id", columnList = "status, upload_date, id"),
+    // Default collation, for equality lookups such as the backfill's existing-row check; the reconciler's
+    // byte-order scan has its own COLLATE "C" index
+    @Index(name = "idx_file_metadata_file_name", columnList = "file_name")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class FileMetadata {
     
+    // Time-ordered, so inserts append to the primary key index instead of splitting random pages
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @GeneratedValue
+    @UuidGenerator(algorithm = UuidV7.class)
     private UUID id;
     
     @Column(name = "file_name", nullable = false)
@@ -34,12 +44,28 @@ public class FileMetadata {
     @Column(name = "size_bytes", nullable = false)
     private Long sizeBytes;
     
+    // SHA-256 of the content, shared with every other upload of the same bytes; null for rows
+    // written before uploads were content-addressed
+    @Column(name = "content_digest", length = 64)
+    private String contentDigest;
+    
+    // Content-coding the object is stored in (gzip, zstd), or null if stored as uploaded;
+    // size_bytes is always the size of the original content
+    @Column(name = "content_encoding", length = 16)
+    private String contentEncoding;
+    
     @Column(name = "upload_date", nullable = false)
     private LocalDateTime uploadDate;
     
     @Column(name = "last_modified", nullable = false)
     private LocalDateTime lastModified;
     
+    // Rows written before two-phase uploads existed are already committed
+    @Enumerated(EnumType.STRING)
+    @ColumnDefault("'COMMITTED'")
+    @Column(name = "status", nullable = false, length = 16)
+    private UploadStatus status = UploadStatus.PENDING;
+    
     @PrePersist
     protected void onCreate() {
         uploadDate = LocalDateTime.now();
@@ -3,6 +3,10 @@ package edu.csye6225.neu.webapp.entity;
 import jakarta.persistence.*;
 import java.util.Date;
 
+/**
+ * A deep health probe's row; the table is partitioned by day on {@code datetime} and expired days
+ * are dropped by {@link edu.csye6225.neu.webapp.service.HealthCheckPartitionManager}
+ */
 @Entity
 @Table(name="health_check")
 public class HealthCheck {
@@ -0,0 +1,10 @@
+package edu.csye6225.neu.webapp.entity;
+
+/**
+ * Lifecycle of a file upload. A row is PENDING while its object is being transferred to S3
+ * and becomes COMMITTED once the object is stored; only COMMITTED files are visible.
+ */
+public enum UploadStatus {
+    PENDING,
+    COMMITTED
+}
@@ -0,0 +1,96 @@
+package edu.csye6225.neu.webapp.entity;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.uuid.UuidValueGenerator;
+
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Time-ordered UUIDs (version 7, RFC 9562): 48 bits of Unix milliseconds, a 12-bit counter and 62
+ * random bits.
+ * <p>
+ * New IDs sort after older ones, so primary key inserts append to the right edge of the B-tree
+ * instead of landing on a random page. IDs are strictly increasing within the process: the counter
+ * orders IDs created in the same millisecond, starting low enough to leave room for bursts, and when
+ * it runs out (or the clock steps back) the timestamp is carried forward. The random bits come from
+ * {@link SecureRandom}, so IDs stay as hard to guess as version 4 apart from their creation time.
+ * <p>
+ * Used as the Hibernate generator through {@code @UuidGenerator(algorithm = UuidV7.class)}; every
+ * instance draws from the same sequence as {@link #generate()}.
+ */
+public class UuidV7 implements UuidValueGenerator {
+
+    private static final int MAX_COUNTER = 0xFFF;
+    private static final int COUNTER_START_BOUND = 0x400;
+
+    private static final UuidV7 SHARED = new UuidV7();
+
+    private final LongSupplier clock;
+    private final Random random;
+    private long lastMillis = -1;
+    private int counter;
+
+    public UuidV7() {
+        this(System::currentTimeMillis, new SecureRandom());
+    }
+
+    public UuidV7(LongSupplier clock, Random random) {
+        this.clock = clock;
+        this.random = random;
+    }
+
+    /**
+     * Create the next ID of the process-wide sequence
+     */
+    public static UUID generate() {
+        return SHARED.next();
+    }
+
+    /**
+     * The creation time encoded in a version 7 UUID
+     *
+     * @param uuid The UUID
+     * @return Its timestamp, to the millisecond
+     */
+    public static Instant timestamp(UUID uuid) {
+        if (uuid.version() != 7) {
+            throw new IllegalArgumentException("Not a version 7 UUID: " + uuid);
+        }
+        return Instant.ofEpochMilli(uuid.getMostSignificantBits() >>> 16);
+    }
+
+    // Hibernate creates its own instance, but entity IDs are taken from the shared sequence
+    @Override
+    public UUID generateUuid(SharedSessionContractImplementor session) {
+        return generate();
+    }
+
+    /**
+     * Create the next ID of this instance's sequence
+     */
+    public UUID next() {
+        // Drawn outside the lock; only the timestamp and counter need to be ordered
+        long randomBits = random.nextLong();
+        long millis;
+        int sequence;
+        synchronized (this) {
+            long now = clock.getAsLong();
+            if (now > lastMillis) {
+                lastMillis = now;
+                counter = random.nextInt(COUNTER_START_BOUND);
+            } else if (++counter > MAX_COUNTER) {
+                lastMillis++;
+                counter = 0;
+            }
+            millis = lastMillis;
+            sequence = counter;
+        }
+        long mostSigBits = (millis << 16) | 0x7000L | sequence;
+        long leastSigBits = (randomBits & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+}
@@ -0,0 +1,13 @@
+package edu.csye6225.neu.webapp.exception;
+
+/**
+ * Thrown when an upload turns out to have no content, which for streamed uploads is only known
+ * once the whole body has been read
+ */
+public class EmptyUploadException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    public EmptyUploadException() {
+        super("File is empty or null");
+    }
+}
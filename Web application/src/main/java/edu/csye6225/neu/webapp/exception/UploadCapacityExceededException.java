@@ -0,0 +1,23 @@
+package edu.csye6225.neu.webapp.exception;
+
+import org.springframework.web.multipart.MultipartException;
+
+import java.time.Duration;
+
+/**
+ * Thrown when an upload is refused because the bytes already being received are at the limit
+ */
+public class UploadCapacityExceededException extends MultipartException {
+    private static final long serialVersionUID = 1L;
+
+    private final Duration retryAfter;
+
+    public UploadCapacityExceededException(Duration retryAfter) {
+        super("Too many uploads in progress");
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
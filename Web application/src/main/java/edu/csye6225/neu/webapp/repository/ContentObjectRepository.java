@@ -0,0 +1,56 @@
+package edu.csye6225.neu.webapp.repository;
+
+import edu.csye6225.neu.webapp.entity.ContentObject;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Optional;
+
+@Repository
+public interface ContentObjectRepository extends JpaRepository<ContentObject, String> {
+    
+    // Insert the content with one reference, or take another reference if it exists; returns the new count,
+    // or null if the content is a tombstone whose object is still being deleted
+    @Transactional
+    @Query(value = "INSERT INTO content_object (digest, s3_key, size_bytes, crc32c, content_encoding, ref_count, created_at) "
+            + "VALUES (:digest, :s3Key, :sizeBytes, :crc32c, :contentEncoding, 1, now()) "
+            + "ON CONFLICT (digest) DO UPDATE SET ref_count = content_object.ref_count + 1 "
+            + "WHERE content_object.deleting_since IS NULL "
+            + "RETURNING ref_count", nativeQuery = true)
+    Long addReference(@Param("digest") String digest,
+                      @Param("s3Key") String s3Key,
+                      @Param("sizeBytes") long sizeBytes,
+                      @Param("crc32c") String crc32c,
+                      @Param("contentEncoding") String contentEncoding);
+    
+    // Drop the same number of references from each digest, for rows removed in bulk
+    @Transactional
+    @Modifying
+    @Query("update ContentObject c set c.refCount = c.refCount - :count where c.digest in :digests")
+    int releaseReferences(@Param("digests") Collection<String> digests, @Param("count") long count);
+    
+    @Transactional
+    @Modifying
+    @Query("delete from ContentObject c where c.digest in :digests and c.refCount <= 0 and c.deletingSince is null")
+    int deleteUnreferenced(@Param("digests") Collection<String> digests);
+    
+    @Query("select c.deletingSince from ContentObject c where c.digest = :digest")
+    Optional<LocalDateTime> findDeletingSince(@Param("digest") String digest);
+    
+    @Transactional
+    @Modifying
+    @Query("delete from ContentObject c where c.digest = :digest and c.deletingSince <= :before")
+    int deleteTombstone(@Param("digest") String digest, @Param("before") LocalDateTime before);
+    
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from ContentObject c where c.digest = :digest")
+    Optional<ContentObject> findForUpdate(@Param("digest") String digest);
+}
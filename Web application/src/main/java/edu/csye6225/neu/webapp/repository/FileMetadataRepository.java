@@ -1,16 +1,112 @@
 package edu.csye6225.neu.webapp.repository;
 
 import edu.csye6225.neu.webapp.entity.FileMetadata;
+import edu.csye6225.neu.webapp.entity.UploadStatus;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
+// Reads run in read-only transactions, so Hibernate keeps no snapshots of loaded rows and skips
+// dirty checking and flushing; writes declare their own transactions
 @Repository
+@Transactional(readOnly = true)
 public interface FileMetadataRepository extends JpaRepository<FileMetadata, UUID> {
     
-    Optional<FileMetadata> findByS3BucketPath(String s3BucketPath);
+    Optional<FileMetadata> findByIdAndStatus(UUID id, UploadStatus status);
     
-    void deleteByS3BucketPath(String s3BucketPath);
-}
\ No newline at end of file
+    // Keyset pages in (upload_date, id) order, seeking idx_file_metadata_status_upload_date_id
+    // instead of skipping rows, so every page costs the same however deep it is
+    @Query("select new edu.csye6225.neu.webapp.repository.FileSummary(f.id, f.originalFileName, f.s3BucketPath, f.uploadDate) "
+            + "from FileMetadata f where f.status = :status "
+            + "and (:contentType is null or f.contentType = :contentType) "
+            + "order by f.uploadDate, f.id")
+    List<FileSummary> findFirstPage(@Param("status") UploadStatus status,
+                                    @Param("contentType") String contentType,
+                                    Pageable pageable);
+    
+    @Query("select new edu.csye6225.neu.webapp.repository.FileSummary(f.id, f.originalFileName, f.s3BucketPath, f.uploadDate) "
+            + "from FileMetadata f where f.status = :status "
+            + "and (f.uploadDate, f.id) > (:afterDate, :afterId) "
+            + "and (:contentType is null or f.contentType = :contentType) "
+            + "order by f.uploadDate, f.id")
+    List<FileSummary> findPageAfter(@Param("status") UploadStatus status,
+                                    @Param("afterDate") LocalDateTime afterDate,
+                                    @Param("afterId") UUID afterId,
+                                    @Param("contentType") String contentType,
+                                    Pageable pageable);
+    
+    // All rows with the status through a server-side cursor: with a fetch size inside a transaction
+    // the Postgres driver fetches that many rows at a time instead of the whole result
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select f from FileMetadata f where f.status = :status order by f.uploadDate, f.id")
+    Stream<FileMetadata> streamByStatus(@Param("status") UploadStatus status);
+    
+    // lastModified doubles as the lease of a PENDING row; see touch
+    List<FileMetadata> findByStatusAndLastModifiedBefore(UploadStatus status, LocalDateTime cutoff, Pageable pageable);
+    
+    // Renews the lease of rows still in the given status, leaving rows that moved on untouched
+    @Transactional
+    @Modifying
+    @Query("update FileMetadata f set f.lastModified = :now where f.id in :ids and f.status = :status")
+    int touch(@Param("ids") Collection<UUID> ids, @Param("status") UploadStatus status, @Param("now") LocalDateTime now);
+    
+    // Returns the number of rows removed, so that of two concurrent deletes of a row only one goes on
+    // to drop its content reference
+    @Transactional
+    @Modifying
+    @Query("delete from FileMetadata f where f.id = :id")
+    int deleteRow(@Param("id") UUID id);
+    
+    // As deleteRow, but only while the row has the given status, so a sweep never removes a row that
+    // was committed after it was read
+    @Transactional
+    @Modifying
+    @Query("delete from FileMetadata f where f.id = :id and f.status = :status")
+    int deleteRowInStatus(@Param("id") UUID id, @Param("status") UploadStatus status);
+    
+    // Status changes only move rows out of PENDING, so a commit and a sweep of the same row exclude
+    // each other: whichever runs second finds nothing to change
+    @Transactional
+    @Modifying
+    @Query("update FileMetadata f set f.status = :status, f.lastModified = :now "
+            + "where f.id = :id and f.status = edu.csye6225.neu.webapp.entity.UploadStatus.PENDING")
+    int updateStatus(@Param("id") UUID id, @Param("status") UploadStatus status, @Param("now") LocalDateTime now);
+    
+    @Transactional
+    @Modifying
+    @Query("update FileMetadata f set f.status = :status, f.lastModified = :now "
+            + "where f.id in :ids and f.status = edu.csye6225.neu.webapp.entity.UploadStatus.PENDING")
+    int updateStatusIn(@Param("ids") List<UUID> ids, @Param("status") UploadStatus status, @Param("now") LocalDateTime now);
+    
+    // Distinct keys in byte order (COLLATE "C"), which is the order ListObjectsV2 returns keys in;
+    // served by the reconciler's idx_file_metadata_file_name_c
+    @Query(value = "SELECT DISTINCT file_name COLLATE \"C\" AS file_name FROM file_metadata "
+            + "WHERE file_name COLLATE \"C\" > :after ORDER BY 1 LIMIT :limit", nativeQuery = true)
+    List<String> findKeysAfter(@Param("after") String after, @Param("limit") int limit);
+    
+    // Returns the content digest of each deleted row (null for rows that own their object) so the
+    // caller can drop the content references in the same transaction
+    @Transactional
+    @Query(value = "DELETE FROM file_metadata WHERE file_name COLLATE \"C\" IN (:keys) AND status = :status "
+            + "AND upload_date < :cutoff RETURNING content_digest", nativeQuery = true)
+    List<String> deleteByKeys(@Param("keys") List<String> keys,
+                              @Param("status") String status,
+                              @Param("cutoff") LocalDateTime cutoff);
+}
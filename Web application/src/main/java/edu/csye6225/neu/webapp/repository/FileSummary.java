@@ -0,0 +1,16 @@
+package edu.csye6225.neu.webapp.repository;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * The columns of a file_metadata row that file listings return, selected directly into a record so
+ * listing rows are never hydrated or tracked as entities
+ *
+ * @param id The file ID
+ * @param originalFileName The name the file was uploaded with
+ * @param s3BucketPath The URL of the stored object
+ * @param uploadDate When the file was uploaded
+ */
+public record FileSummary(UUID id, String originalFileName, String s3BucketPath, LocalDateTime uploadDate) {
+}
@@ -0,0 +1,25 @@
+package edu.csye6225.neu.webapp.service;
+
+import edu.csye6225.neu.webapp.entity.FileMetadata;
+
+/**
+ * Outcome of one file in a batch upload: either the committed metadata or the reason it failed
+ *
+ * @param originalFileName The file name sent by the client
+ * @param metadata The committed metadata, or null if the file failed
+ * @param error The failure message, or null if the file was stored
+ */
+public record BatchUploadResult(String originalFileName, FileMetadata metadata, String error) {
+
+    public static BatchUploadResult success(FileMetadata metadata) {
+        return new BatchUploadResult(metadata.getOriginalFileName(), metadata, null);
+    }
+
+    public static BatchUploadResult failure(String originalFileName, String error) {
+        return new BatchUploadResult(originalFileName, null, error);
+    }
+
+    public boolean isSuccess() {
+        return metadata != null;
+    }
+}
@@ -0,0 +1,258 @@
+package edu.csye6225.neu.webapp.service;
+
+import edu.csye6225.neu.webapp.entity.FileMetadata;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the per-instance file caches consistent across the fleet using Postgres LISTEN/NOTIFY, so
+ * no broker is needed beyond the database every instance already shares.
+ * <p>
+ * A deletion is applied to the local caches and then published with {@code pg_notify}. Each
+ * instance listens on a dedicated connection outside the pool and applies the events it receives,
+ * including its own. Every event takes the next value of an epoch sequence; notifications sent while
+ * an instance was disconnected are lost, so on (re)connect it compares the sequence with the last
+ * epoch it applied and drops all cached metadata if it missed anything.
+ */
+@Service
+public class CacheInvalidationBus {
+    private static final Logger logger = LoggerFactory.getLogger(CacheInvalidationBus.class);
+
+    private static final ResultSetExtractor<Void> IGNORE_RESULT = rs -> null;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FileMetadataCache metadataCache;
+    private final ContentCache contentCache;
+    private final MetricsService metricsService;
+    private final boolean enabled;
+    private final String channel;
+    private final String epochSequence;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final Duration pollTimeout;
+    private final Duration reconnectDelay;
+
+    private final ExecutorService listenerExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cache-invalidation-listener");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Highest epoch applied by this instance, -1 until the first connect
+    private volatile long appliedEpoch = -1;
+    private volatile Connection listenerConnection;
+    private volatile boolean running;
+
+    @Autowired
+    public CacheInvalidationBus(JdbcTemplate jdbcTemplate,
+                                FileMetadataCache metadataCache,
+                                ContentCache contentCache,
+                                MetricsService metricsService,
+                                @Value("${app.cache.invalidation.enabled:true}") boolean enabled,
+                                @Value("${app.cache.invalidation.channel:file_cache}") String channel,
+                                @Value("${spring.datasource.url:}") String url,
+                                @Value("${spring.datasource.username:}") String username,
+                                @Value("${spring.datasource.password:}") String password,
+                                @Value("${app.cache.invalidation.poll-timeout:PT10S}") Duration pollTimeout,
+                                @Value("${app.cache.invalidation.reconnect-delay:PT5S}") Duration reconnectDelay) {
+        if (!channel.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalArgumentException("Invalid invalidation channel name: " + channel);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.metadataCache = metadataCache;
+        this.contentCache = contentCache;
+        this.metricsService = metricsService;
+        this.enabled = enabled;
+        this.channel = channel;
+        this.epochSequence = channel + "_epoch";
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.pollTimeout = pollTimeout;
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            logger.info("Cache invalidation bus disabled; caches are only invalidated locally");
+            return;
+        }
+        running = true;
+        listenerExecutor.submit(this::listen);
+        logger.info("Cache invalidation bus listening on channel {}", channel);
+    }
+
+    /**
+     * Drop a deleted file from the caches of every instance
+     *
+     * @param metadata The deleted file
+     */
+    public void fileDeleted(FileMetadata metadata) {
+        metadataCache.invalidate(metadata.getId());
+        contentCache.invalidate(metadata.getFileName());
+        String event = metadata.getId() + ":" + metadata.getFileName();
+        publish("SELECT pg_notify(?, nextval('" + epochSequence + "') || ':' || ?)", event, event);
+    }
+
+    /**
+     * Drop the files stored under the given keys from the caches of every instance, for rows that
+     * were deleted by key rather than by ID. The whole batch is published in one statement, still
+     * as one event per key so that no payload can outgrow the notification size limit
+     *
+     * @param keys The object keys
+     */
+    public void keysDeleted(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        List<String> deleted = List.copyOf(keys);
+        metadataCache.invalidateKeys(deleted);
+        deleted.forEach(contentCache::invalidate);
+        publish("SELECT pg_notify(?, nextval('" + epochSequence + "') || '::' || key) FROM unnest(?::text[]) AS key",
+                deleted.toArray(String[]::new), deleted.size() + " deleted keys");
+    }
+
+    /**
+     * Apply an event received from the channel; the payload is {@code <epoch>:<file id>:<key>},
+     * where the file ID is empty for deletions by key
+     *
+     * @param payload The notification payload
+     */
+    public void onNotification(String payload) {
+        String[] parts = payload.split(":", 3);
+        if (parts.length != 3) {
+            logger.warn("Ignoring malformed cache invalidation event: {}", payload);
+            return;
+        }
+        if (parts[1].isEmpty()) {
+            metadataCache.invalidateKeys(List.of(parts[2]));
+        } else {
+            metadataCache.invalidate(UUID.fromString(parts[1]));
+        }
+        contentCache.invalidate(parts[2]);
+        appliedEpoch = Math.max(appliedEpoch, Long.parseLong(parts[0]));
+        metricsService.incrementApiCounter("cache.invalidation.received");
+    }
+
+    /**
+     * Resynchronize after (re)connecting: if the epoch sequence moved past the last applied event,
+     * events were missed while this instance was not listening and all cached metadata is dropped
+     *
+     * @param currentEpoch The epoch sequence's current value, read after LISTEN was issued
+     */
+    public void onConnected(long currentEpoch) {
+        if (currentEpoch != appliedEpoch) {
+            logger.info("Cache invalidation epoch is {} but {} was last applied; dropping cached metadata",
+                    currentEpoch, appliedEpoch);
+            metadataCache.invalidateAll();
+            metricsService.incrementApiCounter("cache.invalidation.resync");
+        }
+        appliedEpoch = currentEpoch;
+    }
+
+    private void publish(String sql, Object events, String description) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            // Best effort: the deletion has already committed, and other instances fall back to the
+            // cache TTL or the epoch check on their next reconnect
+            jdbcTemplate.query(sql, IGNORE_RESULT, channel, events);
+            metricsService.incrementApiCounter("cache.invalidation.published");
+        } catch (RuntimeException e) {
+            logger.warn("Failed to publish cache invalidation {}", description, e);
+            metricsService.incrementApiCounter("cache.invalidation.publish_error");
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                listenerConnection = connection;
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("CREATE SEQUENCE IF NOT EXISTS " + epochSequence);
+                    statement.execute("LISTEN " + channel);
+                    // Read only after LISTEN, so an event is either counted here or delivered below
+                    try (ResultSet rs = statement.executeQuery(
+                            "SELECT CASE WHEN is_called THEN last_value ELSE 0 END FROM " + epochSequence)) {
+                        rs.next();
+                        onConnected(rs.getLong(1));
+                    }
+                }
+                receive(connection.unwrap(PGConnection.class), connection);
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    break;
+                }
+                logger.warn("Cache invalidation listener disconnected, reconnecting in {}", reconnectDelay, e);
+                metricsService.incrementApiCounter("cache.invalidation.listener_error");
+                try {
+                    Thread.sleep(reconnectDelay.toMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            } finally {
+                listenerConnection = null;
+            }
+        }
+    }
+
+    private void receive(PGConnection pgConnection, Connection connection) throws SQLException {
+        int timeoutMillis = (int) pollTimeout.toMillis();
+        while (running) {
+            PGNotification[] notifications = pgConnection.getNotifications(timeoutMillis);
+            if (notifications == null || notifications.length == 0) {
+                // A half-open socket never delivers anything, so check the connection when idle
+                if (!connection.isValid((int) Math.max(1, pollTimeout.toSeconds()))) {
+                    throw new SQLException("Cache invalidation listener connection is no longer valid");
+                }
+                continue;
+            }
+            for (PGNotification notification : notifications) {
+                try {
+                    onNotification(notification.getParameter());
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to apply cache invalidation {}", notification.getParameter(), e);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        Connection connection = listenerConnection;
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.debug("Error closing cache invalidation listener connection", e);
+            }
+        }
+        listenerExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,297 @@
+package edu.csye6225.neu.webapp.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Read-through disk cache of object contents in front of S3.
+ * <p>
+ * Objects are immutable under their key, so entries never go stale and are only dropped on eviction
+ * or when a file is deleted. The cache is bounded by total bytes and evicts with Caffeine's
+ * W-TinyLFU policy; concurrent misses for the same key share a single S3 download. Hits are read
+ * from the local file with {@link FileChannel#transferTo} and never touch S3.
+ */
+@Service
+public class ContentCache {
+    private static final Logger logger = LoggerFactory.getLogger(ContentCache.class);
+
+    private final S3Service s3Service;
+    private final MetricsService metricsService;
+    private final boolean enabled;
+    private final Path directory;
+    private final long maxEntryBytes;
+    private final AsyncCache<String, CachedObject> cache;
+
+    // Downloads run off the request thread so a caller that gives up does not abort a shared fill
+    private final ExecutorService fillExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Last reported counters, so each report only sends what changed since the previous one
+    private CacheStats reportedStats = CacheStats.empty();
+
+    @Autowired
+    public ContentCache(S3Service s3Service,
+                        MetricsService metricsService,
+                        @Value("${app.cache.content.enabled:true}") boolean enabled,
+                        @Value("${app.cache.content.directory:${java.io.tmpdir}/webapp-content-cache}") Path directory,
+                        @Value("${app.cache.content.max-size-bytes:1073741824}") long maxSizeBytes,
+                        @Value("${app.cache.content.max-entry-bytes:67108864}") long maxEntryBytes) throws IOException {
+        if (maxEntryBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cached entries are limited to " + Integer.MAX_VALUE + " bytes");
+        }
+        this.s3Service = s3Service;
+        this.metricsService = metricsService;
+        this.enabled = enabled;
+        this.directory = directory;
+        this.maxEntryBytes = maxEntryBytes;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSizeBytes)
+                .weigher((String key, CachedObject object) -> (int) object.size())
+                .removalListener((String key, CachedObject object, RemovalCause cause) -> {
+                    if (object != null) {
+                        deleteQuietly(object.path());
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+
+        if (enabled) {
+            // Entries are not tracked across restarts, so anything left over is unreachable
+            Files.createDirectories(directory);
+            try (Stream<Path> leftovers = Files.list(directory)) {
+                leftovers.forEach(ContentCache::deleteQuietly);
+            }
+            logger.info("ContentCache initialized: directory={}, maxSize={} bytes, maxEntry={} bytes",
+                    directory, maxSizeBytes, maxEntryBytes);
+        }
+    }
+
+    /**
+     * Open a byte range of an object from the cache. Whole-object reads fill the cache on a miss;
+     * range reads are only served from entries that are already present, so a small range of a
+     * cold object does not pull the whole object first.
+     *
+     * @param key The object key
+     * @param size The object size in bytes
+     * @param start The first byte to read
+     * @param end The last byte to read, inclusive
+     * @return A stream over the requested bytes, or null if the caller should read from S3
+     * @throws IllegalStateException if the object does not exist in S3
+     */
+    public InputStream open(String key, long size, long start, long end) {
+        if (!enabled || size > maxEntryBytes) {
+            return null;
+        }
+        CachedObject object = lookup(key, start == 0 && end == size - 1);
+        return object != null ? openChannel(key, object, start, end - start + 1) : null;
+    }
+
+    /**
+     * Open a whole stored object from the cache, filling it on a miss. Used for objects whose stored
+     * size is not known up front, such as compressed content.
+     *
+     * @param key The object key
+     * @param maxSize An upper bound on the object size, used to decide whether it may be cached
+     * @return The stored bytes and their length, or null if the caller should read from S3
+     * @throws IllegalStateException if the object does not exist in S3
+     */
+    public StoredContent openStored(String key, long maxSize) {
+        if (!enabled || maxSize > maxEntryBytes) {
+            return null;
+        }
+        CachedObject object = lookup(key, true);
+        if (object == null) {
+            return null;
+        }
+        InputStream content = openChannel(key, object, 0, object.size());
+        return content != null ? new StoredContent(content, object.size()) : null;
+    }
+
+    private CachedObject lookup(String key, boolean fill) {
+        CompletableFuture<CachedObject> entry;
+        if (fill) {
+            entry = cache.get(key, (k, executor) -> CompletableFuture.supplyAsync(() -> fill(k), fillExecutor));
+        } else {
+            entry = cache.getIfPresent(key);
+            if (entry == null) {
+                return null;
+            }
+        }
+
+        try {
+            return entry.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IllegalStateException missing) {
+                throw missing;
+            }
+            // A failed fill is not cached; fall back to reading straight from S3
+            logger.warn("Failed to cache object {}, reading from S3", key, e.getCause());
+            return null;
+        }
+    }
+
+    private InputStream openChannel(String key, CachedObject object, long start, long length) {
+        try {
+            return new CachedContentStream(FileChannel.open(object.path(), StandardOpenOption.READ), start, length);
+        } catch (IOException e) {
+            // The entry was evicted and deleted between lookup and open
+            logger.debug("Cached file for {} disappeared, reading from S3", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Drop an object from the cache
+     *
+     * @param key The object key
+     */
+    public void invalidate(String key) {
+        cache.synchronous().invalidate(key);
+    }
+
+    private CachedObject fill(String key) {
+        Instant startTime = Instant.now();
+        Path target = directory.resolve(UUID.randomUUID().toString());
+        Path partial = directory.resolve(target.getFileName() + ".part");
+
+        try (InputStream in = s3Service.getObject(key, null, null)) {
+            if (in == null) {
+                throw new IllegalStateException("File content not found");
+            }
+            long size = Files.copy(in, partial);
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+
+            logger.debug("Cached object {} ({} bytes), took: {}ms", key, size,
+                    Duration.between(startTime, Instant.now()).toMillis());
+            return new CachedObject(target, size);
+        } catch (IOException e) {
+            deleteQuietly(partial);
+            throw new UncheckedIOException("Failed to cache object " + key, e);
+        }
+    }
+
+    /**
+     * Export hit ratio, size and eviction counts
+     */
+    @Scheduled(fixedDelayString = "${app.cache.content.report-interval:PT1M}")
+    public void reportMetrics() {
+        if (!enabled) {
+            return;
+        }
+        CacheStats stats = cache.synchronous().stats();
+        CacheStats delta = stats.minus(reportedStats);
+        reportedStats = stats;
+
+        metricsService.recordGauge("cache.content.hit_ratio_percent", Math.round(stats.hitRate() * 100));
+        metricsService.recordGauge("cache.content.size_bytes",
+                cache.synchronous().policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L));
+        metricsService.incrementCounter("cache.content.hits", delta.hitCount());
+        metricsService.incrementCounter("cache.content.misses", delta.missCount());
+        metricsService.incrementCounter("cache.content.evictions", delta.evictionCount());
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Failed to delete cached file {}", path, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fillExecutor.shutdownNow();
+    }
+
+    private record CachedObject(Path path, long size) {
+    }
+
+    /**
+     * Reads a range of a cached file. Evicting the entry unlinks the file but does not disturb
+     * readers that already have it open.
+     */
+    private class CachedContentStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+        private long served;
+
+        CachedContentStream(FileChannel channel, long start, long length) {
+            this.channel = channel;
+            this.position = start;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = channel.read(ByteBuffer.wrap(buffer, offset, (int) Math.min(length, remaining)), position);
+            if (read > 0) {
+                position += read;
+                remaining -= read;
+                served += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long transferTo(OutputStream out) throws IOException {
+            WritableByteChannel target = Channels.newChannel(out);
+            long transferred = 0;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+                transferred += sent;
+            }
+            served += transferred;
+            return transferred;
+        }
+
+        @Override
+        public void close() throws IOException {
+            metricsService.incrementCounter("cache.content.bytes_served", served);
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package edu.csye6225.neu.webapp.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.HexFormat;
+
+/**
+ * Checksums of an upload's content, computed together in one read of the bytes
+ *
+ * @param sha256 The hex encoded SHA-256 digest, used as the content address
+ * @param crc32c The base64 encoded CRC32C in the form S3 expects in x-amz-checksum-crc32c, or null
+ *               if the bytes were never seen by this service
+ * @param size The number of bytes read
+ */
+public record ContentDigest(String sha256, String crc32c, long size) {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The SHA-256 in the base64 form S3 expects in x-amz-checksum-sha256
+     *
+     * @return The base64 encoded digest
+     */
+    public String sha256Base64() {
+        return Base64.getEncoder().encodeToString(HexFormat.of().parseHex(sha256));
+    }
+
+    /**
+     * Read a stream to the end, feeding every chunk to both checksums
+     *
+     * @param in The content; it is read to the end but not closed
+     * @return The checksums of the content
+     * @throws IOException If the stream cannot be read
+     */
+    public static ContentDigest of(InputStream in) throws IOException {
+        DigestingInputStream digesting = new DigestingInputStream(in);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (digesting.read(buffer) != -1) {
+            // Checksums are updated as the bytes pass through
+        }
+        return digesting.digest();
+    }
+}
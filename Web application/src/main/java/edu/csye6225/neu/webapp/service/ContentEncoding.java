@@ -0,0 +1,190 @@
+package edu.csye6225.neu.webapp.service;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression applied to stored content, named by its HTTP content-coding token so stored bytes
+ * can be sent as-is to clients that accept the same coding
+ */
+public enum ContentEncoding {
+    GZIP("gzip", (byte) 0x1f, (byte) 0x8b) {
+        @Override
+        OutputStream encode(OutputStream out) throws IOException {
+            return new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+
+        @Override
+        public InputStream decode(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+    },
+    ZSTD("zstd", (byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd) {
+        @Override
+        OutputStream encode(OutputStream out) throws IOException {
+            return new ZstdOutputStream(out);
+        }
+
+        @Override
+        public InputStream decode(InputStream in) throws IOException {
+            return new ZstdInputStream(in);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Enough leading bytes to recognize any of the encodings by its magic number
+    public static final int MAGIC_LENGTH = 4;
+
+    private final String token;
+    private final byte[] magic;
+
+    ContentEncoding(String token, byte... magic) {
+        this.token = token;
+        this.magic = magic;
+    }
+
+    /**
+     * The HTTP content-coding token, as sent in Content-Encoding
+     */
+    public String token() {
+        return token;
+    }
+
+    /**
+     * Look up an encoding by its content-coding token
+     *
+     * @param token The token, or null
+     * @return The encoding, or null for identity
+     * @throws IllegalArgumentException if the token is not a supported encoding
+     */
+    public static ContentEncoding fromToken(String token) {
+        if (token == null || token.isEmpty() || token.equalsIgnoreCase("none") || token.equalsIgnoreCase("identity")) {
+            return null;
+        }
+        for (ContentEncoding encoding : values()) {
+            if (encoding.token.equalsIgnoreCase(token)) {
+                return encoding;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported content encoding: " + token);
+    }
+
+    /**
+     * Recognize encoded content by the magic number its format starts with
+     *
+     * @param prefix The first bytes of the content
+     * @return The encoding the content starts like, or null if it matches none
+     */
+    public static ContentEncoding detect(byte[] prefix) {
+        for (ContentEncoding encoding : values()) {
+            if (prefix.length >= encoding.magic.length
+                    && Arrays.equals(prefix, 0, encoding.magic.length, encoding.magic, 0, encoding.magic.length)) {
+                return encoding;
+            }
+        }
+        return null;
+    }
+
+    abstract OutputStream encode(OutputStream out) throws IOException;
+
+    /**
+     * Wrap a stream of encoded bytes so it reads the original content
+     *
+     * @param in The encoded stream
+     * @return The decoding stream; closing it closes {@code in}
+     * @throws IOException If the stream header cannot be read
+     */
+    public abstract InputStream decode(InputStream in) throws IOException;
+
+    /**
+     * Wrap a stream of original content so it reads the encoded bytes. Compression happens as the
+     * result is read, one buffer at a time, so the whole content is never held in memory.
+     *
+     * @param in The original content; closing the result closes it
+     * @return The encoding stream
+     * @throws IOException If the encoder cannot be created
+     */
+    public InputStream compress(InputStream in) throws IOException {
+        return new CompressingInputStream(this, in);
+    }
+
+    /**
+     * Pulls original bytes from the source on demand and hands out what the encoder produced from them
+     */
+    private static final class CompressingInputStream extends InputStream {
+        private final InputStream source;
+        private final byte[] chunk = new byte[BUFFER_SIZE];
+        private final Output encoded = new Output();
+        private final OutputStream encoder;
+        private int position;
+        private boolean finished;
+
+        CompressingInputStream(ContentEncoding encoding, InputStream source) throws IOException {
+            this.source = source;
+            this.encoder = encoding.encode(encoded);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (position == encoded.size()) {
+                if (finished) {
+                    return -1;
+                }
+                encoded.reset();
+                position = 0;
+                int read = source.read(chunk);
+                if (read == -1) {
+                    // Flushes the encoder's last block and trailer
+                    encoder.close();
+                    finished = true;
+                } else {
+                    encoder.write(chunk, 0, read);
+                }
+            }
+            int count = Math.min(length, encoded.size() - position);
+            System.arraycopy(encoded.buffer(), position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (!finished) {
+                    encoder.close();
+                }
+            } finally {
+                source.close();
+            }
+        }
+    }
+
+    // Exposes the internal buffer so encoded bytes are handed out without another copy
+    private static final class Output extends ByteArrayOutputStream {
+        Output() {
+            super(BUFFER_SIZE);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package edu.csye6225.neu.webapp.service;
+
+import edu.csye6225.neu.webapp.entity.ContentObject;
+import edu.csye6225.neu.webapp.entity.FileMetadata;
+import edu.csye6225.neu.webapp.entity.UploadStatus;
+import edu.csye6225.neu.webapp.repository.ContentObjectRepository;
+import edu.csye6225.neu.webapp.repository.FileMetadataRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Content-addressed storage of uploaded bytes.
+ * <p>
+ * Each distinct content is stored once and tracked in the content_object table with a count of the
+ * file_metadata rows that reference it. A duplicate upload only takes another reference, and the
+ * S3 object is deleted once the transaction dropping the last reference has committed.
+ * <p>
+ * Content is normally stored under {@code content/<sha256>}. Streamed uploads are sent before their
+ * digest is known, so new content from them keeps the staging key it was streamed to; the
+ * content_object row records the key either way, and every reference uses the row's key.
+ */
+@Service
+public class ContentStore {
+    private static final Logger logger = LoggerFactory.getLogger(ContentStore.class);
+
+    public static final String KEY_PREFIX = "content/";
+    private static final String STAGING_PREFIX = KEY_PREFIX + "streamed/";
+
+    // How long an upload waits for content being deleted, and when a tombstone counts as abandoned
+    private static final int TOMBSTONE_RETRIES = 5;
+    private static final Duration TOMBSTONE_RETRY_DELAY = Duration.ofMillis(100);
+    private static final Duration TOMBSTONE_TIMEOUT = Duration.ofMinutes(5);
+
+    private final ContentObjectRepository contentObjectRepository;
+    private final FileMetadataRepository fileMetadataRepository;
+    private final S3Service s3Service;
+    private final MetricsService metricsService;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService cleanupExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Autowired
+    public ContentStore(ContentObjectRepository contentObjectRepository,
+                        FileMetadataRepository fileMetadataRepository,
+                        S3Service s3Service,
+                        MetricsService metricsService,
+                        TransactionTemplate transactionTemplate) {
+        this.contentObjectRepository = contentObjectRepository;
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.s3Service = s3Service;
+        this.metricsService = metricsService;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * The S3 key content with the given digest is stored under
+     *
+     * @param digest The content digest
+     * @return The object key
+     */
+    public String keyFor(ContentDigest digest) {
+        return KEY_PREFIX + digest.sha256();
+    }
+
+    /**
+     * A fresh key to stream content to before its digest is known
+     *
+     * @return The object key
+     */
+    public String newStagingKey() {
+        return STAGING_PREFIX + UUID.randomUUID();
+    }
+
+    /**
+     * Take a reference to the content, registering it if it is new. Call this in the same transaction
+     * that inserts the referencing file_metadata row so the count never drifts from the rows.
+     * <p>
+     * New content is registered under the row's key and with its content encoding. Content that is
+     * already registered keeps the key and encoding it was first stored with, and the row is switched
+     * to those, so every reference reads the same object the same way.
+     *
+     * @param digest The content digest
+     * @param metadata The referencing row
+     * @return true if this is the first reference, so the caller has to upload the bytes
+     */
+    public boolean addReference(ContentDigest digest, FileMetadata metadata) {
+        awaitTombstone(digest.sha256());
+        Long references = metricsService.timeDatabaseQuery("addContentReference", () ->
+            contentObjectRepository.addReference(digest.sha256(), metadata.getFileName(), digest.size(),
+                    digest.crc32c(), metadata.getContentEncoding())
+        );
+        if (references == null) {
+            // Tombstoned between the check and the insert, which now holds the tombstone's row lock;
+            // waiting here would hold up its cleanup, so the upload fails and can be retried
+            throw new CannotAcquireLockException("Content " + digest.sha256() + " is being deleted");
+        }
+        if (references == 1) {
+            return true;
+        }
+
+        contentObjectRepository.findById(digest.sha256()).ifPresent(content -> {
+            metadata.setContentEncoding(content.getContentEncoding());
+            if (!content.getS3Key().equals(metadata.getFileName())) {
+                metadata.setFileName(content.getS3Key());
+                metadata.setS3BucketPath(s3Service.getObjectUrl(content.getS3Key()));
+            }
+        });
+        return false;
+    }
+
+    /**
+     * Whether a duplicate upload can skip the transfer. The first uploader may still be sending the bytes
+     * or may have failed, so the object is checked rather than assumed.
+     *
+     * @param key The key the content is registered under
+     * @return true if the object is already in S3
+     */
+    public boolean isStored(String key) {
+        return s3Service.objectExists(key);
+    }
+
+    /**
+     * Delete a metadata row and drop its reference to the content. With the last reference the content
+     * row is kept as a tombstone and the S3 object is deleted after commit, so no S3 call is made while
+     * the row lock is held and a rolled-back release never loses the object. Rows from before content
+     * addressing own their object outright, which is deleted before the row as it always was.
+     * <p>
+     * The reference is only dropped if this call removed the row, so releasing a row twice, e.g. from
+     * two concurrent deletes, takes a single reference.
+     *
+     * @param metadata The metadata row to remove
+     * @return true if the row was removed here, false if it was already gone
+     */
+    public boolean release(FileMetadata metadata) {
+        return release(metadata, () -> fileMetadataRepository.deleteRow(metadata.getId()));
+    }
+
+    /**
+     * {@link #release} a row only if it is still PENDING. A pending row read a while ago may have been
+     * committed since, and is then left alone with its content.
+     *
+     * @param pending The pending metadata row to remove
+     * @return true if the row was removed here, false if it was committed or already gone
+     */
+    public boolean releasePending(FileMetadata pending) {
+        Supplier<Integer> deleteRow = () -> fileMetadataRepository.deleteRowInStatus(pending.getId(), UploadStatus.PENDING);
+        if (pending.getContentDigest() == null) {
+            // An object the row owns outright may only go once the row is known not to have been committed
+            boolean removed = metricsService.timeDatabaseQuery("deleteFileMetadata", deleteRow) == 1;
+            if (removed) {
+                s3Service.deleteFile(pending.getS3BucketPath());
+            }
+            return removed;
+        }
+        return release(pending, deleteRow);
+    }
+
+    private boolean release(FileMetadata metadata, Supplier<Integer> deleteRow) {
+        if (metadata.getContentDigest() == null) {
+            s3Service.deleteFile(metadata.getS3BucketPath());
+            return metricsService.timeDatabaseQuery("deleteFileMetadata", deleteRow) == 1;
+        }
+
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            int deleted = metricsService.timeDatabaseQuery("deleteFileMetadata", deleteRow);
+            if (deleted != 1) {
+                logger.debug("File {} was already removed or committed, its content reference is left alone",
+                        metadata.getId());
+                return false;
+            }
+
+            Optional<ContentObject> locked = metricsService.timeDatabaseQuery("lockContentObject", () ->
+                contentObjectRepository.findForUpdate(metadata.getContentDigest())
+            );
+            if (locked.isEmpty()) {
+                logger.warn("No content object for digest {} of file {}", metadata.getContentDigest(), metadata.getId());
+                return true;
+            }
+
+            ContentObject content = locked.get();
+            if (content.getRefCount() > 1) {
+                content.setRefCount(content.getRefCount() - 1);
+                logger.debug("Released reference to {}, {} remaining", content.getS3Key(), content.getRefCount());
+                return true;
+            }
+
+            // Last reference: a concurrent upload of the same content waits for the tombstone to go,
+            // then registers the content afresh and uploads it again
+            content.setRefCount(0L);
+            content.setDeletingSince(LocalDateTime.now());
+            String digest = content.getDigest();
+            String key = content.getS3Key();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    // The committed transaction still holds its connection here, so the cleanup gets
+                    // a thread and transaction of its own
+                    cleanupExecutor.execute(() -> deleteContent(digest, key));
+                }
+            });
+            return true;
+        }));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cleanupExecutor.shutdown();
+    }
+
+    /**
+     * Wait for content that lost its last reference to finish being deleted, so that it is registered
+     * afresh rather than referenced. A tombstone whose cleanup never ran is removed.
+     */
+    private void awaitTombstone(String digest) {
+        for (int attempt = 0; ; attempt++) {
+            Optional<LocalDateTime> deletingSince = contentObjectRepository.findDeletingSince(digest);
+            if (deletingSince.isEmpty()) {
+                return;
+            }
+            if (deletingSince.get().isBefore(LocalDateTime.now().minus(TOMBSTONE_TIMEOUT))) {
+                logger.warn("Removing abandoned tombstone for content {}", digest);
+                contentObjectRepository.deleteTombstone(digest, deletingSince.get());
+                return;
+            }
+            if (attempt == TOMBSTONE_RETRIES) {
+                throw new CannotAcquireLockException("Content " + digest + " is still being deleted");
+            }
+            sleep(TOMBSTONE_RETRY_DELAY);
+        }
+    }
+
+    private void deleteContent(String digest, String key) {
+        try {
+            s3Service.deleteFile(s3Service.getObjectUrl(key));
+            logger.info("Deleted content object {} with its last reference", key);
+        } catch (RuntimeException e) {
+            // The object is left without a row; the reconciler removes it as an orphan
+            logger.warn("Failed to delete content object {}", key, e);
+        }
+        try {
+            metricsService.timeDatabaseQuery("deleteContentTombstone", () ->
+                contentObjectRepository.deleteTombstone(digest, LocalDateTime.now())
+            );
+        } catch (RuntimeException e) {
+            logger.warn("Failed to remove tombstone for content {}", digest, e);
+        }
+    }
+
+    private static void sleep(Duration delay) {
+        try {
+            Thread.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotAcquireLockException("Interrupted waiting for content to be deleted", e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package edu.csye6225.neu.webapp.service;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes RFC 4180 CSV, which is also what Postgres COPY reads in CSV format
+ */
+final class Csv {
+
+    private Csv() {
+    }
+
+    /**
+     * Write one record terminated by CRLF. Fields containing a separator, quote or line break are
+     * quoted with quotes doubled; null fields are left empty, which COPY reads as NULL.
+     *
+     * @param writer The writer to append to
+     * @param fields The field values
+     * @throws IOException if writing fails
+     */
+    static void writeLine(Writer writer, String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            String field = fields[i];
+            if (field == null) {
+                continue;
+            }
+            if (field.isEmpty() || field.indexOf(',') >= 0 || field.indexOf('"') >= 0
+                    || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(field.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(field);
+            }
+        }
+        writer.write("\r\n");
+    }
+}
@@ -0,0 +1,79 @@
+package edu.csye6225.neu.webapp.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.zip.CRC32C;
+
+/**
+ * Computes the {@link ContentDigest} of the bytes read through it, so content can be hashed while it
+ * is being sent somewhere else
+ */
+public class DigestingInputStream extends FilterInputStream {
+    private final MessageDigest sha256;
+    private final CRC32C crc32c = new CRC32C();
+    private long size;
+
+    public DigestingInputStream(InputStream in) {
+        super(in);
+        try {
+            this.sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = super.read();
+        if (read != -1) {
+            sha256.update((byte) read);
+            crc32c.update(read);
+            size++;
+        }
+        return read;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            sha256.update(buffer, offset, read);
+            crc32c.update(buffer, offset, read);
+            size += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes would be missing from the digest
+        throw new IOException("Skipping is not supported while digesting");
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * The number of bytes read so far
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * The checksums of everything read so far; call once the stream has been read to the end
+     */
+    public ContentDigest digest() {
+        byte[] crcBytes = ByteBuffer.allocate(Integer.BYTES).putInt((int) crc32c.getValue()).array();
+        return new ContentDigest(HexFormat.of().formatHex(sha256.digest()),
+                Base64.getEncoder().encodeToString(crcBytes), size);
+    }
+}
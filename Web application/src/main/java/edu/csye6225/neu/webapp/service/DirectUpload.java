@@ -0,0 +1,21 @@
+package edu.csye6225.neu.webapp.service;
+
+import edu.csye6225.neu.webapp.entity.FileMetadata;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * A pending upload that the client sends straight to S3
+ *
+ * @param metadata The pending metadata, confirmed once the object is in S3
+ * @param uploadUrl The presigned PUT URL, or null if the content is already stored and no upload is needed
+ * @param headers The headers the client must send with the PUT, as they are part of the signature
+ * @param expiresAt When the presigned URL stops being accepted, or null if no upload is needed
+ */
+public record DirectUpload(FileMetadata metadata, String uploadUrl, Map<String, String> headers, Instant expiresAt) {
+
+    public boolean isUploadRequired() {
+        return uploadUrl != null;
+    }
+}
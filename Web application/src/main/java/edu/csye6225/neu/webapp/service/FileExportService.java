@@ -0,0 +1,174 @@
+package edu.csye6225.neu.webapp.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.csye6225.neu.webapp.entity.FileMetadata;
+import edu.csye6225.neu.webapp.entity.UploadStatus;
+import edu.csye6225.neu.webapp.repository.FileMetadataRepository;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes the metadata of every committed file as NDJSON or CSV.
+ * <p>
+ * Rows are read through a server-side cursor in a read-only transaction and written one at a time,
+ * each detached from the persistence context once written, so memory use is bounded by the fetch
+ * size however many rows the table holds. Output is flushed every few rows so the client sees
+ * progress and nothing accumulates in the response buffer.
+ */
+@Service
+public class FileExportService {
+    private static final Logger logger = LoggerFactory.getLogger(FileExportService.class);
+
+    private static final String[] COLUMNS = {
+        "id", "file_name", "s3_key", "url", "content_type", "size_bytes",
+        "content_digest", "content_encoding", "upload_date", "last_modified"
+    };
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv; charset=UTF-8", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public String extension() {
+            return extension;
+        }
+    }
+
+    private final FileMetadataRepository fileMetadataRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final MetricsService metricsService;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int flushEvery;
+
+    @Autowired
+    public FileExportService(FileMetadataRepository fileMetadataRepository,
+                             EntityManager entityManager,
+                             PlatformTransactionManager transactionManager,
+                             ObjectMapper objectMapper,
+                             MetricsService metricsService,
+                             @Value("${app.export.flush-every:1000}") int flushEvery) {
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.metricsService = metricsService;
+        this.flushEvery = flushEvery;
+        // The cursor only stays open inside a transaction, which must outlive the repository call
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Write every committed file to the stream
+     *
+     * @param format The output format
+     * @param out The stream to write to; flushed but not closed
+     * @return The number of files written
+     * @throws IOException if writing fails, usually because the client went away
+     */
+    public long export(Format format, OutputStream out) throws IOException {
+        logger.info("Starting {} export of file metadata", format);
+        try {
+            Long exported = readOnlyTransaction.execute(status -> {
+                try (Stream<FileMetadata> rows = fileMetadataRepository.streamByStatus(UploadStatus.COMMITTED)) {
+                    return switch (format) {
+                        case NDJSON -> writeNdjson(rows.iterator(), out);
+                        case CSV -> writeCsv(rows.iterator(), out);
+                    };
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            long count = exported != null ? exported : 0;
+            metricsService.incrementCounter("file_export.rows", count);
+            logger.info("Exported {} files as {}", count, format);
+            return count;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private long writeNdjson(Iterator<FileMetadata> rows, OutputStream out) throws IOException {
+        long count = 0;
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+            // Each object ends its own line instead of being separated from the next by a space
+            generator.setRootValueSeparator(null);
+            while (rows.hasNext()) {
+                FileMetadata row = rows.next();
+                generator.writeStartObject();
+                generator.writeStringField("id", row.getId().toString());
+                generator.writeStringField("file_name", row.getOriginalFileName());
+                generator.writeStringField("s3_key", row.getFileName());
+                generator.writeStringField("url", row.getS3BucketPath());
+                generator.writeStringField("content_type", row.getContentType());
+                generator.writeNumberField("size_bytes", row.getSizeBytes());
+                generator.writeStringField("content_digest", row.getContentDigest());
+                generator.writeStringField("content_encoding", row.getContentEncoding());
+                generator.writeStringField("upload_date", format(row.getUploadDate()));
+                generator.writeStringField("last_modified", format(row.getLastModified()));
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+                entityManager.detach(row);
+                if (++count % flushEvery == 0) {
+                    generator.flush();
+                }
+            }
+        }
+        return count;
+    }
+
+    private long writeCsv(Iterator<FileMetadata> rows, OutputStream out) throws IOException {
+        long count = 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        Csv.writeLine(writer, COLUMNS);
+        while (rows.hasNext()) {
+            FileMetadata row = rows.next();
+            Csv.writeLine(writer, new String[] {
+                row.getId().toString(), row.getOriginalFileName(), row.getFileName(), row.getS3BucketPath(),
+                row.getContentType(), String.valueOf(row.getSizeBytes()), row.getContentDigest(),
+                row.getContentEncoding(), format(row.getUploadDate()), format(row.getLastModified())
+            });
+            entityManager.detach(row);
+            if (++count % flushEvery == 0) {
+                writer.flush();
+            }
+        }
+        writer.flush();
+        return count;
+    }
+
+    private static String format(LocalDateTime time) {
+        return time != null ? time.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) : null;
+    }
+}
@@ -0,0 +1,185 @@
+package edu.csye6225.neu.webapp.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import edu.csye6225.neu.webapp.entity.FileMetadata;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * In-memory cache of committed file metadata by ID.
+ * <p>
+ * Committed rows never change, so entries only leave on eviction, expiry or when the file is
+ * deleted. The cache is bounded by an estimate of the bytes each entry holds and evicts with
+ * Caffeine's W-TinyLFU policy; concurrent lookups of an uncached ID share a single query. Misses
+ * are not cached, so an ID that is committed later is found as soon as it exists.
+ */
+@Service
+public class FileMetadataCache {
+    private static final Logger logger = LoggerFactory.getLogger(FileMetadataCache.class);
+
+    // Object headers, the UUID, dates, boxed size and enum reference of a row, before its strings
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private final MetricsService metricsService;
+    private final boolean enabled;
+    private final AsyncCache<UUID, FileMetadata> cache;
+
+    // Lookups run off the request thread so a caller that gives up does not fail a shared query
+    private final ExecutorService loadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Last reported counters, so each report only sends what changed since the previous one
+    private CacheStats reportedStats = CacheStats.empty();
+
+    @Autowired
+    public FileMetadataCache(MetricsService metricsService,
+                             @Value("${app.cache.metadata.enabled:true}") boolean enabled,
+                             @Value("${app.cache.metadata.max-size-bytes:16777216}") long maxSizeBytes,
+                             @Value("${app.cache.metadata.expire-after-write:PT10M}") Duration expireAfterWrite) {
+        this.metricsService = metricsService;
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSizeBytes)
+                .weigher((UUID id, FileMetadata metadata) -> weigh(metadata))
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .buildAsync();
+        logger.info("FileMetadataCache initialized: enabled={}, maxSize={} bytes, expireAfterWrite={}",
+                enabled, maxSizeBytes, expireAfterWrite);
+    }
+
+    /**
+     * Look up committed metadata, querying the database on a miss
+     *
+     * @param id The file ID
+     * @param loader Queries the committed row; only called when the ID is not cached
+     * @return The metadata, or empty if there is no committed row. The returned instance is shared
+     *         and must not be modified.
+     */
+    public Optional<FileMetadata> get(UUID id, Supplier<Optional<FileMetadata>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        CompletableFuture<FileMetadata> entry = cache.get(id, (key, executor) ->
+                CompletableFuture.supplyAsync(() -> loader.get().map(FileMetadataCache::copy).orElse(null), loadExecutor));
+        try {
+            FileMetadata metadata = entry.join();
+            if (metadata == null) {
+                forget(id, entry);
+            }
+            return Optional.ofNullable(metadata);
+        } catch (CompletionException e) {
+            forget(id, entry);
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Add metadata that was just committed, so the first read after an upload is already a hit
+     *
+     * @param metadata The committed metadata
+     */
+    public void put(FileMetadata metadata) {
+        if (enabled) {
+            cache.put(metadata.getId(), CompletableFuture.completedFuture(copy(metadata)));
+        }
+    }
+
+    /**
+     * Drop a file's metadata from the cache
+     *
+     * @param id The file ID
+     */
+    public void invalidate(UUID id) {
+        cache.synchronous().invalidate(id);
+    }
+
+    /**
+     * Drop all cached metadata, for when invalidations may have been missed
+     */
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    /**
+     * Drop the metadata of every cached file stored under one of the given S3 keys, for rows that
+     * were deleted by key rather than by ID
+     *
+     * @param keys The object keys
+     */
+    public void invalidateKeys(Collection<String> keys) {
+        Set<String> removed = Set.copyOf(keys);
+        cache.synchronous().asMap().values().removeIf(metadata -> removed.contains(metadata.getFileName()));
+    }
+
+    /**
+     * Export hit ratio, size and eviction counts
+     */
+    @Scheduled(fixedDelayString = "${app.cache.metadata.report-interval:PT1M}")
+    public void reportMetrics() {
+        if (!enabled) {
+            return;
+        }
+        CacheStats stats = cache.synchronous().stats();
+        CacheStats delta = stats.minus(reportedStats);
+        reportedStats = stats;
+
+        metricsService.recordGauge("cache.metadata.hit_ratio_percent", Math.round(stats.hitRate() * 100));
+        metricsService.recordGauge("cache.metadata.size_bytes",
+                cache.synchronous().policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L));
+        metricsService.recordGauge("cache.metadata.entries", cache.synchronous().estimatedSize());
+        metricsService.incrementCounter("cache.metadata.hits", delta.hitCount());
+        metricsService.incrementCounter("cache.metadata.misses", delta.missCount());
+        metricsService.incrementCounter("cache.metadata.evictions", delta.evictionCount());
+    }
+
+    // Caffeine drops empty and failed loads only after completing them, so the next lookup could
+    // still be handed the same future; remove it now unless it has already been replaced
+    private void forget(UUID id, CompletableFuture<FileMetadata> entry) {
+        cache.asMap().remove(id, entry);
+    }
+
+    // Detached from the persistence context and from later changes to the caller's instance
+    private static FileMetadata copy(FileMetadata metadata) {
+        return new FileMetadata(metadata.getId(), metadata.getFileName(), metadata.getOriginalFileName(),
+                metadata.getS3BucketPath(), metadata.getContentType(), metadata.getSizeBytes(),
+                metadata.getContentDigest(), metadata.getContentEncoding(), metadata.getUploadDate(),
+                metadata.getLastModified(), metadata.getStatus());
+    }
+
+    // Strings are UTF-16 in the worst case
+    private static int weigh(FileMetadata metadata) {
+        return ENTRY_OVERHEAD_BYTES + 2 * (length(metadata.getFileName()) + length(metadata.getOriginalFileName())
+                + length(metadata.getS3BucketPath()) + length(metadata.getContentType())
+                + length(metadata.getContentDigest()) + length(metadata.getContentEncoding()));
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loadExecutor.shutdownNow();
+    }
+}
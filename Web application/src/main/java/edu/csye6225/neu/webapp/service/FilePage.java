@@ -0,0 +1,18 @@
+package edu.csye6225.neu.webapp.service;
+
+import edu.csye6225.neu.webapp.repository.FileSummary;
+
+import java.util.List;
+
+/**
+ * One page of a file listing
+ *
+ * @param files The files on this page, oldest first
+ * @param nextCursor Opaque cursor for the next page, or null if this is the last page
+ */
+public record FilePage(List<FileSummary> files, String nextCursor) {
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
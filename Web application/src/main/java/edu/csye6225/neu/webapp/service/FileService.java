@@ -1,97 +1,782 @@
 package edu.csye6225.neu.webapp.service;
 
 import edu.csye6225.neu.webapp.entity.FileMetadata;
+import edu.csye6225.neu.webapp.entity.UploadStatus;
+import edu.csye6225.neu.webapp.exception.EmptyUploadException;
 import edu.csye6225.neu.webapp.repository.FileMetadataRepository;
+import edu.csye6225.neu.webapp.repository.FileSummary;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.Abortable;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
 
 @Service
 public class FileService {
     private static final Logger logger = LoggerFactory.getLogger(FileService.class);
 
-    private final String bucketName;
     private final FileMetadataRepository fileMetadataRepository;
     private final S3Service s3Service;
     private final MetricsService metricsService;
+    private final ContentStore contentStore;
+    private final ContentCache contentCache;
+    private final FileMetadataCache metadataCache;
+    private final CacheInvalidationBus invalidationBus;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchConcurrency;
+    private final Duration presignTtl;
+    private final ContentEncoding compression;
+    private final Set<String> compressibleTypes;
+    private final long compressionMinSize;
+
+    // Runs the JDBC work that follows an async S3 call
+    private final ExecutorService databaseExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // PENDING rows whose bytes this instance is sending to S3 right now; see renewTransferLeases
+    private final Set<UUID> transfersInFlight = ConcurrentHashMap.newKeySet();
 
     @Autowired
-    public FileService(@Value("${aws.s3.bucket}") String bucketName,
-                       FileMetadataRepository fileMetadataRepository,
+    public FileService(FileMetadataRepository fileMetadataRepository,
                        S3Service s3Service,
-                       MetricsService metricsService) {
-        this.bucketName = bucketName;
+                       MetricsService metricsService,
+                       ContentStore contentStore,
+                       ContentCache contentCache,
+                       FileMetadataCache metadataCache,
+                       CacheInvalidationBus invalidationBus,
+                       TransactionTemplate transactionTemplate,
+                       @Value("${app.uploads.batch-concurrency:16}") int batchConcurrency,
+                       @Value("${app.uploads.presign-ttl:PT15M}") Duration presignTtl,
+                       @Value("${app.uploads.compression.encoding:zstd}") String compression,
+                       @Value("${app.uploads.compression.content-types:text/plain,text/csv,application/json,application/xml}") Set<String> compressibleTypes,
+                       @Value("${app.uploads.compression.min-size-bytes:1024}") long compressionMinSize) {
         this.fileMetadataRepository = fileMetadataRepository;
         this.s3Service = s3Service;
         this.metricsService = metricsService;
-        logger.info("FileService initialized with bucket: {}", bucketName);
+        this.contentStore = contentStore;
+        this.contentCache = contentCache;
+        this.metadataCache = metadataCache;
+        this.invalidationBus = invalidationBus;
+        this.transactionTemplate = transactionTemplate;
+        this.batchConcurrency = batchConcurrency;
+        this.presignTtl = presignTtl;
+        this.compression = ContentEncoding.fromToken(compression);
+        this.compressibleTypes = compressibleTypes;
+        this.compressionMinSize = compressionMinSize;
+        logger.info("FileService initialized: batchConcurrency={}, compression={}", batchConcurrency, compression);
     }
 
     /**
-     * Upload a file to S3 and store its metadata in the database
+     * Upload a file to S3 and store its metadata in the database.
+     * <p>
+     * No database connection is held while the bytes are transferred: a PENDING row is inserted in
+     * its own short transaction, the object is sent to S3 with no transaction open, and the row is
+     * then marked COMMITTED. Rows left PENDING by a failure are cleaned up by {@link PendingUploadSweeper}.
+     * <p>
+     * Content is stored once per SHA-256 digest (see {@link ContentStore}); uploading bytes that are
+     * already stored only adds a metadata row.
      *
      * @param file The file to upload
      * @return The file metadata entity
      * @throws IOException If the file cannot be read
      */
-    @Transactional
     public FileMetadata uploadFile(MultipartFile file) throws IOException {
         if (file == null || file.isEmpty()) {
             logger.warn("Attempted to upload empty or null file");
             throw new IllegalArgumentException("File is empty or null");
         }
 
+        logger.info("Starting file upload process for file: {}", file.getOriginalFilename());
+        
+        final Reservation reservation = reserveUpload(file, digest(file));
+        final FileMetadata pending = reservation.pending();
+        
         try {
-            logger.info("Starting file upload process for file: {}", file.getOriginalFilename());
-            
-            // Upload file to S3 with metrics
-            String s3Url = metricsService.timeS3Operation("uploadFile", () -> {
-                try {
-                    return s3Service.uploadFile(file);
-                } catch (IOException e) {
-                    logger.error("S3 upload failed", e);
-                    throw new RuntimeException("Failed to upload file to S3", e);
+            if (needsTransfer(reservation)) {
+                // Upload file to S3 with metrics
+                transfersInFlight.add(pending.getId());
+                String s3Url = metricsService.timeS3Operation("uploadFile", () -> {
+                    try {
+                        return s3Service.uploadFile(file, pending.getFileName(), reservation.digest().crc32c(),
+                                ContentEncoding.fromToken(pending.getContentEncoding()));
+                    } catch (IOException e) {
+                        logger.error("S3 upload failed", e);
+                        throw new RuntimeException("Failed to upload file to S3", e);
+                    }
+                });
+                logger.debug("File uploaded to S3, URL: {}", s3Url);
+            }
+        } catch (Exception e) {
+            logger.error("Error uploading file and saving metadata", e);
+            discardUpload(pending);
+            throw new RuntimeException("Failed to process file upload: " + e.getMessage(), e);
+        } finally {
+            transfersInFlight.remove(pending.getId());
+        }
+        
+        try {
+            return commitUpload(pending);
+        } catch (Exception e) {
+            // The object is in S3 but the row is still PENDING; the sweeper removes both
+            logger.error("Error committing file metadata: {}", pending.getId(), e);
+            throw new RuntimeException("Failed to process file upload: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Upload a file to S3 without blocking the calling thread, then store its metadata.
+     * Follows the same pending/committed flow as {@link #uploadFile(MultipartFile)}.
+     *
+     * @param file The file to upload
+     * @return A future completed with the saved file metadata entity
+     */
+    public CompletableFuture<FileMetadata> uploadFileAsync(MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            logger.warn("Attempted to upload empty or null file");
+            throw new IllegalArgumentException("File is empty or null");
+        }
+
+        logger.info("Starting async file upload process for file: {}", file.getOriginalFilename());
+
+        // JDBC work, hashing and the duplicate check block, so they run on virtual threads
+        // rather than the request or SDK completion threads
+        return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return reserveUpload(file, digest(file));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to read upload", e);
+                    }
+                }, databaseExecutor)
+                .thenComposeAsync(reservation -> transferAsync(file, reservation)
+                        .handleAsync((ignored, ex) -> {
+                            FileMetadata pending = reservation.pending();
+                            if (ex != null) {
+                                discardUpload(pending);
+                                throw ex instanceof CompletionException completionException
+                                        ? completionException : new CompletionException(ex);
+                            }
+                            return commitUpload(pending);
+                        }, databaseExecutor), databaseExecutor)
+                .whenComplete((metadata, ex) -> {
+                    if (ex != null) {
+                        logger.error("Error uploading file and saving metadata", ex);
+                    }
+                });
+    }
+
+    /**
+     * Upload many files in one call: all PENDING rows are inserted in a single transaction and JDBC
+     * batch, the S3 transfers run concurrently on virtual threads, and every successful upload is
+     * committed with a single UPDATE.
+     *
+     * @param files The files to upload
+     * @return One result per file, in the order the files were given
+     */
+    public List<BatchUploadResult> uploadFiles(List<MultipartFile> files) {
+        if (files == null || files.isEmpty()) {
+            logger.warn("Attempted batch upload with no files");
+            throw new IllegalArgumentException("No files to upload");
+        }
+        for (MultipartFile file : files) {
+            if (file == null || file.isEmpty()) {
+                throw new IllegalArgumentException("File is empty or null");
+            }
+        }
+
+        logger.info("Starting batch upload of {} files", files.size());
+
+        // Bounded so a large batch cannot flood the disk or the S3 connection pool
+        Semaphore permits = new Semaphore(batchConcurrency);
+        List<Reservation> reserved;
+        List<Future<Void>> transfers = new ArrayList<>(files.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<ContentDigest>> digests = new ArrayList<>(files.size());
+            for (MultipartFile file : files) {
+                digests.add(executor.submit(() -> withPermit(permits, () -> digest(file))));
+            }
+            List<ContentDigest> computed = new ArrayList<>(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                computed.add(await(digests.get(i), files.get(i)));
+            }
+
+            reserved = reserveUploads(files, computed);
+
+            for (int i = 0; i < files.size(); i++) {
+                MultipartFile file = files.get(i);
+                Reservation reservation = reserved.get(i);
+                transfers.add(executor.submit(() -> withPermit(permits, () -> {
+                    if (needsTransfer(reservation)) {
+                        FileMetadata pending = reservation.pending();
+                        transfersInFlight.add(pending.getId());
+                        try {
+                            s3Service.uploadFile(file, pending.getFileName(), reservation.digest().crc32c(),
+                                    ContentEncoding.fromToken(pending.getContentEncoding()));
+                        } finally {
+                            transfersInFlight.remove(pending.getId());
+                        }
+                    }
+                    return null;
+                })));
+            }
+        }
+
+        List<UUID> committedIds = new ArrayList<>();
+        String[] errors = new String[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                transfers.get(i).get();
+                committedIds.add(reserved.get(i).pending().getId());
+            } catch (ExecutionException e) {
+                logger.error("Batch upload failed for file: {}", files.get(i).getOriginalFilename(), e.getCause());
+                errors[i] = "Failed to upload file: " + e.getCause().getMessage();
+                discardUpload(reserved.get(i).pending());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for batch upload", e);
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        if (!committedIds.isEmpty()) {
+            int committed = metricsService.timeDatabaseQuery("commitFileMetadataBatch", () ->
+                fileMetadataRepository.updateStatusIn(committedIds, UploadStatus.COMMITTED, now)
+            );
+            if (committed < committedIds.size()) {
+                // Some rows were swept before they could be committed; find out which on the primary
+                Set<UUID> stored = transactionTemplate.execute(tx ->
+                    fileMetadataRepository.findAllById(committedIds).stream()
+                        .filter(row -> row.getStatus() == UploadStatus.COMMITTED)
+                        .map(FileMetadata::getId)
+                        .collect(Collectors.toSet())
+                );
+                for (int i = 0; i < files.size(); i++) {
+                    UUID id = reserved.get(i).pending().getId();
+                    if (errors[i] == null && !stored.contains(id)) {
+                        logger.warn("Pending upload {} was removed before it could be committed", id);
+                        errors[i] = "Upload expired before it could be committed, please retry";
+                        committedIds.remove(id);
+                    }
                 }
-            });
-            
-            logger.debug("File uploaded to S3, URL: {}", s3Url);
-            
-            // Create file metadata
-            final FileMetadata fileMetadata = new FileMetadata();
-            fileMetadata.setFileName(extractKeyFromUrl(s3Url));
-            fileMetadata.setOriginalFileName(file.getOriginalFilename());
-            fileMetadata.setS3BucketPath(s3Url);
-            fileMetadata.setContentType(file.getContentType());
-            fileMetadata.setSizeBytes(file.getSize());
-            
-            // Save metadata to database with metrics
-            logger.debug("Saving file metadata to database");
+            }
+        }
+
+        List<BatchUploadResult> results = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            FileMetadata metadata = reserved.get(i).pending();
+            if (errors[i] == null) {
+                metadata.setStatus(UploadStatus.COMMITTED);
+                metadata.setLastModified(now);
+                metadataCache.put(metadata);
+                results.add(BatchUploadResult.success(metadata));
+            } else {
+                results.add(BatchUploadResult.failure(files.get(i).getOriginalFilename(), errors[i]));
+            }
+        }
+
+        logger.info("Batch upload finished: {} stored, {} failed", committedIds.size(), files.size() - committedIds.size());
+        return results;
+    }
+
+    /**
+     * Upload a file whose bytes are still arriving, sending them on to S3 as they are read rather
+     * than after the whole request has been received.
+     * <p>
+     * The digest is only known once the last byte has passed, so the content is hashed on the way
+     * to a staging key. New content stays under that key and is registered there; content that turns
+     * out to be stored already just takes another reference and the staged object is deleted. While
+     * the bytes arrive the staging key is held by a PENDING row under a renewed lease, so an upload
+     * that fails or whose instance dies is cleaned up by {@link PendingUploadSweeper}.
+     *
+     * @param originalFileName The client's file name
+     * @param contentType The content type of the file
+     * @param in The file content; it is read to the end and closed
+     * @return The committed file metadata
+     * @throws IOException If the content cannot be read, including when it goes over a size limit
+     * @throws EmptyUploadException if the content is empty
+     */
+    public FileMetadata uploadStream(String originalFileName, String contentType, InputStream in) throws IOException {
+        logger.info("Starting streaming upload for file: {}", originalFileName);
+
+        String stagingKey = contentStore.newStagingKey();
+        // The size is not known yet, so only the content type decides whether to compress
+        ContentEncoding encoding = chooseEncoding(contentType, Long.MAX_VALUE);
+        // The staged object belongs to a PENDING row from the start, so the sweeper removes both if
+        // this instance dies before the upload is registered
+        FileMetadata staging = reserveStaging(originalFileName, contentType, stagingKey, encoding);
+        DigestingInputStream digesting = new DigestingInputStream(in);
+        transfersInFlight.add(staging.getId());
+        try {
+            s3Service.uploadStream(stagingKey, contentType, digesting, encoding);
+        } catch (IOException | RuntimeException e) {
+            discardStaging(staging);
+            throw e;
+        } finally {
+            transfersInFlight.remove(staging.getId());
+        }
+
+        ContentDigest digest = digesting.digest();
+        if (digest.size() == 0) {
+            discardStaging(staging);
+            throw new EmptyUploadException();
+        }
+
+        // The upload takes over the staging row, so the object changes hands in the same transaction
+        // that takes the content reference
+        FileMetadata fileMetadata = newPendingMetadata(originalFileName, contentType, digest.size(), digest);
+        fileMetadata.setId(staging.getId());
+        fileMetadata.setUploadDate(staging.getUploadDate());
+        fileMetadata.setFileName(stagingKey);
+        fileMetadata.setS3BucketPath(staging.getS3BucketPath());
+        fileMetadata.setContentEncoding(staging.getContentEncoding());
+
+        Reservation reservation;
+        try {
+            reservation = reserveUpload(fileMetadata, digest);
+        } catch (RuntimeException e) {
+            discardStaging(staging);
+            throw e;
+        }
+
+        FileMetadata pending = reservation.pending();
+        if (!reservation.firstReference()) {
+            // The reservation switched the row to the key the content is registered under
+            try {
+                if (needsTransfer(reservation)) {
+                    // The first upload of this content has not finished; the staged bytes can stand in
+                    // for it, but only if they are stored the same way
+                    if (!Objects.equals(pending.getContentEncoding(), fileMetadata.getContentEncoding())) {
+                        throw new IllegalStateException("The same content is still being uploaded, retry shortly");
+                    }
+                    s3Service.copyObject(stagingKey, pending.getFileName());
+                }
+            } catch (RuntimeException e) {
+                discardUpload(pending);
+                throw e;
+            } finally {
+                deleteStaged(stagingKey);
+            }
+        }
+
+        metricsService.incrementApiCounter("file_upload.streamed");
+        return commitUpload(pending);
+    }
+
+    private FileMetadata reserveStaging(String originalFileName, String contentType, String stagingKey,
+                                        ContentEncoding encoding) {
+        FileMetadata staging = new FileMetadata();
+        staging.setFileName(stagingKey);
+        staging.setOriginalFileName(originalFileName);
+        staging.setS3BucketPath(s3Service.getObjectUrl(stagingKey));
+        staging.setContentType(contentType);
+        staging.setSizeBytes(0L);
+        staging.setContentEncoding(encoding != null ? encoding.token() : null);
+        staging.setStatus(UploadStatus.PENDING);
+        return transactionTemplate.execute(status -> metricsService.timeDatabaseQuery("saveFileMetadata", () ->
+            fileMetadataRepository.save(staging)
+        ));
+    }
+
+    // A staging row that cannot be removed now is left to the sweeper, which deletes the object with it
+    private void discardStaging(FileMetadata staging) {
+        try {
+            contentStore.releasePending(staging);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to discard staged upload {}, leaving it to the sweeper", staging.getFileName(), e);
+        }
+    }
+
+    // Once the row has moved to the stored content nothing refers to the staged object any more, so
+    // one that cannot be deleted here is only found again by the reconciler (app.reconciler.enabled)
+    private void deleteStaged(String stagingKey) {
+        try {
+            s3Service.deleteFile(s3Service.getObjectUrl(stagingKey));
+        } catch (RuntimeException e) {
+            logger.warn("Failed to delete staged upload {}", stagingKey, e);
+        }
+    }
+
+    private static <T> T withPermit(Semaphore permits, Callable<T> task) throws Exception {
+        permits.acquire();
+        try {
+            return task.call();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static <T> T await(Future<T> future, MultipartFile file) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to read file " + file.getOriginalFilename() + ": "
+                    + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading batch upload", e);
+        }
+    }
+
+    /**
+     * Compute the SHA-256 and CRC32C of a file in one read of the spooled part, before any bytes
+     * are sent, so a duplicate can skip the transfer altogether
+     *
+     * @param file The file to hash
+     * @return The checksums of the file content
+     * @throws IOException If the file cannot be read
+     */
+    private ContentDigest digest(MultipartFile file) throws IOException {
+        Instant startTime = Instant.now();
+        try (InputStream in = file.getInputStream()) {
+            ContentDigest digest = ContentDigest.of(in);
+            logger.debug("Computed digest {} for file: {}, took: {}ms", digest.sha256(),
+                    file.getOriginalFilename(), Duration.between(startTime, Instant.now()).toMillis());
+            return digest;
+        }
+    }
+
+    /**
+     * Insert a PENDING metadata row for a file that is about to be uploaded, taking a reference
+     * to its content in the same transaction
+     *
+     * @param file The file to upload
+     * @param digest The checksums of the file content
+     * @return The saved pending metadata, carrying the S3 key the file must be stored under,
+     *         and whether this is the first reference to the content
+     */
+    private Reservation reserveUpload(MultipartFile file, ContentDigest digest) {
+        return reserveUpload(newPendingMetadata(file, digest), digest);
+    }
+
+    private Reservation reserveUpload(FileMetadata fileMetadata, ContentDigest digest) {
+        // Save metadata to database with metrics
+        logger.debug("Saving pending file metadata to database");
+        Reservation reservation = transactionTemplate.execute(status -> {
             FileMetadata savedMetadata = metricsService.timeDatabaseQuery("saveFileMetadata", () -> 
                 fileMetadataRepository.save(fileMetadata)
             );
-            
-            logger.info("File metadata saved to database: {}", savedMetadata.getId());
-            
-            return savedMetadata;
+            return new Reservation(savedMetadata, digest, contentStore.addReference(digest, savedMetadata));
+        });
+        
+        logger.debug("Pending file metadata saved to database: {}", reservation.pending().getId());
+        
+        return reservation;
+    }
+
+    /**
+     * Insert the PENDING rows of a batch in one JDBC batch and take their content references,
+     * all in a single transaction
+     *
+     * @param files The files to upload
+     * @param digests The checksums of each file, in the same order
+     * @return One reservation per file, in the same order
+     */
+    private List<Reservation> reserveUploads(List<MultipartFile> files, List<ContentDigest> digests) {
+        List<FileMetadata> pending = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            pending.add(newPendingMetadata(files.get(i), digests.get(i)));
+        }
+
+        // References are taken in digest order so concurrent batches lock content rows in the same order
+        List<Integer> lockOrder = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            lockOrder.add(i);
+        }
+        lockOrder.sort(Comparator.comparing(i -> digests.get(i).sha256()));
+
+        return transactionTemplate.execute(status -> {
+            List<FileMetadata> saved = metricsService.timeDatabaseQuery("saveFileMetadataBatch", () ->
+                fileMetadataRepository.saveAll(pending)
+            );
+            Reservation[] reservations = new Reservation[files.size()];
+            for (int i : lockOrder) {
+                reservations[i] = new Reservation(saved.get(i), digests.get(i),
+                        contentStore.addReference(digests.get(i), saved.get(i)));
+            }
+            return Arrays.asList(reservations);
+        });
+    }
+
+    /**
+     * Whether the bytes of a reserved upload still have to be sent to S3
+     */
+    private boolean needsTransfer(Reservation reservation) {
+        if (reservation.firstReference() || !contentStore.isStored(reservation.pending().getFileName())) {
+            return true;
+        }
+        logger.info("Content {} already stored, skipping S3 transfer", reservation.pending().getFileName());
+        metricsService.incrementApiCounter("file_upload.deduplicated");
+        return false;
+    }
+
+    private CompletableFuture<String> transferAsync(MultipartFile file, Reservation reservation) {
+        try {
+            if (!needsTransfer(reservation)) {
+                return CompletableFuture.completedFuture(reservation.pending().getS3BucketPath());
+            }
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        FileMetadata pending = reservation.pending();
+        transfersInFlight.add(pending.getId());
+        return s3Service.uploadFileAsync(file, pending.getFileName(), reservation.digest().crc32c(),
+                        ContentEncoding.fromToken(pending.getContentEncoding()))
+                .whenComplete((s3Url, ex) -> transfersInFlight.remove(pending.getId()))
+                .thenApply(s3Url -> {
+                    logger.debug("File uploaded to S3, URL: {}", s3Url);
+                    return s3Url;
+                });
+    }
+
+    /**
+     * Build PENDING metadata for a file under its content-addressed S3 key
+     *
+     * @param file The file to upload
+     * @param digest The checksums of the file content
+     * @return The unsaved pending metadata
+     */
+    private FileMetadata newPendingMetadata(MultipartFile file, ContentDigest digest) {
+        FileMetadata fileMetadata = newPendingMetadata(file.getOriginalFilename(), file.getContentType(), file.getSize(), digest);
+        ContentEncoding encoding = chooseEncoding(file.getContentType(), file.getSize());
+        fileMetadata.setContentEncoding(encoding != null ? encoding.token() : null);
+        return fileMetadata;
+    }
+
+    /**
+     * The encoding to store new content in: text formats that compress well are compressed, anything
+     * else (images, PDFs) is already compressed and stored as uploaded
+     */
+    private ContentEncoding chooseEncoding(String contentType, long size) {
+        if (compression == null || contentType == null || size < compressionMinSize) {
+            return null;
+        }
+        return compressibleTypes.contains(contentType.toLowerCase()) ? compression : null;
+    }
+
+    private FileMetadata newPendingMetadata(String originalFileName, String contentType, long size,
+                                            ContentDigest digest) {
+        String key = contentStore.keyFor(digest);
+        
+        // Create file metadata
+        FileMetadata fileMetadata = new FileMetadata();
+        fileMetadata.setFileName(key);
+        fileMetadata.setOriginalFileName(originalFileName);
+        fileMetadata.setS3BucketPath(s3Service.getObjectUrl(key));
+        fileMetadata.setContentType(contentType);
+        fileMetadata.setSizeBytes(size);
+        fileMetadata.setContentDigest(digest.sha256());
+        fileMetadata.setStatus(UploadStatus.PENDING);
+        return fileMetadata;
+    }
+
+    /**
+     * Start an upload that the client sends straight to S3: a PENDING row is reserved and a PUT URL
+     * is presigned for the content-addressed key. The declared size and SHA-256 are signed into the
+     * URL, so S3 only accepts exactly those bytes. If the content is already stored no URL is issued
+     * and the upload can be confirmed right away.
+     *
+     * @param originalFileName The client's file name
+     * @param contentType The content type of the file
+     * @param size The exact size of the file in bytes
+     * @param sha256 The hex encoded SHA-256 of the file
+     * @return The pending upload and, if the bytes are needed, the URL to send them to
+     */
+    public DirectUpload initiateDirectUpload(String originalFileName, String contentType, long size, String sha256) {
+        logger.info("Starting direct upload for file: {}", originalFileName);
+
+        ContentDigest digest = new ContentDigest(sha256, null, size);
+        Reservation reservation = reserveUpload(newPendingMetadata(originalFileName, contentType, size, digest), digest);
+        FileMetadata pending = reservation.pending();
+
+        try {
+            if (!needsTransfer(reservation)) {
+                return new DirectUpload(pending, null, Map.of(), null);
+            }
+            if (pending.getContentEncoding() != null) {
+                // Registered compressed by an upload that has not finished; raw bytes must not replace it
+                throw new IllegalStateException("The same content is still being uploaded, retry shortly");
+            }
+
+            PresignedPutObjectRequest presigned = s3Service.presignUpload(
+                    pending.getFileName(), contentType, size, digest.sha256Base64(), presignTtl);
+
+            // Host is set by the HTTP client itself; every other signed header must be sent as-is
+            Map<String, String> headers = new HashMap<>();
+            presigned.signedHeaders().forEach((name, values) -> {
+                if (!name.equalsIgnoreCase("host")) {
+                    headers.put(name, String.join(",", values));
+                }
+            });
+
+            metricsService.incrementApiCounter("file_upload.presigned");
+            return new DirectUpload(pending, presigned.url().toString(), headers, presigned.expiration());
         } catch (Exception e) {
-            logger.error("Error uploading file and saving metadata", e);
-            throw new RuntimeException("Failed to process file upload: " + e.getMessage(), e);
+            logger.error("Error starting direct upload for file: {}", originalFileName, e);
+            discardUpload(pending);
+            throw new RuntimeException("Failed to start direct upload: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Confirm a direct upload once the client has sent the bytes to S3. The object's size and
+     * stored SHA-256 are checked with a HeadObject before the row is committed.
+     *
+     * @param id The ID of the pending upload
+     * @return The committed file metadata
+     * @throws IllegalArgumentException if there is no pending upload with this ID
+     * @throws IllegalStateException if the object is missing or does not match what was declared
+     */
+    public FileMetadata confirmDirectUpload(UUID id) {
+        if (id == null) {
+            logger.warn("Attempted to confirm upload with null ID");
+            throw new IllegalArgumentException("File ID cannot be null");
+        }
+
+        final FileMetadata pending = metricsService.timeDatabaseQuery("findPendingUpload", () ->
+            findOnPrimary(id, UploadStatus.PENDING)
+                .orElseThrow(() -> new IllegalArgumentException("Pending upload not found with ID: " + id))
+        );
+
+        HeadObjectResponse head = s3Service.headObject(pending.getFileName());
+        if (head == null) {
+            throw new IllegalStateException("File has not been uploaded yet");
+        }
+        if (pending.getContentEncoding() != null) {
+            // Already stored compressed by an earlier upload of the same content, not sent by this client
+            return commitUpload(pending);
+        }
+        if (!pending.getSizeBytes().equals(head.contentLength())) {
+            logger.warn("Size mismatch for upload {}: expected {}, found {}", id, pending.getSizeBytes(), head.contentLength());
+            throw new IllegalStateException("Uploaded size does not match the declared size");
+        }
+        // Objects stored through this service before presigning existed carry no SHA-256; their key is their digest
+        String expectedChecksum = new ContentDigest(pending.getContentDigest(), null, pending.getSizeBytes()).sha256Base64();
+        if (head.checksumSHA256() != null && !head.checksumSHA256().equals(expectedChecksum)) {
+            logger.warn("Checksum mismatch for upload {}", id);
+            throw new IllegalStateException("Uploaded checksum does not match the declared checksum");
+        }
+
+        return commitUpload(pending);
+    }
+
+    /**
+     * Mark a pending upload as committed once its object is stored in S3
+     *
+     * @param pending The pending metadata
+     * @return The committed metadata
+     */
+    private FileMetadata commitUpload(FileMetadata pending) {
+        LocalDateTime now = LocalDateTime.now();
+        int updated = metricsService.timeDatabaseQuery("commitFileMetadata", () ->
+            fileMetadataRepository.updateStatus(pending.getId(), UploadStatus.COMMITTED, now)
+        );
+        if (updated == 0) {
+            // Swept, or committed by another request, since it was read
+            throw new IllegalStateException("Pending upload no longer exists: " + pending.getId());
+        }
+        
+        pending.setStatus(UploadStatus.COMMITTED);
+        pending.setLastModified(now);
+        metadataCache.put(pending);
+        logger.info("File metadata saved to database: {}", pending.getId());
+        
+        return pending;
+    }
+
+    /**
+     * Renew the lease on the PENDING rows of transfers still in progress here, so
+     * {@link PendingUploadSweeper} does not remove them however long a large upload takes. Rows of an
+     * instance that died are no longer renewed and are swept once their lease runs out.
+     */
+    @Scheduled(fixedDelayString = "${app.uploads.lease-renewal-interval:PT5M}",
+               initialDelayString = "${app.uploads.lease-renewal-interval:PT5M}")
+    public void renewTransferLeases() {
+        if (transfersInFlight.isEmpty()) {
+            return;
+        }
+        List<UUID> ids = List.copyOf(transfersInFlight);
+        try {
+            int renewed = metricsService.timeDatabaseQuery("renewPendingLeases", () ->
+                fileMetadataRepository.touch(ids, UploadStatus.PENDING, LocalDateTime.now())
+            );
+            logger.debug("Renewed leases of {} pending uploads in progress", renewed);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to renew leases of {} pending uploads", ids.size(), e);
+        }
+    }
+
+    /**
+     * Look up a row that is about to be changed. The read runs in a read-write transaction so it is
+     * sent to the primary: a lagging replica may not have the row yet, and the rest of the request
+     * then stays on the primary too.
+     *
+     * @param id The file ID
+     * @param status The status the row must have
+     * @return Optional containing the metadata if found
+     */
+    private Optional<FileMetadata> findOnPrimary(UUID id, UploadStatus status) {
+        return transactionTemplate.execute(tx -> fileMetadataRepository.findByIdAndStatus(id, status));
+    }
+
+    /**
+     * Remove the pending row of an upload whose S3 transfer failed and release its content reference.
+     * Failures are only logged: the sweeper removes whatever is left behind.
+     *
+     * @param pending The pending metadata
+     */
+    private void discardUpload(FileMetadata pending) {
+        try {
+            contentStore.release(pending);
+            logger.debug("Discarded pending upload: {}", pending.getId());
+        } catch (Exception e) {
+            logger.warn("Failed to discard pending upload {}, leaving it for the sweeper", pending.getId(), e);
         }
     }
     
     /**
-     * Get file metadata by ID
+     * Get file metadata by ID. Committed rows never change, so they are served from
+     * {@link FileMetadataCache} and only a miss reaches the database.
      *
      * @param id The file ID
-     * @return Optional containing file metadata if found
+     * @return Optional containing file metadata if found; the instance is shared and must not be modified
      */
     public Optional<FileMetadata> getFileById(UUID id) {
         if (id == null) {
@@ -100,30 +785,130 @@ public class FileService {
         }
         
         logger.debug("Fetching file metadata for ID: {}", id);
-        return metricsService.timeDatabaseQuery("getFileById", () -> 
-            fileMetadataRepository.findById(id)
-        );
+        return metadataCache.get(id, () -> metricsService.timeDatabaseQuery("getFileById", () -> 
+            fileMetadataRepository.findByIdAndStatus(id, UploadStatus.COMMITTED)
+        ));
     }
     
     /**
-     * Get all file metadata entries
+     * Open a byte range of a file's content for streaming. Compressed content is decoded on the fly,
+     * reading from the start of the stored object up to the range.
      *
-     * @return List of all file metadata
+     * @param metadata The committed metadata of the file
+     * @param start The first byte to read
+     * @param end The last byte to read, inclusive
+     * @return A stream over the requested bytes; the caller must close it
+     * @throws IllegalStateException if the file's object is missing from S3
      */
-    public List<FileMetadata> getAllFiles() {
-        logger.debug("Fetching all file metadata");
-        return metricsService.timeDatabaseQuery("getAllFiles", () -> 
-            fileMetadataRepository.findAll()
-        );
+    public InputStream openContent(FileMetadata metadata, long start, long end) {
+        ContentEncoding encoding = ContentEncoding.fromToken(metadata.getContentEncoding());
+        if (encoding != null) {
+            StoredContent stored = openStoredContent(metadata);
+            try {
+                InputStream decoded = encoding.decode(stored.content());
+                decoded.skipNBytes(start);
+                return new RangeInputStream(decoded, stored.content(), end - start + 1);
+            } catch (IOException e) {
+                closeQuietly(stored.content());
+                throw new UncheckedIOException("Failed to decode file content", e);
+            }
+        }
+
+        InputStream cached = contentCache.open(metadata.getFileName(), metadata.getSizeBytes(), start, end);
+        if (cached != null) {
+            return cached;
+        }
+
+        boolean whole = start == 0 && end == metadata.getSizeBytes() - 1;
+        InputStream content = s3Service.getObject(metadata.getFileName(), whole ? null : start, whole ? null : end);
+        if (content == null) {
+            logger.error("Object missing from S3 for file {}: {}", metadata.getId(), metadata.getFileName());
+            throw new IllegalStateException("File content not found");
+        }
+        return content;
+    }
+
+    /**
+     * Open a file's object exactly as stored, so compressed content can be sent to clients that accept
+     * its encoding without decoding it
+     *
+     * @param metadata The committed metadata of the file
+     * @return The stored bytes and their length; the caller must close the stream
+     * @throws IllegalStateException if the file's object is missing from S3
+     */
+    public StoredContent openStoredContent(FileMetadata metadata) {
+        // Only content that compresses well is stored compressed, so the original size bounds the stored size
+        StoredContent cached = contentCache.openStored(metadata.getFileName(), metadata.getSizeBytes());
+        if (cached != null) {
+            return cached;
+        }
+
+        ResponseInputStream<GetObjectResponse> content = s3Service.getObject(metadata.getFileName(), null, null);
+        if (content == null) {
+            logger.error("Object missing from S3 for file {}: {}", metadata.getId(), metadata.getFileName());
+            throw new IllegalStateException("File content not found");
+        }
+        return new StoredContent(content, content.response().contentLength());
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close content stream", e);
+        }
     }
     
     /**
-     * Delete a file from S3 and its metadata from the database
+     * Strong entity tag of a file's content. Content never changes under a file ID, so the content
+     * digest (or the ID, for files stored before digests) identifies it without asking S3.
+     *
+     * @param metadata The file metadata
+     * @return The quoted entity tag
+     */
+    public String getContentETag(FileMetadata metadata) {
+        String tag = metadata.getContentDigest() != null ? metadata.getContentDigest() : metadata.getId().toString();
+        return "\"" + tag + "\"";
+    }
+    
+    /**
+     * List committed files oldest first, one keyset page at a time
+     *
+     * @param after Cursor returned with the previous page, or null for the first page
+     * @param limit Maximum number of files on the page
+     * @param contentType Only list files of this content type, or null for all
+     * @return The page and the cursor of the next one
+     * @throws IllegalArgumentException if the cursor is not one this service issued
+     */
+    public FilePage listFiles(String after, int limit, String contentType) {
+        logger.debug("Listing files after cursor {} with limit {}", after, limit);
+        // One row past the page tells whether another page follows
+        Pageable window = PageRequest.of(0, limit + 1);
+        List<FileSummary> rows;
+        if (after == null) {
+            rows = metricsService.timeDatabaseQuery("listFiles", () ->
+                fileMetadataRepository.findFirstPage(UploadStatus.COMMITTED, contentType, window)
+            );
+        } else {
+            Cursor cursor = Cursor.decode(after);
+            rows = metricsService.timeDatabaseQuery("listFiles", () ->
+                fileMetadataRepository.findPageAfter(UploadStatus.COMMITTED, cursor.uploadDate(), cursor.id(), contentType, window)
+            );
+        }
+        if (rows.size() <= limit) {
+            return new FilePage(rows, null);
+        }
+        List<FileSummary> page = rows.subList(0, limit);
+        return new FilePage(page, Cursor.of(page.get(limit - 1)).encode());
+    }
+    
+    /**
+     * Delete a file's metadata from the database and its object from S3 once no other file
+     * shares the same content.
      *
      * @param id The file ID
      * @throws IllegalArgumentException if file not found
      */
-    @Transactional
     public void deleteFile(UUID id) {
         if (id == null) {
             logger.warn("Attempted to delete file with null ID");
@@ -134,25 +919,15 @@ public class FileService {
         
         // Get file metadata with metrics
         final FileMetadata metadata = metricsService.timeDatabaseQuery("findFileForDeletion", () -> 
-            fileMetadataRepository.findById(id)
+            findOnPrimary(id, UploadStatus.COMMITTED)
                 .orElseThrow(() -> new IllegalArgumentException("File not found with ID: " + id))
         );
         
         try {
-            logger.info("Deleting file from S3: {}", metadata.getS3BucketPath());
-            
-            // Delete from S3 with metrics
-            metricsService.timeS3Operation("deleteFile", () -> {
-                s3Service.deleteFile(metadata.getS3BucketPath());
-                return null; // Need to return something due to generics
-            });
-            
-            // Delete from database with metrics
-            logger.debug("Deleting file metadata from database, ID: {}", id);
-            metricsService.timeDatabaseQuery("deleteFileMetadata", () -> {
-                fileMetadataRepository.delete(metadata);
-                return null; // Need to return something due to generics
-            });
+            // Drops the row and its content reference; the S3 object goes with the last reference
+            logger.info("Deleting file: {}", metadata.getS3BucketPath());
+            contentStore.release(metadata);
+            invalidationBus.fileDeleted(metadata);
             
             logger.info("File deleted with ID: {}", id);
         } catch (Exception e) {
@@ -162,34 +937,132 @@ public class FileService {
     }
     
     /**
-     * Extract the key from a S3 URL
+     * Delete a file from S3 without blocking the calling thread, then remove its metadata
      *
-     * @param url The S3 URL
-     * @return The key part of the URL
+     * @param id The file ID
+     * @return A future completed once the file and its metadata are deleted
+     * @throws IllegalArgumentException if file not found
      */
-    private String extractKeyFromUrl(String url) {
-        if (url == null) {
-            return null;
+    public CompletableFuture<Void> deleteFileAsync(UUID id) {
+        if (id == null) {
+            logger.warn("Attempted to delete file with null ID");
+            throw new IllegalArgumentException("File ID cannot be null");
         }
-        
-        // Handle URLs in format https://bucket-name.s3.amazonaws.com/key
-        if (url.contains(bucketName + ".s3.amazonaws.com/")) {
-            return url.substring(url.indexOf(bucketName + ".s3.amazonaws.com/") 
-                    + (bucketName + ".s3.amazonaws.com/").length());
+
+        logger.debug("Looking up file metadata for deletion, ID: {}", id);
+
+        final FileMetadata metadata = metricsService.timeDatabaseQuery("findFileForDeletion", () ->
+            findOnPrimary(id, UploadStatus.COMMITTED)
+                .orElseThrow(() -> new IllegalArgumentException("File not found with ID: " + id))
+        );
+
+        if (metadata.getContentDigest() != null) {
+            // Shared content is released under a row lock, which is blocking JDBC work
+            return CompletableFuture.runAsync(() -> {
+                        contentStore.release(metadata);
+                        invalidationBus.fileDeleted(metadata);
+                        logger.info("File deleted with ID: {}", id);
+                    }, databaseExecutor)
+                    .whenComplete((ignored, ex) -> {
+                        if (ex != null) {
+                            logger.error("Error deleting file with ID: {}", id, ex);
+                        }
+                    });
         }
-        
-        // Handle URLs in format s3://bucket-name/key
-        if (url.startsWith("s3://" + bucketName + "/")) {
-            return url.substring(("s3://" + bucketName + "/").length());
+
+        logger.info("Deleting file from S3: {}", metadata.getS3BucketPath());
+
+        contentCache.invalidate(metadata.getFileName());
+        return s3Service.deleteFileAsync(metadata.getS3BucketPath())
+                .thenRunAsync(() -> {
+                    logger.debug("Deleting file metadata from database, ID: {}", id);
+                    metricsService.timeDatabaseQuery("deleteFileMetadata", () -> {
+                        fileMetadataRepository.delete(metadata);
+                        return null; // Need to return something due to generics
+                    });
+                    invalidationBus.fileDeleted(metadata);
+                    logger.info("File deleted with ID: {}", id);
+                }, databaseExecutor)
+                .whenComplete((ignored, ex) -> {
+                    if (ex != null) {
+                        logger.error("Error deleting file with ID: {}", id, ex);
+                    }
+                });
+    }
+
+    // Position in the (upload_date, id) listing order, sent to clients as opaque base64url
+    private record Cursor(LocalDateTime uploadDate, UUID id) {
+
+        static Cursor of(FileSummary file) {
+            return new Cursor(file.uploadDate(), file.id());
         }
-        
-        // Handle URLs in format https://s3.amazonaws.com/bucket-name/key
-        if (url.contains("s3.amazonaws.com/" + bucketName + "/")) {
-            return url.substring(url.indexOf("s3.amazonaws.com/" + bucketName + "/") 
-                    + ("s3.amazonaws.com/" + bucketName + "/").length());
+
+        static Cursor decode(String value) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8).split("\\|", 2);
+                return new Cursor(LocalDateTime.parse(parts[0]), UUID.fromString(parts[1]));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+        }
+
+        String encode() {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString((uploadDate + "|" + id).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // A PENDING row together with the content it refers to
+    private record Reservation(FileMetadata pending, ContentDigest digest, boolean firstReference) {
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        databaseExecutor.shutdown();
+    }
+
+    /**
+     * Limits a decoded stream to one range; aborting it aborts the underlying S3 download
+     */
+    private static final class RangeInputStream extends FilterInputStream implements Abortable {
+        private final InputStream stored;
+        private long remaining;
+
+        RangeInputStream(InputStream decoded, InputStream stored, long length) {
+            super(decoded);
+            this.stored = stored;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read();
+            if (read != -1) {
+                remaining--;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public void abort() {
+            if (stored instanceof Abortable abortable) {
+                abortable.abort();
+            }
         }
-        
-        logger.warn("Could not extract key from URL: {}", url);
-        return url; // Return the URL as a fallback
     }
-}
\ No newline at end of file
+}
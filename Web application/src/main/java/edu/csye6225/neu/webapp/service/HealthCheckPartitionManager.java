@@ -0,0 +1,192 @@
+package edu.csye6225.neu.webapp.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps {@code health_check} partitioned by day and drops partitions once they fall out of the
+ * retention window, so removing expired probes costs one DROP per day however many rows it held.
+ * <p>
+ * On first run the table Hibernate created is renamed to {@code health_check_legacy_<date>} and
+ * replaced by a table partitioned on {@code datetime}, with the same columns; the legacy table is
+ * dropped like a partition of its last day. Partitions are created a few days ahead, and a default
+ * partition catches rows for days that have none; they are moved out when their day's partition is
+ * created. Each run holds an advisory lock, so only one instance maintains the table at a time.
+ * Days follow the JVM time zone, which is how {@code datetime} values are written.
+ */
+@Service
+@ConditionalOnProperty(name = "app.health.retention.enabled", havingValue = "true")
+public class HealthCheckPartitionManager {
+    private static final Logger logger = LoggerFactory.getLogger(HealthCheckPartitionManager.class);
+
+    private static final String TABLE = "health_check";
+    private static final String DEFAULT_PARTITION = TABLE + "_default";
+    private static final String SEQUENCE = TABLE + "_id_seq";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final Pattern DATED_TABLE = Pattern.compile(TABLE + "_(?:p|legacy_)(\\d{8})");
+
+    private static final String LIST_DATED_TABLES = "SELECT c.relname FROM pg_inherits i "
+            + "JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = to_regclass(?) "
+            + "UNION ALL SELECT tablename FROM pg_tables "
+            + "WHERE schemaname = current_schema() AND tablename LIKE ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MetricsService metricsService;
+    private final Duration retention;
+    private final int premakeDays;
+    private final Duration lockTimeout;
+
+    @Autowired
+    public HealthCheckPartitionManager(JdbcTemplate jdbcTemplate,
+                                       TransactionTemplate transactionTemplate,
+                                       MetricsService metricsService,
+                                       @Value("${app.health.retention.period:P14D}") Duration retention,
+                                       @Value("${app.health.retention.premake-days:7}") int premakeDays,
+                                       @Value("${app.health.retention.lock-timeout:PT5S}") Duration lockTimeout) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.metricsService = metricsService;
+        this.retention = retention;
+        this.premakeDays = premakeDays;
+        this.lockTimeout = lockTimeout;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        scheduledMaintain();
+    }
+
+    @Scheduled(fixedDelayString = "${app.health.retention.interval:PT1H}",
+               initialDelayString = "${app.health.retention.interval:PT1H}")
+    public void scheduledMaintain() {
+        try {
+            maintain();
+        } catch (Exception e) {
+            logger.error("health_check partition maintenance failed", e);
+            metricsService.incrementApiCounter("health_check.partitions.error");
+        }
+    }
+
+    /**
+     * Partition the table if it is not yet, create the partitions for the coming days and drop those
+     * past the retention window
+     */
+    public void maintain() {
+        LocalDateTime now = LocalDateTime.now();
+        transactionTemplate.executeWithoutResult(status -> {
+            Boolean locked = jdbcTemplate.queryForObject(
+                    "SELECT pg_try_advisory_xact_lock(hashtext(?))", Boolean.class, TABLE);
+            if (!Boolean.TRUE.equals(locked)) {
+                logger.debug("health_check partitions are being maintained by another instance");
+                return;
+            }
+            // DDL waits behind probes' inserts at most this long instead of queueing them up behind it
+            jdbcTemplate.execute("SET LOCAL lock_timeout = '" + lockTimeout.toMillis() + "ms'");
+
+            partitionTable(now.toLocalDate());
+            int created = 0;
+            for (int day = 0; day <= premakeDays; day++) {
+                if (createPartition(now.toLocalDate().plusDays(day))) {
+                    created++;
+                }
+            }
+            LocalDateTime cutoff = now.minus(retention);
+            int dropped = dropExpired(cutoff);
+            jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE datetime < ?", Timestamp.valueOf(cutoff));
+
+            if (created > 0 || dropped > 0) {
+                logger.info("health_check partitions: {} created, {} dropped", created, dropped);
+            }
+            metricsService.incrementCounter("health_check.partitions.created", created);
+            metricsService.incrementCounter("health_check.partitions.dropped", dropped);
+        });
+    }
+
+    private void partitionTable(LocalDate today) {
+        List<String> kind = jdbcTemplate.queryForList(
+                "SELECT relkind::text FROM pg_class WHERE oid = to_regclass(?)", String.class, TABLE);
+        if (kind.contains("p")) {
+            return;
+        }
+        String legacy = null;
+        if (!kind.isEmpty()) {
+            legacy = TABLE + "_legacy_" + SUFFIX.format(today);
+            logger.info("Converting {} to a partitioned table; existing rows are kept in {}", TABLE, legacy);
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " RENAME TO " + legacy);
+        }
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + SEQUENCE);
+        if (legacy != null) {
+            jdbcTemplate.execute("SELECT setval('" + SEQUENCE + "', COALESCE((SELECT max(check_id) FROM " + legacy
+                    + "), 0) + 1, false)");
+        }
+        // The partition key has to be part of the primary key
+        jdbcTemplate.execute("CREATE TABLE " + TABLE + " ("
+                + "check_id BIGINT NOT NULL DEFAULT nextval('" + SEQUENCE + "'), "
+                + "datetime TIMESTAMP(6) NOT NULL, "
+                + "CONSTRAINT " + TABLE + "_partitioned_pkey PRIMARY KEY (check_id, datetime)"
+                + ") PARTITION BY RANGE (datetime)");
+        jdbcTemplate.execute("ALTER SEQUENCE " + SEQUENCE + " OWNED BY " + TABLE + ".check_id");
+        jdbcTemplate.execute("CREATE TABLE " + DEFAULT_PARTITION + " PARTITION OF " + TABLE + " DEFAULT");
+    }
+
+    private boolean createPartition(LocalDate day) {
+        String partition = TABLE + "_p" + SUFFIX.format(day);
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT to_regclass(?) IS NOT NULL", Boolean.class, partition))) {
+            return false;
+        }
+        String bounds = "FOR VALUES FROM ('" + day + "') TO ('" + day.plusDays(1) + "')";
+        Timestamp from = Timestamp.valueOf(day.atStartOfDay());
+        Timestamp to = Timestamp.valueOf(day.plusDays(1).atStartOfDay());
+        Boolean stray = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION
+                + " WHERE datetime >= ? AND datetime < ?)", Boolean.class, from, to);
+        if (!Boolean.TRUE.equals(stray)) {
+            jdbcTemplate.execute("CREATE TABLE " + partition + " PARTITION OF " + TABLE + " " + bounds);
+            return true;
+        }
+        // Rows that went to the default partition must leave it before their range can be attached
+        jdbcTemplate.execute("CREATE TABLE " + partition + " (LIKE " + TABLE + " INCLUDING DEFAULTS)");
+        jdbcTemplate.update("INSERT INTO " + partition + " SELECT * FROM " + DEFAULT_PARTITION
+                + " WHERE datetime >= ? AND datetime < ?", from, to);
+        jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE datetime >= ? AND datetime < ?", from, to);
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " ATTACH PARTITION " + partition + " " + bounds);
+        return true;
+    }
+
+    private int dropExpired(LocalDateTime cutoff) {
+        int dropped = 0;
+        for (String table : jdbcTemplate.queryForList(LIST_DATED_TABLES, String.class, TABLE,
+                TABLE + "\\_legacy\\_%")) {
+            Matcher matcher = DATED_TABLE.matcher(table);
+            if (!matcher.matches()) {
+                continue;
+            }
+            // A table holds rows up to the end of its day at the latest
+            LocalDate day = LocalDate.parse(matcher.group(1), SUFFIX);
+            if (!day.plusDays(1).atStartOfDay().isAfter(cutoff)) {
+                jdbcTemplate.execute("DROP TABLE " + table);
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+}
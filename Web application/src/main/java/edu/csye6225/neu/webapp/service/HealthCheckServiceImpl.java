@@ -5,33 +5,117 @@ import edu.csye6225.neu.webapp.repository.HealthCheckRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Database health probe whose cost does not grow with how often it is polled.
+ * <p>
+ * A result is reused for the configured TTL, and callers arriving while a probe is running wait for
+ * that probe instead of starting their own. A probe normally just validates a pooled connection;
+ * the deep check, which inserts a {@link HealthCheck} row, is opt-in and runs for the configured
+ * fraction of probes only.
+ */
 @Service
 public class HealthCheckServiceImpl implements HealthCheckService {
     private static final Logger logger = LoggerFactory.getLogger(HealthCheckServiceImpl.class);
 
+    private record ProbeResult(boolean healthy, long checkedAtNanos) {
+    }
+
+    private final HealthCheckRepository healthCheckRepository;
+    private final DataSource dataSource;
+    private final MetricsService metricsService;
+    private final long resultTtlNanos;
+    private final int validationTimeoutSeconds;
+    private final double deepCheckRate;
+
+    private final AtomicReference<CompletableFuture<Boolean>> inFlight = new AtomicReference<>();
+    private volatile ProbeResult lastResult;
+
     @Autowired
-    private HealthCheckRepository healthCheckRepository;
-    
-    @Autowired
-    private MetricsService metricsService;
+    public HealthCheckServiceImpl(HealthCheckRepository healthCheckRepository,
+                                  DataSource dataSource,
+                                  MetricsService metricsService,
+                                  @Value("${app.health.result-ttl:PT5S}") Duration resultTtl,
+                                  @Value("${app.health.validation-timeout:PT2S}") Duration validationTimeout,
+                                  @Value("${app.health.deep-check-rate:0}") double deepCheckRate) {
+        this.healthCheckRepository = healthCheckRepository;
+        this.dataSource = dataSource;
+        this.metricsService = metricsService;
+        this.resultTtlNanos = resultTtl.toNanos();
+        this.validationTimeoutSeconds = (int) Math.max(1, validationTimeout.toSeconds());
+        this.deepCheckRate = deepCheckRate;
+    }
 
     @Override
     public boolean performHealthCheck() {
-        logger.info("Starting health check operation");
+        ProbeResult cached = freshResult();
+        if (cached != null) {
+            metricsService.incrementApiCounter("health_check.cached");
+            return cached.healthy();
+        }
+
+        CompletableFuture<Boolean> probe = new CompletableFuture<>();
+        CompletableFuture<Boolean> running = inFlight.compareAndExchange(null, probe);
+        if (running != null) {
+            metricsService.incrementApiCounter("health_check.coalesced");
+            return running.join();
+        }
+        try {
+            // Another probe may have finished between the cache check and taking over
+            cached = freshResult();
+            boolean healthy = cached != null ? cached.healthy() : probe();
+            probe.complete(healthy);
+            return healthy;
+        } finally {
+            probe.complete(false);
+            inFlight.set(null);
+        }
+    }
+
+    private ProbeResult freshResult() {
+        ProbeResult result = lastResult;
+        return result != null && System.nanoTime() - result.checkedAtNanos() < resultTtlNanos ? result : null;
+    }
+
+    private boolean probe() {
+        boolean deep = deepCheckRate > 0 && ThreadLocalRandom.current().nextDouble() < deepCheckRate;
+        logger.debug("Starting {} health check", deep ? "deep" : "connection");
+        boolean healthy;
         try {
-            // Use metrics service to time the database operation
-            HealthCheck healthCheck = metricsService.timeDatabaseQuery("healthCheck", () -> {
-                HealthCheck check = new HealthCheck();
-                return healthCheckRepository.save(check);
-            });
-            
-            logger.info("Health check completed successfully");
-            return true;
+            healthy = metricsService.timeDatabaseQuery(deep ? "healthCheck" : "healthCheck.validate",
+                    () -> deep ? insertCheck() : validateConnection());
         } catch (Exception e) {
             logger.error("Health check operation failed", e);
+            healthy = false;
+        }
+        lastResult = new ProbeResult(healthy, System.nanoTime());
+        if (!healthy) {
+            metricsService.incrementApiCounter("health_check.unhealthy");
+        }
+        return healthy;
+    }
+
+    private boolean insertCheck() {
+        healthCheckRepository.save(new HealthCheck());
+        return true;
+    }
+
+    private boolean validateConnection() {
+        try (Connection connection = dataSource.getConnection()) {
+            return connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            logger.error("Health check could not validate a database connection", e);
             return false;
         }
     }
-}
\ No newline at end of file
+}
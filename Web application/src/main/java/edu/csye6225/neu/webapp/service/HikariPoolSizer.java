@@ -0,0 +1,116 @@
+package edu.csye6225.neu.webapp.service;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Adjusts the maximum size of each Hikari pool, within fixed bounds, from the acquisition waits
+ * measured over the last interval.
+ * <p>
+ * A pool grows while acquisitions wait longer than the grow threshold on average or time out,
+ * by one connection per waiting thread. It shrinks one connection at a time once it has spent
+ * several intervals with short waits, nobody waiting and at least two connections spare; Hikari
+ * closes the surplus as connections go idle. The upper bound times the number of instances must
+ * stay below the database's {@code max_connections}.
+ */
+@Service
+public class HikariPoolSizer {
+    private static final Logger logger = LoggerFactory.getLogger(HikariPoolSizer.class);
+
+    private final ObjectProvider<HikariDataSource> hikariDataSources;
+    private final PoolSaturationMonitor monitor;
+    private final MetricsService metricsService;
+    private final boolean enabled;
+    private final int minSize;
+    private final int maxSize;
+    private final double growWaitMillis;
+    private final int shrinkAfter;
+    private final Map<String, PoolState> pools = new ConcurrentHashMap<>();
+
+    @Autowired
+    public HikariPoolSizer(ObjectProvider<HikariDataSource> hikariDataSources,
+                           PoolSaturationMonitor monitor,
+                           MetricsService metricsService,
+                           @Value("${app.db.pool.adaptive.enabled:false}") boolean enabled,
+                           @Value("${app.db.pool.adaptive.min-size:2}") int minSize,
+                           @Value("${app.db.pool.adaptive.max-size:8}") int maxSize,
+                           @Value("${app.db.pool.adaptive.grow-wait:PT0.02S}") Duration growWait,
+                           @Value("${app.db.pool.adaptive.shrink-after:30}") int shrinkAfter) {
+        if (minSize < 1 || maxSize < minSize) {
+            throw new IllegalArgumentException("Invalid adaptive pool bounds " + minSize + ".." + maxSize);
+        }
+        this.hikariDataSources = hikariDataSources;
+        this.monitor = monitor;
+        this.metricsService = metricsService;
+        this.enabled = enabled;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.growWaitMillis = growWait.toNanos() / 1_000_000.0;
+        this.shrinkAfter = shrinkAfter;
+    }
+
+    @Scheduled(fixedDelayString = "${app.db.pool.adaptive.interval:PT10S}")
+    public void resize() {
+        if (!enabled) {
+            return;
+        }
+        hikariDataSources.orderedStream().forEach(this::resize);
+    }
+
+    private void resize(HikariDataSource dataSource) {
+        PoolSaturation now = monitor.hikari(dataSource);
+        if (now == null || now.acquires() < 0) {
+            return;
+        }
+        PoolState state = pools.computeIfAbsent(now.pool(), name -> new PoolState());
+        PoolSaturation previous = state.previous;
+        state.previous = now;
+        if (previous == null) {
+            return;
+        }
+
+        HikariConfigMXBean config = dataSource.getHikariConfigMXBean();
+        int current = config.getMaximumPoolSize();
+        double meanWaitMillis = now.meanAcquireWaitMillisSince(previous);
+        boolean timedOut = now.timeouts() > previous.timeouts();
+        int target = current;
+        if (timedOut || meanWaitMillis > growWaitMillis) {
+            state.calmIntervals = 0;
+            target = Math.min(maxSize, current + Math.max(1, now.pending()));
+        } else if (meanWaitMillis < growWaitMillis / 4 && now.pending() == 0 && now.active() < current - 1) {
+            if (++state.calmIntervals >= shrinkAfter) {
+                state.calmIntervals = 0;
+                target = Math.max(minSize, current - 1);
+            }
+        } else {
+            state.calmIntervals = 0;
+        }
+        if (target == current) {
+            return;
+        }
+
+        logger.info("Resizing pool {} from {} to {} connections (mean acquire wait {} ms, timeouts {})",
+                now.pool(), current, target, String.format("%.2f", meanWaitMillis), timedOut);
+        if (config.getMinimumIdle() > target) {
+            config.setMinimumIdle(target);
+        }
+        config.setMaximumPoolSize(target);
+        metricsService.incrementApiCounter("pool." + now.pool() + (target > current ? ".grown" : ".shrunk"));
+    }
+
+    private static final class PoolState {
+        PoolSaturation previous;
+        int calmIntervals;
+    }
+}
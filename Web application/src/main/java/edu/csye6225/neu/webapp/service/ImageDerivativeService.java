@@ -0,0 +1,352 @@
+package edu.csye6225.neu.webapp.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates resized and transcoded variants of uploaded images after the upload has been answered.
+ * <p>
+ * Work runs on a small fixed pool with a bounded queue. When the queue is full new images are not
+ * processed and keep being served in their original form, so a burst of uploads never slows the
+ * upload path or grows memory without bound. Variants are stored under
+ * {@code images/derived/<image>/<width>.<ext>}, which lets the serving side find them by name without
+ * any metadata. Formats are configured by MIME type and encoded with ImageIO, so a format is only
+ * produced if an ImageIO writer for it is on the classpath.
+ */
+@Service
+public class ImageDerivativeService {
+    private static final Logger logger = LoggerFactory.getLogger(ImageDerivativeService.class);
+
+    public static final String DERIVED_KEY_PREFIX = "images/derived/";
+
+    private static final Map<String, String> EXTENSIONS = Map.of(
+            "image/jpeg", "jpg",
+            "image/png", "png",
+            "image/webp", "webp",
+            "image/avif", "avif");
+
+    private final S3Service s3Service;
+    private final MetricsService metricsService;
+    private final List<Integer> widths;
+    private final List<MediaType> formats;
+    private final float quality;
+    private final long maxPixels;
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public ImageDerivativeService(S3Service s3Service,
+                                  MetricsService metricsService,
+                                  @Value("${app.images.derivatives.widths:160,480,1024}") List<Integer> widths,
+                                  @Value("${app.images.derivatives.formats:image/webp,image/jpeg}") List<String> formats,
+                                  @Value("${app.images.derivatives.quality:0.8}") float quality,
+                                  @Value("${app.images.derivatives.max-pixels:25000000}") long maxPixels,
+                                  @Value("${app.images.derivatives.workers:2}") int workers,
+                                  @Value("${app.images.derivatives.queue-capacity:100}") int queueCapacity) {
+        this.s3Service = s3Service;
+        this.metricsService = metricsService;
+        this.widths = widths.stream().sorted().distinct().toList();
+        this.formats = supportedFormats(formats);
+        this.quality = quality;
+        this.maxPixels = maxPixels;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "image-derivatives-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        logger.info("ImageDerivativeService initialized: widths={}, formats={}, workers={}, queueCapacity={}",
+                this.widths, this.formats, workers, queueCapacity);
+    }
+
+    private static List<MediaType> supportedFormats(List<String> configured) {
+        List<MediaType> supported = new ArrayList<>();
+        for (String format : configured) {
+            if (!EXTENSIONS.containsKey(format)) {
+                throw new IllegalArgumentException("Unknown image derivative format: " + format);
+            }
+            if (ImageIO.getImageWritersByMIMEType(format).hasNext()) {
+                supported.add(MediaType.parseMediaType(format));
+            } else {
+                logger.info("No ImageIO writer for {}, derivatives in this format are not generated", format);
+            }
+        }
+        return List.copyOf(supported);
+    }
+
+    /**
+     * The key a variant of an image is stored under
+     *
+     * @param imageKey The key of the original image
+     * @param width The width of the variant
+     * @param format The MIME type of the variant
+     * @return The object key
+     */
+    public static String derivedKey(String imageKey, int width, MediaType format) {
+        return derivedPrefix(imageKey) + width + "." + EXTENSIONS.get(format.toString());
+    }
+
+    private static String derivedPrefix(String imageKey) {
+        String name = imageKey.substring(imageKey.lastIndexOf('/') + 1);
+        int dot = name.lastIndexOf('.');
+        return DERIVED_KEY_PREFIX + (dot > 0 ? name.substring(0, dot) : name) + "/";
+    }
+
+    /**
+     * Queue an uploaded image for processing. Never blocks: if the queue is full the image is skipped.
+     *
+     * @param imageKey The key of the original image
+     * @param contentType The content type of the original image
+     * @return true if the image was queued
+     */
+    public boolean submit(String imageKey, String contentType) {
+        // Only the first frame of an animated GIF would survive, so GIFs are always served as uploaded
+        if (formats.isEmpty() || MediaType.IMAGE_GIF_VALUE.equals(contentType)) {
+            return false;
+        }
+        try {
+            executor.execute(() -> generate(imageKey));
+            metricsService.recordGauge("image_derivatives.queue_depth", executor.getQueue().size());
+            return true;
+        } catch (RejectedExecutionException e) {
+            logger.warn("Image derivative queue is full, serving {} without variants", imageKey);
+            metricsService.incrementApiCounter("image_derivatives.rejected");
+            return false;
+        }
+    }
+
+    /**
+     * Generate and store every variant of an image that is smaller than the original
+     *
+     * @param imageKey The key of the original image
+     */
+    public void generate(String imageKey) {
+        Instant startTime = Instant.now();
+        try (ResponseInputStream<GetObjectResponse> original = s3Service.getObject(imageKey, null, null)) {
+            if (original == null) {
+                // Deleted before its turn came
+                logger.debug("Image {} no longer exists, skipping derivatives", imageKey);
+                return;
+            }
+            BufferedImage source = decode(original, imageKey);
+            if (source == null) {
+                return;
+            }
+            Long originalSize = original.response().contentLength();
+
+            int stored = 0;
+            // Largest first, so each smaller width is scaled down from the previous one instead of the full image
+            BufferedImage previous = source;
+            for (int i = widths.size() - 1; i >= 0; i--) {
+                int width = widths.get(i);
+                if (width >= source.getWidth()) {
+                    continue;
+                }
+                BufferedImage scaled = scale(previous, width);
+                previous = scaled;
+
+                for (MediaType format : formats) {
+                    byte[] encoded = encode(scaled, format);
+                    // A variant that is no smaller than the original would only cost more to serve
+                    if (originalSize != null && encoded.length >= originalSize) {
+                        continue;
+                    }
+                    s3Service.uploadBytes(derivedKey(imageKey, width, format), format.toString(), encoded);
+                    stored++;
+                }
+            }
+
+            Duration duration = Duration.between(startTime, Instant.now());
+            metricsService.incrementCounter("image_derivatives.generated", stored);
+            metricsService.timeApiExecution("image_derivatives", duration.toMillis());
+            logger.info("Generated {} derivatives for {}, took: {}ms", stored, imageKey, duration.toMillis());
+        } catch (Exception e) {
+            metricsService.incrementApiCounter("image_derivatives.error");
+            logger.error("Failed to generate derivatives for {}", imageKey, e);
+        }
+    }
+
+    private BufferedImage decode(InputStream in, String imageKey) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                logger.debug("No ImageIO reader for {}, skipping derivatives", imageKey);
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                // Checked from the header before decoding, so a small file cannot expand into a huge bitmap
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    logger.warn("Image {} has {} pixels, above the limit of {}, skipping derivatives",
+                            imageKey, pixels, maxPixels);
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scale an image down to the given width, keeping its aspect ratio. Large reductions are done in
+     * halving steps, which keeps bilinear filtering from skipping pixels and aliasing.
+     */
+    private static BufferedImage scale(BufferedImage source, int width) {
+        int height = Math.max(1, (int) Math.round((double) source.getHeight() * width / source.getWidth()));
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+
+            BufferedImage next = new BufferedImage(currentWidth, currentHeight, type);
+            Graphics2D graphics = next.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            graphics.dispose();
+            current = next;
+        } while (currentWidth != width || currentHeight != height);
+        return current;
+    }
+
+    private byte[] encode(BufferedImage image, MediaType format) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByMIMEType(format.toString()).next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (param.canWriteCompressed() && !MediaType.IMAGE_PNG.equals(format)) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            if (param.getCompressionTypes() != null && param.getCompressionType() == null) {
+                param.setCompressionType(param.getCompressionTypes()[0]);
+            }
+            param.setCompressionQuality(quality);
+        }
+        // JPEG has no alpha channel, so transparency is flattened onto white
+        if (MediaType.IMAGE_JPEG.equals(format) && image.getColorModel().hasAlpha()) {
+            image = flatten(image);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static BufferedImage flatten(BufferedImage image) {
+        BufferedImage opaque = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = opaque.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return opaque;
+    }
+
+    /**
+     * Open the best stored variant of an image for a client: the smallest width that is at least the
+     * requested one, in the first configured format the client accepts. Falls back to the original when
+     * no width was requested, the request is wider than every variant, or the variants do not exist.
+     *
+     * @param imageKey The key of the original image
+     * @param width The width the client wants, or null for the original
+     * @param accepted The media types from the client's Accept header
+     * @return The image content, or null if the image does not exist
+     */
+    public ResponseInputStream<GetObjectResponse> openVariant(String imageKey, Integer width, List<MediaType> accepted) {
+        if (width != null) {
+            Integer variantWidth = widths.stream().filter(w -> w >= width).findFirst().orElse(null);
+            if (variantWidth != null) {
+                for (MediaType format : formats) {
+                    if (!isAccepted(format, accepted)) {
+                        continue;
+                    }
+                    ResponseInputStream<GetObjectResponse> variant =
+                            s3Service.getObject(derivedKey(imageKey, variantWidth, format), null, null);
+                    if (variant != null) {
+                        metricsService.incrementApiCounter("image_derivatives.served");
+                        return variant;
+                    }
+                }
+            }
+        }
+        return s3Service.getObject(imageKey, null, null);
+    }
+
+    private static boolean isAccepted(MediaType format, List<MediaType> accepted) {
+        if (accepted.isEmpty()) {
+            return true;
+        }
+        for (MediaType type : accepted) {
+            if (type.getQualityValue() > 0 && type.includes(format)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Delete every stored variant of an image
+     *
+     * @param imageKey The key of the original image
+     */
+    public void deleteDerivatives(String imageKey) {
+        List<String> keys = new ArrayList<>();
+        for (S3Object object : s3Service.listObjects(derivedPrefix(imageKey))) {
+            keys.add(object.key());
+        }
+        int failed = s3Service.deleteObjects(keys);
+        logger.debug("Deleted {} derivatives of {}", keys.size() - failed, imageKey);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
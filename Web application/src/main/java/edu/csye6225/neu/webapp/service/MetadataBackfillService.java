@@ -0,0 +1,472 @@
+package edu.csye6225.neu.webapp.service;
+
+import edu.csye6225.neu.webapp.entity.UuidV7;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Creates file_metadata rows for objects already in the bucket, for importing an existing bucket or
+ * rebuilding metadata after an incident.
+ * <p>
+ * The bucket is listed in key order one batch at a time. HeadObject calls for a batch are sent
+ * concurrently on the async client while the previous batch is loaded, and each batch is loaded with
+ * one COPY into a temporary staging table followed by one INSERT ... SELECT into file_metadata, so
+ * the database sees two statements per thousand objects instead of a thousand inserts. Objects under
+ * {@code content/<sha256>} also take their references in content_object, so deleting an imported
+ * file releases shared content correctly.
+ * <p>
+ * Compressed objects are imported with the encoding and original size recorded on the object
+ * ({@code Content-Encoding} and {@code x-amz-meta-original-size}). Objects that look compressed but
+ * do not record both - they start with a gzip or zstd magic number without saying so, or record no
+ * original size - cannot be described correctly; they are skipped and logged for an operator.
+ * <p>
+ * Progress is checkpointed by key in the same transaction as each batch, so an interrupted run
+ * resumes after the last loaded batch, and a batch that was already loaded is never loaded twice.
+ * Objects that already have a row are skipped. The job should run before the reconciler is
+ * enabled, which would otherwise delete the objects it is about to import.
+ * <p>
+ * Objects younger than {@code min-age} may belong to uploads whose row is not written yet. The
+ * checkpoint moves past them, so they are recorded as deferred in the same transaction instead, and
+ * imported by a follow-up pass once they are old enough (or dropped if they got a row or vanished).
+ * The job is only marked complete once no deferred objects are left; until then every start runs
+ * the follow-up pass again.
+ */
+@Service
+@ConditionalOnProperty(name = "app.backfill.enabled", havingValue = "true")
+public class MetadataBackfillService {
+    private static final Logger logger = LoggerFactory.getLogger(MetadataBackfillService.class);
+
+    private static final Pattern CONTENT_KEY = Pattern.compile(Pattern.quote(ContentStore.KEY_PREFIX) + "([0-9a-f]{64})");
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    private static final String CREATE_CHECKPOINT_TABLE = "CREATE TABLE IF NOT EXISTS backfill_checkpoint ("
+            + "job VARCHAR(64) PRIMARY KEY, last_key TEXT, rows_imported BIGINT NOT NULL DEFAULT 0, "
+            + "completed_at TIMESTAMP, updated_at TIMESTAMP NOT NULL)";
+
+    // Objects passed over for being too recent, keyed by job so that they outlive the run that saw them
+    private static final String CREATE_DEFERRED_TABLE = "CREATE TABLE IF NOT EXISTS backfill_deferred ("
+            + "job VARCHAR(64) NOT NULL, object_key TEXT NOT NULL, PRIMARY KEY (job, object_key))";
+
+    // Lives for the session, emptied by every commit, and never written to the WAL
+    private static final String CREATE_STAGING_TABLE = "CREATE TEMP TABLE IF NOT EXISTS file_metadata_backfill ("
+            + "id UUID NOT NULL, file_name TEXT NOT NULL, original_file_name TEXT NOT NULL, s3_bucket_path TEXT NOT NULL, "
+            + "content_type TEXT NOT NULL, size_bytes BIGINT NOT NULL, content_digest VARCHAR(64), "
+            + "content_encoding VARCHAR(16), crc32c VARCHAR(12), upload_date TIMESTAMP NOT NULL) "
+            + "ON COMMIT DELETE ROWS";
+
+    private static final String COPY_STAGING = "COPY file_metadata_backfill (id, file_name, original_file_name, "
+            + "s3_bucket_path, content_type, size_bytes, content_digest, content_encoding, crc32c, upload_date) "
+            + "FROM STDIN WITH (FORMAT csv)";
+
+    // Content already registered keeps its stored size and encoding, and its key must match the object's.
+    // Keys that belong to a content row but carry no digest are left alone, as are keys that have a row.
+    private static final String MERGE = "WITH inserted AS ("
+            + "INSERT INTO file_metadata (id, file_name, original_file_name, s3_bucket_path, content_type, size_bytes, "
+            + "content_digest, content_encoding, upload_date, last_modified, status) "
+            + "SELECT s.id, s.file_name, s.original_file_name, s.s3_bucket_path, s.content_type, "
+            + "COALESCE(c.size_bytes, s.size_bytes), s.content_digest, COALESCE(c.content_encoding, s.content_encoding), "
+            + "s.upload_date, s.upload_date, 'COMMITTED' "
+            + "FROM file_metadata_backfill s LEFT JOIN content_object c ON c.digest = s.content_digest "
+            + "WHERE NOT EXISTS (SELECT 1 FROM file_metadata f WHERE f.file_name = s.file_name) "
+            + "AND (c.s3_key IS NULL OR c.s3_key = s.file_name) "
+            + "AND (s.content_digest IS NOT NULL OR NOT EXISTS (SELECT 1 FROM content_object o WHERE o.s3_key = s.file_name)) "
+            + "RETURNING file_name, size_bytes, content_digest, content_encoding"
+            + "), refs AS ("
+            + "INSERT INTO content_object (digest, s3_key, size_bytes, crc32c, content_encoding, ref_count, created_at) "
+            + "SELECT i.content_digest, min(i.file_name), min(i.size_bytes), min(s.crc32c), min(i.content_encoding), count(*), now() "
+            + "FROM inserted i JOIN file_metadata_backfill s ON s.file_name = i.file_name "
+            + "WHERE i.content_digest IS NOT NULL GROUP BY i.content_digest "
+            + "ON CONFLICT (digest) DO UPDATE SET ref_count = content_object.ref_count + EXCLUDED.ref_count "
+            + "RETURNING 1"
+            + ") SELECT count(*) FROM inserted";
+
+    private final S3Service s3Service;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MetricsService metricsService;
+    private final String job;
+    private final int batchSize;
+    private final Duration minAge;
+    private final List<String> excludedPrefixes;
+    private final Semaphore headPermits;
+
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metadata-backfill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public MetadataBackfillService(S3Service s3Service,
+                                   JdbcTemplate jdbcTemplate,
+                                   TransactionTemplate transactionTemplate,
+                                   MetricsService metricsService,
+                                   @Value("${app.backfill.job:default}") String job,
+                                   @Value("${app.backfill.batch-size:1000}") int batchSize,
+                                   @Value("${app.backfill.head-concurrency:64}") int headConcurrency,
+                                   @Value("${app.backfill.min-age:PT1H}") Duration minAge,
+                                   @Value("${app.backfill.excluded-prefixes:}") List<String> excludedPrefixes) {
+        this.s3Service = s3Service;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.metricsService = metricsService;
+        this.job = job;
+        this.batchSize = batchSize;
+        this.minAge = minAge;
+        this.excludedPrefixes = excludedPrefixes;
+        this.headPermits = new Semaphore(headConcurrency);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        runner.submit(() -> {
+            try {
+                backfill();
+            } catch (Exception e) {
+                logger.error("Metadata backfill failed; it resumes from the last checkpoint on the next start", e);
+                metricsService.incrementApiCounter("backfill.error");
+            }
+        });
+    }
+
+    /**
+     * Import every object that has no metadata row, resuming from the last checkpoint
+     *
+     * @return The statistics of the run, or null if the job had already completed
+     */
+    public BackfillResult backfill() {
+        jdbcTemplate.execute(CREATE_CHECKPOINT_TABLE);
+        jdbcTemplate.execute(CREATE_DEFERRED_TABLE);
+        jdbcTemplate.update("INSERT INTO backfill_checkpoint (job, rows_imported, updated_at) VALUES (?, 0, now()) "
+                + "ON CONFLICT (job) DO NOTHING", job);
+        Map<String, Object> checkpoint = jdbcTemplate.queryForMap(
+                "SELECT last_key, completed_at FROM backfill_checkpoint WHERE job = ?", job);
+        if (checkpoint.get("completed_at") != null) {
+            logger.info("Metadata backfill job {} already completed at {}", job, checkpoint.get("completed_at"));
+            return null;
+        }
+
+        String startAfter = (String) checkpoint.get("last_key");
+        Instant startTime = Instant.now();
+        Instant objectCutoff = startTime.minus(minAge);
+        logger.info("Starting metadata backfill job {} after key {}", job, startAfter);
+
+        BackfillResult result = new BackfillResult();
+        Iterator<S3Object> objects = s3Service.listObjects(null, startAfter).iterator();
+        List<S3Object> batch = nextBatch(objects, result);
+        CompletableFuture<List<String[]>> described = describe(batch, objectCutoff, result);
+        while (!batch.isEmpty()) {
+            // Fetch the next batch's metadata while this one is loaded
+            List<S3Object> next = nextBatch(objects, result);
+            CompletableFuture<List<String[]>> nextDescribed = describe(next, objectCutoff, result);
+            load(described.join(), deferredKeys(batch, objectCutoff), batch.get(batch.size() - 1).key(), result);
+            reportProgress(result, startTime);
+            batch = next;
+            described = nextDescribed;
+        }
+
+        loadDeferred(objectCutoff, result);
+        Long outstanding = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM backfill_deferred WHERE job = ?", Long.class, job);
+        if (outstanding != null && outstanding > 0) {
+            logger.info("Metadata backfill job {} has {} objects younger than {} left; run it again to import them",
+                    job, outstanding, minAge);
+            return result;
+        }
+
+        jdbcTemplate.update("UPDATE backfill_checkpoint SET completed_at = now(), updated_at = now() WHERE job = ?", job);
+        logger.info("Metadata backfill job {} completed: {} objects scanned, {} rows imported, {} objects skipped in {}s",
+                job, result.objectsScanned, result.rowsImported, result.objectsSkipped.get(),
+                Duration.between(startTime, Instant.now()).toSeconds());
+        return result;
+    }
+
+    private List<S3Object> nextBatch(Iterator<S3Object> objects, BackfillResult result) {
+        List<S3Object> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize && objects.hasNext()) {
+            batch.add(objects.next());
+        }
+        result.objectsScanned += batch.size();
+        return batch;
+    }
+
+    // Row values in COPY column order for each object to import; objects that vanished or are skipped are
+    // dropped, and recent ones are left to deferredKeys
+    private CompletableFuture<List<String[]>> describe(List<S3Object> batch, Instant objectCutoff, BackfillResult result) {
+        List<CompletableFuture<String[]>> rows = new ArrayList<>(batch.size());
+        for (S3Object object : batch) {
+            if (object.lastModified().isAfter(objectCutoff) || isExcluded(object.key())) {
+                continue;
+            }
+            headPermits.acquireUninterruptibly();
+            rows.add(s3Service.headObjectAsync(object.key())
+                    .thenCompose(head -> head != null ? describe(object, head, result) : CompletableFuture.completedFuture(null))
+                    .whenComplete((row, ex) -> headPermits.release()));
+        }
+        return CompletableFuture.allOf(rows.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> rows.stream().map(CompletableFuture::join).filter(Objects::nonNull).toList());
+    }
+
+    // Recent objects may belong to uploads whose row is not written yet
+    private List<String> deferredKeys(List<S3Object> batch, Instant objectCutoff) {
+        return batch.stream()
+                .filter(object -> object.lastModified().isAfter(objectCutoff) && !isExcluded(object.key()))
+                .map(S3Object::key)
+                .toList();
+    }
+
+    /**
+     * Import the deferred objects that are old enough by now. Each page is loaded and removed from the
+     * deferred set in one transaction; objects that vanished are removed too, and the rest stay.
+     */
+    private void loadDeferred(Instant objectCutoff, BackfillResult result) {
+        String after = "";
+        while (true) {
+            List<String> keys = jdbcTemplate.queryForList("SELECT object_key FROM backfill_deferred "
+                    + "WHERE job = ? AND object_key > ? ORDER BY object_key LIMIT ?", String.class, job, after, batchSize);
+            if (keys.isEmpty()) {
+                return;
+            }
+            after = keys.get(keys.size() - 1);
+
+            List<String> resolved = Collections.synchronizedList(new ArrayList<>());
+            List<CompletableFuture<String[]>> described = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                headPermits.acquireUninterruptibly();
+                described.add(s3Service.headObjectAsync(key).thenCompose(head -> {
+                    if (head == null) {
+                        resolved.add(key);
+                        return CompletableFuture.<String[]>completedFuture(null);
+                    }
+                    if (head.lastModified().isAfter(objectCutoff)) {
+                        return CompletableFuture.<String[]>completedFuture(null);
+                    }
+                    resolved.add(key);
+                    S3Object object = S3Object.builder().key(key).lastModified(head.lastModified())
+                            .size(head.contentLength()).build();
+                    return describe(object, head, result);
+                }).whenComplete((row, ex) -> headPermits.release()));
+            }
+            List<String[]> rows = described.stream().map(CompletableFuture::join).filter(Objects::nonNull).toList();
+            if (resolved.isEmpty()) {
+                continue;
+            }
+
+            Long imported = transactionTemplate.execute(status -> {
+                long count = merge(rows);
+                jdbcTemplate.update("DELETE FROM backfill_deferred WHERE job = ? AND object_key = ANY (?)",
+                        job, resolved.toArray(String[]::new));
+                jdbcTemplate.update("UPDATE backfill_checkpoint SET rows_imported = rows_imported + ?, "
+                        + "updated_at = now() WHERE job = ?", count, job);
+                return count;
+            });
+            long count = imported != null ? imported : 0;
+            result.rowsImported += count;
+            metricsService.incrementCounter("backfill.rows_imported", count);
+        }
+    }
+
+    private CompletableFuture<String[]> describe(S3Object object, HeadObjectResponse head, BackfillResult result) {
+        ContentEncoding encoding = storedEncoding(head);
+        if (encoding != null) {
+            Long originalSize = parseSize(head.metadata().get(S3Service.ORIGINAL_SIZE_METADATA));
+            if (originalSize == null) {
+                return CompletableFuture.completedFuture(
+                        skip(object, encoding.token() + "-encoded with no original size", result));
+            }
+            return CompletableFuture.completedFuture(toRow(object, head, encoding, originalSize));
+        }
+        if (object.size() < ContentEncoding.MAGIC_LENGTH) {
+            return CompletableFuture.completedFuture(toRow(object, head, null, object.size()));
+        }
+
+        // Objects compressed before they were labelled carry no Content-Encoding; their first bytes give them away
+        return s3Service.readPrefixAsync(object.key(), ContentEncoding.MAGIC_LENGTH).thenApply(prefix -> {
+            if (prefix == null) {
+                return null;
+            }
+            ContentEncoding detected = ContentEncoding.detect(prefix);
+            // A .gz or .zst file uploaded as such says so in its content type and is imported as it is
+            if (detected != null && !contentType(head).contains(detected.token())) {
+                return skip(object, "starts like " + detected.token() + " but has no Content-Encoding", result);
+            }
+            return toRow(object, head, null, object.size());
+        });
+    }
+
+    // Encodings this service did not write are left to whoever reads the object, as S3 would
+    private static ContentEncoding storedEncoding(HeadObjectResponse head) {
+        try {
+            return ContentEncoding.fromToken(head.contentEncoding());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Long parseSize(String value) {
+        try {
+            return value != null ? Long.parseLong(value) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String[] skip(S3Object object, String reason, BackfillResult result) {
+        logger.warn("Skipping {} in metadata backfill: {}", object.key(), reason);
+        result.objectsSkipped.incrementAndGet();
+        metricsService.incrementApiCounter("backfill.object_skipped");
+        return null;
+    }
+
+    private static String contentType(HeadObjectResponse head) {
+        return head.contentType() != null && !head.contentType().isEmpty() ? head.contentType() : DEFAULT_CONTENT_TYPE;
+    }
+
+    private String[] toRow(S3Object object, HeadObjectResponse head, ContentEncoding encoding, long size) {
+        String key = object.key();
+        Matcher digest = CONTENT_KEY.matcher(key);
+        String contentType = contentType(head);
+        LocalDateTime uploadDate = LocalDateTime.ofInstant(object.lastModified(), ZoneId.systemDefault());
+        return new String[] {
+            UuidV7.generate().toString(),
+            key,
+            key.substring(key.lastIndexOf('/') + 1),
+            s3Service.getObjectUrl(key),
+            contentType,
+            String.valueOf(size),
+            digest.matches() ? digest.group(1) : null,
+            encoding != null ? encoding.token() : null,
+            head.checksumCRC32C(),
+            uploadDate.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)
+        };
+    }
+
+    private void load(List<String[]> rows, List<String> deferred, String lastKey, BackfillResult result) {
+        Long imported = transactionTemplate.execute(status -> {
+            // Locks the checkpoint, so two instances never load the same batch
+            String checkpoint = jdbcTemplate.queryForObject(
+                    "SELECT last_key FROM backfill_checkpoint WHERE job = ? FOR UPDATE", String.class, job);
+            if (checkpoint != null && S3ReconciliationService.compareKeys(checkpoint, lastKey) >= 0) {
+                logger.info("Batch ending at {} was already loaded by another instance", lastKey);
+                return 0L;
+            }
+            long count = merge(rows);
+            if (!deferred.isEmpty()) {
+                jdbcTemplate.batchUpdate("INSERT INTO backfill_deferred (job, object_key) VALUES (?, ?) "
+                        + "ON CONFLICT DO NOTHING", deferred.stream().map(key -> new Object[] {job, key}).toList());
+            }
+            jdbcTemplate.update("UPDATE backfill_checkpoint SET last_key = ?, rows_imported = rows_imported + ?, "
+                    + "updated_at = now() WHERE job = ?", lastKey, count, job);
+            return count;
+        });
+        long count = imported != null ? imported : 0;
+        result.rowsImported += count;
+        metricsService.incrementCounter("backfill.rows_imported", count);
+    }
+
+    // Runs in the caller's transaction, as the staged rows only live until it commits
+    private long merge(List<String[]> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.execute(CREATE_STAGING_TABLE);
+        copy(rows);
+        return Objects.requireNonNull(jdbcTemplate.queryForObject(MERGE, Long.class));
+    }
+
+    private void copy(List<String[]> rows) {
+        StringWriter csv = new StringWriter(rows.size() * 256);
+        try {
+            for (String[] row : rows) {
+                Csv.writeLine(csv, row);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // Runs on the transaction's connection, so the staged rows are visible to the merge
+        jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try {
+                return connection.unwrap(PGConnection.class).getCopyAPI()
+                        .copyIn(COPY_STAGING, new StringReader(csv.toString()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private boolean isExcluded(String key) {
+        for (String prefix : excludedPrefixes) {
+            if (!prefix.isEmpty() && key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void reportProgress(BackfillResult result, Instant startTime) {
+        long elapsedMillis = Math.max(1, Duration.between(startTime, Instant.now()).toMillis());
+        metricsService.recordGauge("backfill.objects_scanned", result.objectsScanned);
+        metricsService.recordGauge("backfill.rows_per_minute", result.rowsImported * 60_000 / elapsedMillis);
+        logger.debug("Metadata backfill progress: {} objects scanned, {} rows imported",
+                result.objectsScanned, result.rowsImported);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+    }
+
+    public static class BackfillResult {
+        private long objectsScanned;
+        private long rowsImported;
+        private final AtomicLong objectsSkipped = new AtomicLong();
+
+        public long getObjectsScanned() {
+            return objectsScanned;
+        }
+
+        public long getRowsImported() {
+            return rowsImported;
+        }
+
+        public long getObjectsSkipped() {
+            return objectsSkipped.get();
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 
 @Service
@@ -26,6 +27,24 @@ public class MetricsService {
         statsDClient.incrementCounter("api." + apiName + ".count");
     }
 
+    /**
+     * Add to a counter by an arbitrary amount
+     * @param metricName The name of the counter
+     * @param delta The amount to add
+     */
+    public void incrementCounter(String metricName, long delta) {
+        statsDClient.count(metricName, delta);
+    }
+
+    /**
+     * Record the current value of a gauge
+     * @param metricName The name of the gauge
+     * @param value The current value
+     */
+    public void recordGauge(String metricName, long value) {
+        statsDClient.recordGaugeValue(metricName, value);
+    }
+
     /**
      * Time the execution of an API call and record it as a timer metric
      * @param apiName The name of the API endpoint
@@ -43,6 +62,37 @@ public class MetricsService {
         }
     }
 
+    /**
+     * Record an API execution time directly
+     * @param apiName The name of the API endpoint
+     * @param timeInMs The time in milliseconds
+     */
+    public void timeApiExecution(String apiName, long timeInMs) {
+        statsDClient.recordExecutionTime("api." + apiName + ".time", timeInMs);
+    }
+
+    /**
+     * Time an asynchronous API call until its future completes and record it as a timer metric
+     * @param apiName The name of the API endpoint
+     * @param code The code that starts the asynchronous work
+     * @return The future returned by the code, completing once the timing is recorded; it fails if the
+     *         code throws instead of returning a future
+     */
+    public <T> CompletableFuture<T> timeApiExecutionAsync(String apiName, Supplier<CompletableFuture<T>> code) {
+        Instant start = Instant.now();
+        CompletableFuture<T> future;
+        try {
+            future = code.get();
+        } catch (RuntimeException e) {
+            // A failure before the work was handed off is reported through the future like any other
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((result, ex) -> {
+            long timeElapsed = Duration.between(start, Instant.now()).toMillis();
+            statsDClient.recordExecutionTime("api." + apiName + ".time", timeElapsed);
+        });
+    }
+
     /**
      * Record a database query time directly
      * @param queryName The name of the database query
@@ -0,0 +1,85 @@
+package edu.csye6225.neu.webapp.service;
+
+import edu.csye6225.neu.webapp.entity.FileMetadata;
+import edu.csye6225.neu.webapp.entity.UploadStatus;
+import edu.csye6225.neu.webapp.repository.FileMetadataRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Cleans up uploads that never reached the COMMITTED state, e.g. because the instance
+ * died mid-transfer or the commit failed. Each row is removed together with its content reference
+ * (see {@link ContentStore#releasePending}), so a failure part-way through is simply retried on the next run.
+ * The rows are read ahead of the delete, possibly from a replica, so each delete re-checks that the
+ * row is still PENDING; a row committed in between is left alone.
+ * <p>
+ * A row's lastModified is its lease: transfers in progress renew it (see
+ * {@link FileService#renewTransferLeases}), so a large upload is never swept mid-transfer, while rows
+ * left behind by a dead instance expire once renewals stop. Direct uploads are not renewed by anyone,
+ * so they are given the presigned URL lifetime on top of the timeout.
+ */
+@Service
+public class PendingUploadSweeper {
+    private static final Logger logger = LoggerFactory.getLogger(PendingUploadSweeper.class);
+
+    private final FileMetadataRepository fileMetadataRepository;
+    private final ContentStore contentStore;
+    private final MetricsService metricsService;
+    private final Duration pendingTimeout;
+    private final Duration presignTtl;
+    private final int batchSize;
+
+    @Autowired
+    public PendingUploadSweeper(FileMetadataRepository fileMetadataRepository,
+                                ContentStore contentStore,
+                                MetricsService metricsService,
+                                @Value("${app.uploads.pending-timeout:PT1H}") Duration pendingTimeout,
+                                @Value("${app.uploads.presign-ttl:PT15M}") Duration presignTtl,
+                                @Value("${app.uploads.sweep-batch-size:100}") int batchSize) {
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.contentStore = contentStore;
+        this.metricsService = metricsService;
+        this.pendingTimeout = pendingTimeout;
+        this.presignTtl = presignTtl;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Remove pending uploads whose lease ran out more than the presign lifetime plus the configured timeout ago
+     */
+    @Scheduled(fixedDelayString = "${app.uploads.sweep-interval:PT5M}",
+               initialDelayString = "${app.uploads.sweep-interval:PT5M}")
+    public void sweepStalePendingUploads() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(presignTtl).minus(pendingTimeout);
+        List<FileMetadata> stale = metricsService.timeDatabaseQuery("findStalePendingUploads", () ->
+            fileMetadataRepository.findByStatusAndLastModifiedBefore(
+                    UploadStatus.PENDING, cutoff, PageRequest.of(0, batchSize))
+        );
+        if (stale.isEmpty()) {
+            return;
+        }
+
+        logger.info("Sweeping {} stale pending uploads not renewed since {}", stale.size(), cutoff);
+        int removed = 0;
+        for (FileMetadata pending : stale) {
+            try {
+                if (contentStore.releasePending(pending)) {
+                    removed++;
+                }
+            } catch (Exception e) {
+                logger.warn("Failed to sweep pending upload {}, will retry", pending.getId(), e);
+            }
+        }
+        metricsService.incrementApiCounter("uploads.pending_swept");
+        logger.info("Swept {} of {} stale pending uploads", removed, stale.size());
+    }
+}
@@ -0,0 +1,28 @@
+package edu.csye6225.neu.webapp.service;
+
+/**
+ * Point-in-time usage of one connection or thread pool
+ *
+ * @param pool The pool's name
+ * @param active Connections or threads in use
+ * @param idle Connections or threads open but unused
+ * @param pending Callers waiting for a connection, or tasks queued for a thread
+ * @param max The pool's current size limit
+ * @param acquires Acquisitions timed since startup, or -1 if the pool does not time them
+ * @param acquireWaitMillis Total time spent waiting in those acquisitions
+ * @param timeouts Acquisitions that timed out since startup, or -1 if not counted
+ */
+public record PoolSaturation(String pool, int active, int idle, int pending, int max,
+                             long acquires, double acquireWaitMillis, long timeouts) {
+
+    /**
+     * Mean acquisition wait between an earlier snapshot of the same pool and this one
+     *
+     * @param previous The earlier snapshot
+     * @return The mean wait in milliseconds, or 0 if nothing was acquired in between
+     */
+    public double meanAcquireWaitMillisSince(PoolSaturation previous) {
+        long count = acquires - previous.acquires;
+        return count > 0 ? (acquireWaitMillis - previous.acquireWaitMillis) / count : 0;
+    }
+}
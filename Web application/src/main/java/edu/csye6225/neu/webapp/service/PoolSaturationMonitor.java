@@ -0,0 +1,136 @@
+package edu.csye6225.neu.webapp.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.coyote.AbstractProtocol;
+import org.apache.tomcat.util.threads.ThreadPoolExecutor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One view of the three pools a request can queue on: Hikari connections, Tomcat request threads
+ * and S3 HTTP connections.
+ * <p>
+ * Hikari acquisition timings come from the meters Spring Boot binds for each pool; Tomcat does not
+ * time how long requests wait for a thread, so only its queue depth is reported. Snapshots are
+ * served at {@code /actuator/saturation} and exported to StatsD as gauges, with the mean
+ * acquisition wait and timeouts over each reporting interval.
+ */
+@Service
+public class PoolSaturationMonitor {
+
+    private final ObjectProvider<HikariDataSource> hikariDataSources;
+    private final S3ConnectionMetrics s3ConnectionMetrics;
+    private final MeterRegistry meterRegistry;
+    private final MetricsService metricsService;
+    private final Map<String, PoolSaturation> reported = new ConcurrentHashMap<>();
+
+    private volatile AbstractProtocol<?> tomcatProtocol;
+
+    @Autowired
+    public PoolSaturationMonitor(ObjectProvider<HikariDataSource> hikariDataSources,
+                                 S3ConnectionMetrics s3ConnectionMetrics,
+                                 MeterRegistry meterRegistry,
+                                 MetricsService metricsService) {
+        this.hikariDataSources = hikariDataSources;
+        this.s3ConnectionMetrics = s3ConnectionMetrics;
+        this.meterRegistry = meterRegistry;
+        this.metricsService = metricsService;
+    }
+
+    @EventListener
+    public void onWebServerInitialized(WebServerInitializedEvent event) {
+        if (event.getWebServer() instanceof TomcatWebServer webServer
+                && webServer.getTomcat().getConnector().getProtocolHandler() instanceof AbstractProtocol<?> protocol) {
+            tomcatProtocol = protocol;
+        }
+    }
+
+    /**
+     * Current usage of every pool
+     */
+    public List<PoolSaturation> snapshot() {
+        List<PoolSaturation> pools = new ArrayList<>();
+        hikariDataSources.orderedStream().forEach(dataSource -> {
+            PoolSaturation pool = hikari(dataSource);
+            if (pool != null) {
+                pools.add(pool);
+            }
+        });
+        PoolSaturation tomcat = tomcat();
+        if (tomcat != null) {
+            pools.add(tomcat);
+        }
+        pools.addAll(s3ConnectionMetrics.snapshot());
+        return pools;
+    }
+
+    /**
+     * Current usage of one Hikari pool
+     *
+     * @param dataSource The pool's data source
+     * @return The snapshot, or null if the pool has not started yet
+     */
+    public PoolSaturation hikari(HikariDataSource dataSource) {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool == null) {
+            return null;
+        }
+        String name = dataSource.getPoolName();
+        Timer acquire = meterRegistry.find("hikaricp.connections.acquire").tag("pool", name).timer();
+        Counter timeouts = meterRegistry.find("hikaricp.connections.timeout").tag("pool", name).counter();
+        return new PoolSaturation("hikari-" + name, pool.getActiveConnections(), pool.getIdleConnections(),
+                pool.getThreadsAwaitingConnection(), dataSource.getHikariConfigMXBean().getMaximumPoolSize(),
+                acquire != null ? acquire.count() : -1,
+                acquire != null ? acquire.totalTime(TimeUnit.MILLISECONDS) : 0,
+                timeouts != null ? (long) timeouts.count() : -1);
+    }
+
+    private PoolSaturation tomcat() {
+        AbstractProtocol<?> protocol = tomcatProtocol;
+        // With virtual threads there is no pool to saturate
+        if (protocol == null || !(protocol.getExecutor() instanceof ThreadPoolExecutor executor)) {
+            return null;
+        }
+        int active = executor.getActiveCount();
+        return new PoolSaturation("tomcat", active, Math.max(0, executor.getPoolSize() - active),
+                executor.getQueue().size(), executor.getMaximumPoolSize(), -1, 0, -1);
+    }
+
+    @Scheduled(fixedDelayString = "${app.pools.report-interval:PT10S}")
+    public void reportMetrics() {
+        for (PoolSaturation pool : snapshot()) {
+            String prefix = "pool." + pool.pool() + ".";
+            metricsService.recordGauge(prefix + "active", pool.active());
+            metricsService.recordGauge(prefix + "idle", pool.idle());
+            metricsService.recordGauge(prefix + "pending", pool.pending());
+            metricsService.recordGauge(prefix + "max", pool.max());
+
+            PoolSaturation previous = reported.put(pool.pool(), pool);
+            if (previous == null) {
+                continue;
+            }
+            if (pool.acquires() >= 0) {
+                metricsService.recordGauge(prefix + "acquire_wait_mean_micros",
+                        Math.round(pool.meanAcquireWaitMillisSince(previous) * 1000));
+            }
+            if (pool.timeouts() >= 0) {
+                metricsService.incrementCounter(prefix + "timeouts", pool.timeouts() - previous.timeouts());
+            }
+        }
+    }
+}
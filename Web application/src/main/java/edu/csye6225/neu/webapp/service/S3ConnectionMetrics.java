@@ -0,0 +1,138 @@
+package edu.csye6225.neu.webapp.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.metrics.CoreMetric;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.metrics.SdkMetric;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Connection-pool usage of the S3 HTTP clients, collected from the metrics the SDK publishes after
+ * every call.
+ * <p>
+ * The SDK samples leased, available and pending connections when a request acquires its
+ * connection, so the counts are those of the most recent call. Every acquisition wait is recorded
+ * as a timer; the sync (Apache) client does not time acquisitions, only the async one does. The SDK
+ * version in use does not classify errors, so calls that failed without receiving any response,
+ * connection-acquire timeouts among them, stand in for pool timeouts.
+ */
+@Service
+public class S3ConnectionMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final MetricsService metricsService;
+    private final Map<String, ClientStats> clients = new ConcurrentHashMap<>();
+
+    @Autowired
+    public S3ConnectionMetrics(MeterRegistry meterRegistry, MetricsService metricsService) {
+        this.meterRegistry = meterRegistry;
+        this.metricsService = metricsService;
+    }
+
+    /**
+     * Create the publisher to register on one S3 client
+     *
+     * @param client Name of the client, used as the pool name
+     * @return A publisher recording that client's calls
+     */
+    public MetricPublisher publisher(String client) {
+        ClientStats stats = clients.computeIfAbsent(client, ClientStats::new);
+        return new MetricPublisher() {
+            @Override
+            public void publish(MetricCollection metrics) {
+                stats.record(metrics);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Current usage of every client that has published metrics
+     */
+    public List<PoolSaturation> snapshot() {
+        return clients.values().stream().map(ClientStats::snapshot).toList();
+    }
+
+    private final class ClientStats {
+        private final String pool;
+        private final AtomicInteger leased = new AtomicInteger();
+        private final AtomicInteger available = new AtomicInteger();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicInteger max = new AtomicInteger();
+        private final AtomicLong acquires = new AtomicLong();
+        private final DoubleAdder acquireWaitMillis = new DoubleAdder();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final Timer acquireTimer;
+        private final Counter timeoutCounter;
+
+        ClientStats(String client) {
+            this.pool = "s3-" + client;
+            this.acquireTimer = Timer.builder("s3.http.acquire")
+                    .tag("client", client)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            this.timeoutCounter = Counter.builder("s3.http.timeout").tag("client", client).register(meterRegistry);
+            Gauge.builder("s3.http.leased", leased, AtomicInteger::get).tag("client", client).register(meterRegistry);
+            Gauge.builder("s3.http.available", available, AtomicInteger::get).tag("client", client).register(meterRegistry);
+            Gauge.builder("s3.http.pending", pending, AtomicInteger::get).tag("client", client).register(meterRegistry);
+            Gauge.builder("s3.http.max", max, AtomicInteger::get).tag("client", client).register(meterRegistry);
+        }
+
+        void record(MetricCollection apiCall) {
+            boolean responded = recordHttp(apiCall);
+            if (!responded && apiCall.metricValues(CoreMetric.API_CALL_SUCCESSFUL).contains(Boolean.FALSE)) {
+                timeouts.incrementAndGet();
+                timeoutCounter.increment();
+            }
+        }
+
+        // Attempt and HTTP metrics are nested below the call; returns whether any attempt got a response
+        private boolean recordHttp(MetricCollection metrics) {
+            boolean responded = !metrics.metricValues(HttpMetric.HTTP_STATUS_CODE).isEmpty();
+            update(leased, metrics, HttpMetric.LEASED_CONCURRENCY);
+            update(available, metrics, HttpMetric.AVAILABLE_CONCURRENCY);
+            update(pending, metrics, HttpMetric.PENDING_CONCURRENCY_ACQUIRES);
+            update(max, metrics, HttpMetric.MAX_CONCURRENCY);
+            for (Duration wait : metrics.metricValues(HttpMetric.CONCURRENCY_ACQUIRE_DURATION)) {
+                acquires.incrementAndGet();
+                acquireWaitMillis.add(wait.toNanos() / 1_000_000.0);
+                acquireTimer.record(wait.toNanos(), TimeUnit.NANOSECONDS);
+                metricsService.timeS3Operation("connection_acquire", wait.toMillis());
+            }
+            for (MetricCollection child : metrics.children()) {
+                responded |= recordHttp(child);
+            }
+            return responded;
+        }
+
+        private static void update(AtomicInteger gauge, MetricCollection metrics, SdkMetric<Integer> metric) {
+            List<Integer> values = metrics.metricValues(metric);
+            if (!values.isEmpty()) {
+                gauge.set(values.get(values.size() - 1));
+            }
+        }
+
+        PoolSaturation snapshot() {
+            return new PoolSaturation(pool, leased.get(), available.get(), pending.get(), max.get(),
+                    acquires.get(), acquireWaitMillis.sum(), timeouts.get());
+        }
+    }
+}
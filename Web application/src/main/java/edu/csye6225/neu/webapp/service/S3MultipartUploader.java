@@ -0,0 +1,320 @@
+package edu.csye6225.neu.webapp.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uploads large objects to S3 as multipart uploads with parts sent in parallel.
+ * <p>
+ * Parts are read sequentially from the source stream into a shared pool of part buffers and
+ * uploaded from a bounded worker pool, so heap use is capped at {@code concurrency * partSize}
+ * across all uploads regardless of object size.
+ */
+@Service
+public class S3MultipartUploader {
+    private static final Logger logger = LoggerFactory.getLogger(S3MultipartUploader.class);
+
+    // S3 rejects parts smaller than 5 MB (except the last one)
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final S3Client s3Client;
+    private final MetricsService metricsService;
+    private final long threshold;
+    private final int partSize;
+    private final Semaphore bufferPermits;
+    private final ConcurrentLinkedQueue<byte[]> freeBuffers = new ConcurrentLinkedQueue<>();
+    private final ExecutorService partExecutor;
+
+    @Autowired
+    public S3MultipartUploader(S3Client s3Client,
+                               MetricsService metricsService,
+                               @Value("${app.s3.multipart.threshold:16777216}") long threshold,
+                               @Value("${app.s3.multipart.part-size:8388608}") int partSize,
+                               @Value("${app.s3.multipart.concurrency:4}") int concurrency) {
+        if (partSize < MIN_PART_SIZE) {
+            throw new IllegalArgumentException("Multipart part size must be at least " + MIN_PART_SIZE + " bytes");
+        }
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Multipart concurrency must be at least 1");
+        }
+        this.s3Client = s3Client;
+        this.metricsService = metricsService;
+        this.threshold = threshold;
+        this.partSize = partSize;
+        this.bufferPermits = new Semaphore(concurrency);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.partExecutor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "s3-multipart-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("S3MultipartUploader initialized: threshold={} bytes, partSize={} bytes, concurrency={}",
+                threshold, partSize, concurrency);
+    }
+
+    /**
+     * Whether an object of the given size should be sent as a multipart upload
+     *
+     * @param size The object size in bytes
+     * @return true if the size is above the multipart threshold
+     */
+    public boolean shouldUseMultipart(long size) {
+        return size > threshold;
+    }
+
+    /**
+     * Whether content of the given size ends within the first part, so that {@link #upload} would
+     * send it with a single PutObject
+     *
+     * @param size The content size in bytes
+     * @return true if the size is below the part size
+     */
+    public boolean fitsInOnePart(long size) {
+        return size < partSize;
+    }
+
+    /**
+     * Upload a stream to S3, splitting it into parts uploaded in parallel.
+     * Streams that end within the first part are sent with a single PutObject.
+     *
+     * @param bucket The target bucket
+     * @param key The object key
+     * @param contentType The content type of the object
+     * @param in The source stream; it is read to the end but not closed
+     * @throws IOException If the source stream cannot be read
+     */
+    public void upload(String bucket, String key, String contentType, InputStream in) throws IOException {
+        upload(bucket, key, contentType, null, Map.of(), in);
+    }
+
+    /**
+     * Upload a stream to S3 as {@link #upload(String, String, String, InputStream)} does, storing the
+     * object with a Content-Encoding and user metadata
+     *
+     * @param bucket The target bucket
+     * @param key The object key
+     * @param contentType The content type of the object
+     * @param contentEncoding The Content-Encoding of the stored bytes, or null
+     * @param metadata User metadata, stored as {@code x-amz-meta-} headers
+     * @param in The source stream; it is read to the end but not closed
+     * @throws IOException If the source stream cannot be read
+     */
+    public void upload(String bucket, String key, String contentType, String contentEncoding,
+                       Map<String, String> metadata, InputStream in) throws IOException {
+        Instant startTime = Instant.now();
+
+        byte[] firstBuffer = acquireBuffer();
+        int firstLength;
+        try {
+            firstLength = in.readNBytes(firstBuffer, 0, partSize);
+        } catch (IOException e) {
+            releaseBuffer(firstBuffer);
+            throw e;
+        }
+
+        if (firstLength < partSize) {
+            // The whole object fits in one part, a multipart upload would only add round trips
+            try {
+                s3Client.putObject(PutObjectRequest.builder()
+                                .bucket(bucket)
+                                .key(key)
+                                .contentType(contentType)
+                                .contentEncoding(contentEncoding)
+                                .metadata(metadata)
+                                .contentLength((long) firstLength)
+                                .build(),
+                        bufferBody(firstBuffer, firstLength));
+            } finally {
+                releaseBuffer(firstBuffer);
+            }
+            return;
+        }
+
+        String uploadId;
+        try {
+            uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .contentType(contentType)
+                    .contentEncoding(contentEncoding)
+                    .metadata(metadata)
+                    .build()).uploadId();
+        } catch (RuntimeException e) {
+            releaseBuffer(firstBuffer);
+            throw e;
+        }
+        logger.debug("Started multipart upload {} for key: {}", uploadId, key);
+
+        List<Future<CompletedPart>> pendingParts = new ArrayList<>();
+        AtomicBoolean aborted = new AtomicBoolean();
+        try {
+            int partNumber = 1;
+            byte[] buffer = firstBuffer;
+            int length = firstLength;
+
+            while (true) {
+                pendingParts.add(submitPart(bucket, key, uploadId, aborted, partNumber, buffer, length));
+                if (length < partSize) {
+                    break;
+                }
+
+                buffer = acquireBuffer();
+                if (aborted.get()) {
+                    // A part failed, so the rest of the stream would only be read to be thrown away;
+                    // the failure surfaces below
+                    releaseBuffer(buffer);
+                    break;
+                }
+                try {
+                    length = in.readNBytes(buffer, 0, partSize);
+                } catch (IOException e) {
+                    releaseBuffer(buffer);
+                    throw e;
+                }
+                if (length == 0) {
+                    releaseBuffer(buffer);
+                    break;
+                }
+                partNumber++;
+            }
+
+            List<CompletedPart> completedParts = new ArrayList<>(pendingParts.size());
+            for (Future<CompletedPart> part : pendingParts) {
+                completedParts.add(part.get());
+            }
+            completedParts.sort(Comparator.comparing(CompletedPart::partNumber));
+
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build());
+
+            Duration duration = Duration.between(startTime, Instant.now());
+            metricsService.timeS3Operation("multipartUpload", duration.toMillis());
+            logger.info("Completed multipart upload for key: {} ({} parts), took: {}ms",
+                    key, completedParts.size(), duration.toMillis());
+
+        } catch (IOException | RuntimeException e) {
+            abort(bucket, key, uploadId, aborted);
+            throw e;
+        } catch (ExecutionException e) {
+            abort(bucket, key, uploadId, aborted);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException("Failed to upload part for key: " + key, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(bucket, key, uploadId, aborted);
+            throw new IOException("Interrupted while uploading key: " + key, e);
+        }
+    }
+
+    private Future<CompletedPart> submitPart(String bucket, String key, String uploadId, AtomicBoolean aborted,
+                                             int partNumber, byte[] buffer, int length) {
+        // Tasks are never cancelled so that every buffer goes back to the pool; aborted uploads skip the transfer.
+        // A failed part aborts the upload before its buffer is released, which wakes a reader waiting for one
+        return partExecutor.submit(() -> {
+            try {
+                if (aborted.get()) {
+                    throw new IllegalStateException("Multipart upload " + uploadId + " was aborted");
+                }
+                UploadPartResponse response = s3Client.uploadPart(UploadPartRequest.builder()
+                                .bucket(bucket)
+                                .key(key)
+                                .uploadId(uploadId)
+                                .partNumber(partNumber)
+                                .contentLength((long) length)
+                                .build(),
+                        bufferBody(buffer, length));
+                logger.debug("Uploaded part {} ({} bytes) for key: {}", partNumber, length, key);
+                return CompletedPart.builder()
+                        .partNumber(partNumber)
+                        .eTag(response.eTag())
+                        .build();
+            } catch (RuntimeException e) {
+                aborted.set(true);
+                throw e;
+            } finally {
+                releaseBuffer(buffer);
+            }
+        });
+    }
+
+    private void abort(String bucket, String key, String uploadId, AtomicBoolean aborted) {
+        metricsService.incrementApiCounter("s3.multipartUpload.error");
+        aborted.set(true);
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+            logger.warn("Aborted multipart upload {} for key: {}", uploadId, key);
+        } catch (RuntimeException e) {
+            logger.error("Failed to abort multipart upload {} for key: {}", uploadId, key, e);
+        }
+    }
+
+    // Request body over the filled part of a buffer; re-opened on retries without copying
+    private RequestBody bufferBody(byte[] buffer, int length) {
+        return RequestBody.fromContentProvider(
+                () -> new ByteArrayInputStream(buffer, 0, length), length, "application/octet-stream");
+    }
+
+    private byte[] acquireBuffer() throws IOException {
+        try {
+            bufferPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an upload buffer", e);
+        }
+        byte[] buffer = freeBuffers.poll();
+        return buffer != null ? buffer : new byte[partSize];
+    }
+
+    private void releaseBuffer(byte[] buffer) {
+        freeBuffers.offer(buffer);
+        bufferPermits.release();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        partExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,367 @@
+package edu.csye6225.neu.webapp.service;
+
+import edu.csye6225.neu.webapp.entity.UploadStatus;
+import edu.csye6225.neu.webapp.repository.ContentObjectRepository;
+import edu.csye6225.neu.webapp.repository.FileMetadataRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Finds and removes inconsistencies between the bucket and the file_metadata table left behind by
+ * failures between the S3 call and the database write.
+ * <p>
+ * Both sides are read as streams sorted by key - ListObjectsV2 pages from S3 and keyset pages from
+ * the database - and merge-joined, so memory use is bounded by one page from each side plus the
+ * pending delete batches, however many objects the bucket holds. Objects with no row are removed with
+ * batched DeleteObjects calls; committed rows whose object is gone are removed in batches as well,
+ * together with their references to the content, so a later duplicate upload never takes a reference
+ * to content whose object is gone.
+ * <p>
+ * The keyset pages compare keys in byte order, so they are served by an index on
+ * {@code file_name COLLATE "C"}. JPA index definitions cannot carry a collation, so the reconciler
+ * builds that index itself before its first run. The entity's default-collation index on the same
+ * column stays, since the backfill's existing-row check needs it whether or not the
+ * reconciler has ever run.
+ */
+@Service
+@ConditionalOnProperty(name = "app.reconciler.enabled", havingValue = "true")
+public class S3ReconciliationService {
+    private static final Logger logger = LoggerFactory.getLogger(S3ReconciliationService.class);
+
+    private static final int PROGRESS_INTERVAL = 10_000;
+    private static final String KEY_INDEX = "idx_file_metadata_file_name_c";
+
+    private final S3Service s3Service;
+    private final FileMetadataRepository fileMetadataRepository;
+    private final ContentObjectRepository contentObjectRepository;
+    private final MetricsService metricsService;
+    private final CacheInvalidationBus invalidationBus;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration minAge;
+    private final int pageSize;
+    private final int deleteBatchSize;
+    private final List<String> excludedPrefixes;
+    private final boolean dryRun;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean keyIndexReady;
+
+    @Autowired
+    public S3ReconciliationService(S3Service s3Service,
+                                   FileMetadataRepository fileMetadataRepository,
+                                   ContentObjectRepository contentObjectRepository,
+                                   MetricsService metricsService,
+                                   CacheInvalidationBus invalidationBus,
+                                   TransactionTemplate transactionTemplate,
+                                   JdbcTemplate jdbcTemplate,
+                                   @Value("${app.reconciler.min-age:PT1H}") Duration minAge,
+                                   @Value("${app.reconciler.page-size:1000}") int pageSize,
+                                   @Value("${app.reconciler.delete-batch-size:1000}") int deleteBatchSize,
+                                   @Value("${app.reconciler.excluded-prefixes:}") List<String> excludedPrefixes,
+                                   @Value("${app.reconciler.dry-run:false}") boolean dryRun) {
+        this.s3Service = s3Service;
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.contentObjectRepository = contentObjectRepository;
+        this.metricsService = metricsService;
+        this.invalidationBus = invalidationBus;
+        this.transactionTemplate = transactionTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.minAge = minAge;
+        this.pageSize = pageSize;
+        this.deleteBatchSize = Math.min(deleteBatchSize, S3Service.MAX_DELETE_BATCH_SIZE);
+        this.excludedPrefixes = excludedPrefixes;
+        this.dryRun = dryRun;
+    }
+
+    @Scheduled(fixedDelayString = "${app.reconciler.interval:PT6H}",
+               initialDelayString = "${app.reconciler.initial-delay:PT10M}")
+    public void scheduledReconcile() {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            logger.error("S3 reconciliation run failed", e);
+            metricsService.incrementApiCounter("reconciler.error");
+        }
+    }
+
+    /**
+     * Run one full reconciliation pass over the bucket and the file_metadata table
+     *
+     * @return The statistics of the run, or null if a run was already in progress
+     */
+    public ReconciliationResult reconcile() {
+        if (!running.compareAndSet(false, true)) {
+            logger.info("S3 reconciliation already running, skipping");
+            return null;
+        }
+        try {
+            return doReconcile();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private ReconciliationResult doReconcile() {
+        Instant startTime = Instant.now();
+        Instant objectCutoff = startTime.minus(minAge);
+        LocalDateTime rowCutoff = LocalDateTime.now().minus(minAge);
+        logger.info("Starting S3 reconciliation (dryRun={}, minAge={})", dryRun, minAge);
+        ensureKeyIndex();
+
+        ReconciliationResult result = new ReconciliationResult();
+        List<String> orphanObjects = new ArrayList<>(deleteBatchSize);
+        List<String> danglingRows = new ArrayList<>(deleteBatchSize);
+
+        Iterator<S3Object> objects = s3Service.listObjects(null).iterator();
+        KeysetCursor rows = new KeysetCursor();
+
+        S3Object object = objects.hasNext() ? objects.next() : null;
+        String rowKey = rows.next();
+
+        while (object != null || rowKey != null) {
+            int cmp = object == null ? 1 : rowKey == null ? -1 : compareKeys(object.key(), rowKey);
+
+            if (cmp == 0) {
+                result.objectsScanned++;
+                result.rowKeysScanned++;
+                object = objects.hasNext() ? objects.next() : null;
+                rowKey = rows.next();
+            } else if (cmp < 0) {
+                // Object with no metadata row
+                result.objectsScanned++;
+                if (isOrphanCandidate(object, objectCutoff)) {
+                    orphanObjects.add(object.key());
+                    if (orphanObjects.size() >= deleteBatchSize) {
+                        deleteOrphanObjects(orphanObjects, result);
+                    }
+                }
+                object = objects.hasNext() ? objects.next() : null;
+            } else {
+                // Metadata row whose object is missing
+                result.rowKeysScanned++;
+                danglingRows.add(rowKey);
+                if (danglingRows.size() >= deleteBatchSize) {
+                    deleteDanglingRows(danglingRows, rowCutoff, result);
+                }
+                rowKey = rows.next();
+            }
+
+            if ((result.objectsScanned + result.rowKeysScanned) % PROGRESS_INTERVAL == 0) {
+                reportProgress(result, startTime);
+            }
+        }
+
+        deleteOrphanObjects(orphanObjects, result);
+        deleteDanglingRows(danglingRows, rowCutoff, result);
+
+        Duration duration = Duration.between(startTime, Instant.now());
+        reportProgress(result, startTime);
+        metricsService.timeS3Operation("reconcile", duration.toMillis());
+        logger.info("S3 reconciliation finished in {}ms: {} objects, {} row keys, {} orphan objects removed, "
+                        + "{} dangling rows removed",
+                duration.toMillis(), result.objectsScanned, result.rowKeysScanned,
+                result.orphanObjectsDeleted, result.danglingRowsDeleted);
+        return result;
+    }
+
+    private boolean isOrphanCandidate(S3Object object, Instant cutoff) {
+        // Recent objects may belong to an upload whose row is still being written
+        if (object.lastModified() != null && object.lastModified().isAfter(cutoff)) {
+            return false;
+        }
+        for (String prefix : excludedPrefixes) {
+            if (!prefix.isEmpty() && object.key().startsWith(prefix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Build the byte-order index on file_name if it is missing. It is built concurrently so uploads
+     * are not blocked, which cannot run in a transaction; a build that was interrupted leaves an
+     * invalid index behind, which is dropped and built again.
+     */
+    private void ensureKeyIndex() {
+        if (keyIndexReady) {
+            return;
+        }
+        List<Boolean> valid = jdbcTemplate.queryForList(
+                "SELECT indisvalid FROM pg_index WHERE indexrelid = to_regclass(?)", Boolean.class, KEY_INDEX);
+        if (valid.contains(Boolean.FALSE)) {
+            jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + KEY_INDEX);
+        }
+        if (!valid.contains(Boolean.TRUE)) {
+            logger.info("Building index {} for the reconciler's keyset scan", KEY_INDEX);
+            jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + KEY_INDEX
+                    + " ON file_metadata (file_name COLLATE \"C\")");
+        }
+        keyIndexReady = true;
+    }
+
+    private void deleteOrphanObjects(List<String> keys, ReconciliationResult result) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        if (dryRun) {
+            logger.info("[dry run] Would delete {} orphan S3 objects, first: {}", keys.size(), keys.get(0));
+        } else {
+            int failed = s3Service.deleteObjects(keys);
+            result.orphanObjectsDeleted += keys.size() - failed;
+            metricsService.incrementCounter("reconciler.orphan_objects_deleted", keys.size() - failed);
+        }
+        keys.clear();
+    }
+
+    private void deleteDanglingRows(List<String> keys, LocalDateTime cutoff, ReconciliationResult result) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        if (dryRun) {
+            logger.info("[dry run] Would delete rows for {} missing S3 keys, first: {}", keys.size(), keys.get(0));
+        } else {
+            // Only committed rows old enough to be settled; pending rows belong to the upload sweeper
+            Integer deleted = transactionTemplate.execute(status -> {
+                List<String> digests = metricsService.timeDatabaseQuery("deleteDanglingFileMetadata", () ->
+                    fileMetadataRepository.deleteByKeys(List.copyOf(keys), UploadStatus.COMMITTED.name(), cutoff)
+                );
+                releaseContentReferences(digests);
+                return digests.size();
+            });
+            invalidationBus.keysDeleted(keys);
+            result.danglingRowsDeleted += deleted;
+            metricsService.incrementCounter("reconciler.dangling_rows_deleted", deleted);
+        }
+        keys.clear();
+    }
+
+    /**
+     * Drop one content reference per deleted row. Content left with no references has no object
+     * either - that is why its rows were dangling - so only its row is removed.
+     */
+    private void releaseContentReferences(List<String> digests) {
+        Map<String, Long> references = digests.stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+        if (references.isEmpty()) {
+            return;
+        }
+
+        // Digests are grouped by how many references they lose, which is one statement in the usual case
+        references.entrySet().stream()
+                .collect(Collectors.groupingBy(Map.Entry::getValue,
+                        Collectors.mapping(Map.Entry::getKey, Collectors.toList())))
+                .forEach((count, group) -> metricsService.timeDatabaseQuery("releaseContentReferences", () ->
+                    contentObjectRepository.releaseReferences(group, count)
+                ));
+        int removed = metricsService.timeDatabaseQuery("deleteUnreferencedContent", () ->
+            contentObjectRepository.deleteUnreferenced(references.keySet())
+        );
+        if (removed > 0) {
+            logger.info("Removed {} content objects whose last reference was a dangling row", removed);
+        }
+    }
+
+    private void reportProgress(ReconciliationResult result, Instant startTime) {
+        long elapsedMillis = Math.max(1, Duration.between(startTime, Instant.now()).toMillis());
+        long scanned = result.objectsScanned + result.rowKeysScanned;
+        metricsService.recordGauge("reconciler.objects_scanned", result.objectsScanned);
+        metricsService.recordGauge("reconciler.row_keys_scanned", result.rowKeysScanned);
+        metricsService.recordGauge("reconciler.keys_per_second", scanned * 1000 / elapsedMillis);
+        logger.debug("S3 reconciliation progress: {} objects, {} row keys", result.objectsScanned, result.rowKeysScanned);
+    }
+
+    /**
+     * Compare keys by Unicode code point, which matches the UTF-8 byte order used by both
+     * ListObjectsV2 and the COLLATE "C" ordering of the keyset query
+     */
+    public static int compareKeys(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int cpA = a.codePointAt(i);
+            int cpB = b.codePointAt(j);
+            if (cpA != cpB) {
+                return Integer.compare(cpA, cpB);
+            }
+            i += Character.charCount(cpA);
+            j += Character.charCount(cpB);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    /**
+     * Streams distinct metadata keys in order, one keyset page at a time
+     */
+    private class KeysetCursor {
+        private List<String> page = List.of();
+        private int position;
+        private String lastKey = "";
+        private boolean exhausted;
+
+        String next() {
+            if (position >= page.size()) {
+                if (exhausted) {
+                    return null;
+                }
+                String after = lastKey;
+                page = metricsService.timeDatabaseQuery("findKeysAfter", () ->
+                    fileMetadataRepository.findKeysAfter(after, pageSize)
+                );
+                position = 0;
+                exhausted = page.size() < pageSize;
+                if (page.isEmpty()) {
+                    return null;
+                }
+            }
+            lastKey = page.get(position++);
+            return lastKey;
+        }
+    }
+
+    /**
+     * Counters for one reconciliation run
+     */
+    public static class ReconciliationResult {
+        private long objectsScanned;
+        private long rowKeysScanned;
+        private long orphanObjectsDeleted;
+        private long danglingRowsDeleted;
+
+        public long getObjectsScanned() {
+            return objectsScanned;
+        }
+
+        public long getRowKeysScanned() {
+            return rowKeysScanned;
+        }
+
+        public long getOrphanObjectsDeleted() {
+            return orphanObjectsDeleted;
+        }
+
+        public long getDanglingRowsDeleted() {
+            return danglingRowsDeleted;
+        }
+    }
+}
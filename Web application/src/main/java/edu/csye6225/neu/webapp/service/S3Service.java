@@ -1,37 +1,88 @@
 package edu.csye6225.neu.webapp.service;
 
+import edu.csye6225.neu.webapp.entity.UuidV7;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.pagination.sync.SdkIterable;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.ContentStreamProvider;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ChecksumMode;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.Delete;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Service
 public class S3Service {
     private static final Logger logger = LoggerFactory.getLogger(S3Service.class);
 
+    // Upper bound on keys per DeleteObjects request imposed by S3
+    public static final int MAX_DELETE_BATCH_SIZE = 1000;
+
+    // User metadata holding the size of compressed content before encoding, sent as x-amz-meta-original-size
+    public static final String ORIGINAL_SIZE_METADATA = "original-size";
+
     private final S3Client s3Client;
+    private final S3AsyncClient s3AsyncClient;
     private final String bucketName;
     private final MetricsService metricsService;
+    private final S3MultipartUploader multipartUploader;
+    private final S3Presigner s3Presigner;
+
+    // Virtual threads feed upload streams to the async client and run multipart uploads off the request thread
+    private final ExecutorService transferExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
     @Autowired
-    public S3Service(S3Client s3Client, 
+    public S3Service(S3Client s3Client,
+                    S3AsyncClient s3AsyncClient,
                     @Value("${cloud.aws.s3.bucket}") String bucketName,
-                    MetricsService metricsService) {
+                    MetricsService metricsService,
+                    S3MultipartUploader multipartUploader,
+                    S3Presigner s3Presigner) {
         this.s3Client = s3Client;
+        this.s3AsyncClient = s3AsyncClient;
         this.bucketName = bucketName;
         this.metricsService = metricsService;
+        this.multipartUploader = multipartUploader;
+        this.s3Presigner = s3Presigner;
         logger.info("S3Service initialized with bucket: {}", bucketName);
     }
 
@@ -46,21 +97,88 @@ public class S3Service {
         if (file == null || file.isEmpty()) {
             throw new IllegalArgumentException("File is empty or null");
         }
+        return uploadFile(file, generateUniqueFileName(file.getOriginalFilename()));
+    }
+
+    /**
+     * Upload a file to S3 bucket under a key chosen by the caller
+     *
+     * @param file The file to upload
+     * @param fileName The object key to store the file under
+     * @return The S3 URI of the uploaded file
+     * @throws IOException If the file cannot be read
+     */
+    public String uploadFile(MultipartFile file, String fileName) throws IOException {
+        return uploadFile(file, fileName, null);
+    }
+
+    /**
+     * Upload a file to S3 bucket under a key chosen by the caller, with a precomputed CRC32C checksum
+     * that S3 verifies on receipt
+     *
+     * @param file The file to upload
+     * @param fileName The object key to store the file under
+     * @param checksumCrc32c The base64 CRC32C of the content, or null to send none
+     * @return The S3 URI of the uploaded file
+     * @throws IOException If the file cannot be read
+     */
+    public String uploadFile(MultipartFile file, String fileName, String checksumCrc32c) throws IOException {
+        return uploadFile(file, fileName, checksumCrc32c, null);
+    }
+
+    /**
+     * Upload a file to S3 bucket under a key chosen by the caller, optionally compressing it on the way.
+     * Compressed content is stored with its Content-Encoding and its original size in
+     * {@value #ORIGINAL_SIZE_METADATA} metadata. Files smaller than a part are compressed into a buffer of
+     * their own and sent with one PutObject; larger ones are encoded while they are read and streamed
+     * through the multipart uploader, as their final size is not known up front. The checksum describes
+     * the original bytes and is not sent for compressed content.
+     *
+     * @param file The file to upload
+     * @param fileName The object key to store the file under
+     * @param checksumCrc32c The base64 CRC32C of the content, or null to send none
+     * @param encoding The encoding to store the content in, or null to store it as is
+     * @return The S3 URI of the uploaded file
+     * @throws IOException If the file cannot be read
+     */
+    public String uploadFile(MultipartFile file, String fileName, String checksumCrc32c,
+                             ContentEncoding encoding) throws IOException {
+        if (file == null || file.isEmpty()) {
+            throw new IllegalArgumentException("File is empty or null");
+        }
 
         Instant startTime = Instant.now();
         try {
-            String fileName = generateUniqueFileName(file.getOriginalFilename());
             String contentType = file.getContentType();
 
             logger.debug("Preparing to upload file to S3: {}", fileName);
-            
-            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(fileName)
-                    .contentType(contentType)
-                    .build();
 
-            s3Client.putObject(putObjectRequest, RequestBody.fromBytes(file.getBytes()));
+            if (encoding != null && multipartUploader.fitsInOnePart(file.getSize())) {
+                putCompressed(file, fileName, encoding);
+            } else if (encoding != null) {
+                try (InputStream in = encoding.compress(file.getInputStream())) {
+                    multipartUploader.upload(bucketName, fileName, contentType, encoding.token(),
+                            originalSize(file.getSize()), in);
+                }
+            } else if (multipartUploader.shouldUseMultipart(file.getSize())) {
+                // Large files are split into parts that are uploaded in parallel.
+                // A whole-object checksum only applies to single PUTs, so it is not sent here.
+                try (InputStream in = file.getInputStream()) {
+                    multipartUploader.upload(bucketName, fileName, contentType, in);
+                }
+            } else {
+                PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(fileName)
+                        .contentType(contentType)
+                        .contentLength(file.getSize())
+                        .checksumCRC32C(checksumCrc32c)
+                        .build();
+
+                // Stream the part straight from the multipart source instead of copying it onto the heap.
+                // The provider re-opens the stream on retries, so the SDK does not need to buffer it for mark/reset.
+                s3Client.putObject(putObjectRequest, streamingBody(file));
+            }
             
             // Record metrics for S3 upload time
             Duration duration = Duration.between(startTime, Instant.now());
@@ -70,7 +188,7 @@ public class S3Service {
                     fileName, duration.toMillis());
             
             // Return the S3 URI
-            return String.format("https://%s.s3.amazonaws.com/%s", bucketName, fileName);
+            return getObjectUrl(fileName);
             
         } catch (S3Exception e) {
             // Record failure metrics
@@ -82,6 +200,206 @@ public class S3Service {
         }
     }
     
+    /**
+     * Upload content that is already in memory, such as a generated image
+     *
+     * @param key The object key
+     * @param contentType The content type of the object
+     * @param content The object bytes
+     * @return The S3 URI of the uploaded object
+     */
+    public String uploadBytes(String key, String contentType, byte[] content) {
+        Instant startTime = Instant.now();
+        try {
+            s3Client.putObject(PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .contentType(contentType)
+                    .contentLength((long) content.length)
+                    .build(), RequestBody.fromBytes(content));
+
+            Duration duration = Duration.between(startTime, Instant.now());
+            metricsService.timeS3Operation("upload", duration.toMillis());
+            logger.debug("Uploaded {} bytes to S3: {}, took: {}ms", content.length, key, duration.toMillis());
+            return getObjectUrl(key);
+        } catch (S3Exception e) {
+            metricsService.incrementApiCounter("s3.upload.error");
+            logger.error("Error uploading object to S3: {}", key, e);
+            throw new RuntimeException("Failed to upload file to S3: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Upload a stream of unknown length as it is read, such as a request body that is still
+     * arriving. Parts are sent while later bytes are still being read; if the stream fails the
+     * upload is aborted and no object is created. Compressed content is stored with its
+     * Content-Encoding; its original size is not known when the upload starts, so it carries no
+     * {@value #ORIGINAL_SIZE_METADATA} metadata.
+     *
+     * @param key The object key
+     * @param contentType The content type of the object
+     * @param in The content; it is read to the end and closed
+     * @param encoding The encoding to store the content in, or null to store it as is
+     * @return The S3 URI of the uploaded object
+     * @throws IOException If the stream cannot be read
+     */
+    public String uploadStream(String key, String contentType, InputStream in, ContentEncoding encoding)
+            throws IOException {
+        Instant startTime = Instant.now();
+        try {
+            try (InputStream content = encoding != null ? encoding.compress(in) : in) {
+                multipartUploader.upload(bucketName, key, contentType,
+                        encoding != null ? encoding.token() : null, Map.of(), content);
+            }
+
+            Duration duration = Duration.between(startTime, Instant.now());
+            metricsService.timeS3Operation("uploadStream", duration.toMillis());
+            logger.info("Successfully streamed upload to S3: {}, took: {}ms", key, duration.toMillis());
+            return getObjectUrl(key);
+        } catch (S3Exception e) {
+            metricsService.incrementApiCounter("s3.upload.error");
+            logger.error("Error streaming upload to S3: {}", key, e);
+            throw new RuntimeException("Failed to upload file to S3: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Copy an object within the bucket. The copy is done by S3 and does not pass through this service.
+     *
+     * @param sourceKey The key to copy from
+     * @param targetKey The key to copy to
+     */
+    public void copyObject(String sourceKey, String targetKey) {
+        metricsService.timeS3Operation("copy", () -> s3Client.copyObject(CopyObjectRequest.builder()
+                .sourceBucket(bucketName)
+                .sourceKey(sourceKey)
+                .destinationBucket(bucketName)
+                .destinationKey(targetKey)
+                .build()));
+        logger.debug("Copied S3 object {} to {}", sourceKey, targetKey);
+    }
+
+    /**
+     * Upload a file to S3 bucket without blocking the calling thread
+     *
+     * @param file The file to upload
+     * @return A future completed with the S3 URI of the uploaded file
+     */
+    public CompletableFuture<String> uploadFileAsync(MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            throw new IllegalArgumentException("File is empty or null");
+        }
+        return uploadFileAsync(file, generateUniqueFileName(file.getOriginalFilename()));
+    }
+
+    /**
+     * Upload a file to S3 bucket under a key chosen by the caller, without blocking the calling thread
+     *
+     * @param file The file to upload
+     * @param fileName The object key to store the file under
+     * @return A future completed with the S3 URI of the uploaded file
+     */
+    public CompletableFuture<String> uploadFileAsync(MultipartFile file, String fileName) {
+        return uploadFileAsync(file, fileName, null);
+    }
+
+    /**
+     * Upload a file to S3 bucket under a key chosen by the caller, with a precomputed CRC32C checksum,
+     * without blocking the calling thread
+     *
+     * @param file The file to upload
+     * @param fileName The object key to store the file under
+     * @param checksumCrc32c The base64 CRC32C of the content, or null to send none
+     * @return A future completed with the S3 URI of the uploaded file
+     */
+    public CompletableFuture<String> uploadFileAsync(MultipartFile file, String fileName, String checksumCrc32c) {
+        return uploadFileAsync(file, fileName, checksumCrc32c, null);
+    }
+
+    /**
+     * Upload a file to S3 bucket under a key chosen by the caller, optionally compressing it on the way,
+     * without blocking the calling thread
+     *
+     * @param file The file to upload
+     * @param fileName The object key to store the file under
+     * @param checksumCrc32c The base64 CRC32C of the content, or null to send none
+     * @param encoding The encoding to store the content in, or null to store it as is
+     * @return A future completed with the S3 URI of the uploaded file
+     */
+    public CompletableFuture<String> uploadFileAsync(MultipartFile file, String fileName, String checksumCrc32c,
+                                                     ContentEncoding encoding) {
+        if (file == null || file.isEmpty()) {
+            throw new IllegalArgumentException("File is empty or null");
+        }
+
+        Instant startTime = Instant.now();
+        String contentType = file.getContentType();
+
+        logger.debug("Preparing async upload to S3: {}", fileName);
+
+        CompletableFuture<?> transfer;
+        if (encoding != null && multipartUploader.fitsInOnePart(file.getSize())) {
+            transfer = CompletableFuture.runAsync(() -> {
+                try {
+                    putCompressed(file, fileName, encoding);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, transferExecutor);
+        } else if (encoding != null) {
+            transfer = CompletableFuture.runAsync(() -> {
+                try (InputStream in = encoding.compress(file.getInputStream())) {
+                    multipartUploader.upload(bucketName, fileName, contentType, encoding.token(),
+                            originalSize(file.getSize()), in);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, transferExecutor);
+        } else if (multipartUploader.shouldUseMultipart(file.getSize())) {
+            transfer = CompletableFuture.runAsync(() -> {
+                try (InputStream in = file.getInputStream()) {
+                    multipartUploader.upload(bucketName, fileName, contentType, in);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, transferExecutor);
+        } else {
+            InputStream in;
+            try {
+                in = file.getInputStream();
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+
+            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(fileName)
+                    .contentType(contentType)
+                    .contentLength(file.getSize())
+                    .checksumCRC32C(checksumCrc32c)
+                    .build();
+
+            transfer = s3AsyncClient.putObject(putObjectRequest,
+                            AsyncRequestBody.fromInputStream(in, file.getSize(), transferExecutor))
+                    .whenComplete((response, ex) -> closeQuietly(in));
+        }
+
+        return transfer.handle((ignored, ex) -> {
+            Duration duration = Duration.between(startTime, Instant.now());
+            if (ex != null) {
+                Throwable cause = unwrap(ex);
+                metricsService.incrementApiCounter("s3.upload.error");
+                logger.error("Error uploading file to S3, took: {}ms", duration.toMillis(), cause);
+                throw new CompletionException(
+                        new RuntimeException("Failed to upload file to S3: " + cause.getMessage(), cause));
+            }
+
+            metricsService.timeS3Operation("upload", duration.toMillis());
+            logger.info("Successfully uploaded file to S3: {}, took: {}ms", fileName, duration.toMillis());
+            return getObjectUrl(fileName);
+        });
+    }
+
     /**
      * Delete a file from S3 bucket with metrics tracking
      * 
@@ -130,26 +448,359 @@ public class S3Service {
     }
     
     /**
-     * Generate a unique filename to prevent overwriting files in S3
+     * Delete a file from S3 bucket without blocking the calling thread
+     *
+     * @param fileUrl The URL of the file to delete
+     * @return A future completed once the object is deleted
+     */
+    public CompletableFuture<Void> deleteFileAsync(String fileUrl) {
+        if (fileUrl == null || fileUrl.isEmpty()) {
+            logger.warn("Attempted to delete a null or empty file URL");
+            return CompletableFuture.completedFuture(null);
+        }
+
+        String key = extractKeyFromUrl(fileUrl);
+        if (key == null) {
+            logger.warn("Could not extract key from URL: {}", fileUrl);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        logger.debug("Deleting file from S3 bucket: {}, key: {}", bucketName, key);
+
+        Instant startTime = Instant.now();
+        DeleteObjectRequest deleteRequest = DeleteObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build();
+
+        return s3AsyncClient.deleteObject(deleteRequest).handle((response, ex) -> {
+            Duration duration = Duration.between(startTime, Instant.now());
+            if (ex != null) {
+                Throwable cause = unwrap(ex);
+                metricsService.incrementApiCounter("s3.delete.error");
+                logger.error("Error deleting file from S3: {}, took: {}ms", fileUrl, duration.toMillis(), cause);
+                throw new CompletionException(
+                        new RuntimeException("Failed to delete file from S3: " + cause.getMessage(), cause));
+            }
+
+            metricsService.timeS3Operation("delete", duration.toMillis());
+            logger.info("Successfully deleted file from S3: {}, took: {}ms", key, duration.toMillis());
+            return null;
+        });
+    }
+
+    /**
+     * Check whether an object exists in the bucket
+     *
+     * @param key The object key
+     * @return true if the object exists
+     */
+    public boolean objectExists(String key) {
+        return headObject(key) != null;
+    }
+
+    /**
+     * Fetch the metadata of an object, including its stored checksums
+     *
+     * @param key The object key
+     * @return The object metadata, or null if the object does not exist
+     */
+    public HeadObjectResponse headObject(String key) {
+        Instant startTime = Instant.now();
+        try {
+            return s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .checksumMode(ChecksumMode.ENABLED)
+                    .build());
+        } catch (NoSuchKeyException e) {
+            return null;
+        } catch (S3Exception e) {
+            // HEAD responses carry no body, so a missing key may surface as a bare 404
+            if (e.statusCode() == 404) {
+                return null;
+            }
+            metricsService.incrementApiCounter("s3.head.error");
+            throw new RuntimeException("Failed to check S3 object: " + e.getMessage(), e);
+        } finally {
+            metricsService.timeS3Operation("head", Duration.between(startTime, Instant.now()).toMillis());
+        }
+    }
+
+    /**
+     * Fetch the metadata of an object without blocking the calling thread, so many lookups can be
+     * in flight at once
+     *
+     * @param key The object key
+     * @return A future of the object metadata, completed with null if the object does not exist
+     */
+    public CompletableFuture<HeadObjectResponse> headObjectAsync(String key) {
+        Instant startTime = Instant.now();
+        HeadObjectRequest request = HeadObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .checksumMode(ChecksumMode.ENABLED)
+                .build();
+
+        return s3AsyncClient.headObject(request).handle((response, ex) -> {
+            metricsService.timeS3Operation("head", Duration.between(startTime, Instant.now()).toMillis());
+            if (ex == null) {
+                return response;
+            }
+            Throwable cause = unwrap(ex);
+            if (cause instanceof NoSuchKeyException || (cause instanceof S3Exception e && e.statusCode() == 404)) {
+                return null;
+            }
+            metricsService.incrementApiCounter("s3.head.error");
+            throw new CompletionException(
+                    new RuntimeException("Failed to check S3 object: " + cause.getMessage(), cause));
+        });
+    }
+
+    /**
+     * Read the first bytes of an object without blocking the calling thread
+     *
+     * @param key The object key
+     * @param length The number of bytes to read
+     * @return A future of up to {@code length} bytes, completed with null if the object does not exist
+     */
+    public CompletableFuture<byte[]> readPrefixAsync(String key, int length) {
+        Instant startTime = Instant.now();
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .range("bytes=0-" + (length - 1))
+                .build();
+
+        return s3AsyncClient.getObject(request, AsyncResponseTransformer.toBytes()).handle((response, ex) -> {
+            metricsService.timeS3Operation("getPrefix", Duration.between(startTime, Instant.now()).toMillis());
+            if (ex == null) {
+                return response.asByteArrayUnsafe();
+            }
+            Throwable cause = unwrap(ex);
+            if (cause instanceof NoSuchKeyException || (cause instanceof S3Exception e && e.statusCode() == 404)) {
+                return null;
+            }
+            metricsService.incrementApiCounter("s3.get.error");
+            throw new CompletionException(
+                    new RuntimeException("Failed to read S3 object: " + cause.getMessage(), cause));
+        });
+    }
+
+    /**
+     * Open an object, or one byte range of it, for streaming. The stream reads straight off the
+     * HTTP connection, so the caller must close it to release the connection.
+     *
+     * @param key The object key
+     * @param start The first byte to read, or null for the whole object
+     * @param end The last byte to read, inclusive; ignored if start is null
+     * @return The object content, or null if the object does not exist
+     */
+    public ResponseInputStream<GetObjectResponse> getObject(String key, Long start, Long end) {
+        Instant startTime = Instant.now();
+        try {
+            GetObjectRequest.Builder request = GetObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key);
+            if (start != null) {
+                request.range("bytes=" + start + "-" + end);
+            }
+            ResponseInputStream<GetObjectResponse> content = s3Client.getObject(request.build());
+
+            // Only time to first byte is measured here; the transfer itself is paced by the client
+            metricsService.timeS3Operation("download", Duration.between(startTime, Instant.now()).toMillis());
+            return content;
+        } catch (NoSuchKeyException e) {
+            return null;
+        } catch (S3Exception e) {
+            metricsService.incrementApiCounter("s3.download.error");
+            logger.error("Error downloading file from S3: {}", key, e);
+            throw new RuntimeException("Failed to download file from S3: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Presign a PUT so a client can upload an object straight to S3. The content length and SHA-256
+     * are part of the signature, so S3 rejects any other bytes sent to the URL.
+     *
+     * @param key The object key
+     * @param contentType The content type of the object
+     * @param size The exact size of the object in bytes
+     * @param checksumSha256 The base64 SHA-256 of the object
+     * @param ttl How long the URL stays valid
+     * @return The presigned request, with the URL and the headers the client must send
+     */
+    public PresignedPutObjectRequest presignUpload(String key, String contentType, long size,
+                                                   String checksumSha256, Duration ttl) {
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .contentLength(size)
+                .checksumSHA256(checksumSha256)
+                .build();
+
+        PresignedPutObjectRequest presigned = s3Presigner.presignPutObject(PutObjectPresignRequest.builder()
+                .signatureDuration(ttl)
+                .putObjectRequest(putObjectRequest)
+                .build());
+
+        logger.debug("Presigned upload for key: {}, expires: {}", key, presigned.expiration());
+        return presigned;
+    }
+
+    /**
+     * List the objects in the bucket in key order. Pages are fetched lazily while iterating,
+     * so only one page of keys is held in memory at a time.
+     *
+     * @param prefix Only list keys starting with this prefix, or null for the whole bucket
+     * @return A lazily paged iterable over the objects
+     */
+    public SdkIterable<S3Object> listObjects(String prefix) {
+        return listObjects(prefix, null);
+    }
+
+    /**
+     * List the objects in the bucket in key order, resuming after a given key
+     *
+     * @param prefix Only list keys starting with this prefix, or null for the whole bucket
+     * @param startAfter Only list keys after this one, or null to start at the beginning
+     * @return A lazily paged iterable over the objects
+     */
+    public SdkIterable<S3Object> listObjects(String prefix, String startAfter) {
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(prefix)
+                .startAfter(startAfter)
+                .build();
+        return s3Client.listObjectsV2Paginator(request).contents();
+    }
+
+    /**
+     * Delete objects in a single batched request
+     *
+     * @param keys The object keys to delete, at most {@value #MAX_DELETE_BATCH_SIZE}
+     * @return The number of objects that S3 reported as failed to delete
+     */
+    public int deleteObjects(List<String> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        if (keys.size() > MAX_DELETE_BATCH_SIZE) {
+            throw new IllegalArgumentException("DeleteObjects accepts at most " + MAX_DELETE_BATCH_SIZE + " keys");
+        }
+
+        Instant startTime = Instant.now();
+        List<ObjectIdentifier> objects = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            objects.add(ObjectIdentifier.builder().key(key).build());
+        }
+
+        DeleteObjectsResponse response = s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                .bucket(bucketName)
+                .delete(Delete.builder().objects(objects).quiet(true).build())
+                .build());
+
+        Duration duration = Duration.between(startTime, Instant.now());
+        metricsService.timeS3Operation("deleteObjects", duration.toMillis());
+
+        // Quiet mode only reports the keys that could not be deleted
+        response.errors().forEach(error ->
+                logger.warn("Failed to delete S3 object {}: {} {}", error.key(), error.code(), error.message()));
+        if (!response.errors().isEmpty()) {
+            metricsService.incrementApiCounter("s3.deleteObjects.error");
+        }
+        logger.debug("Batch deleted {} objects from S3, took: {}ms", keys.size(), duration.toMillis());
+        return response.errors().size();
+    }
+
+    /**
+     * Compress a file smaller than a part into a buffer of its own and send it with one PutObject, so it
+     * does not hold one of the multipart uploader's shared part buffers
+     */
+    private void putCompressed(MultipartFile file, String key, ContentEncoding encoding) throws IOException {
+        byte[] compressed;
+        try (InputStream in = encoding.compress(file.getInputStream())) {
+            compressed = in.readAllBytes();
+        }
+        s3Client.putObject(PutObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .contentType(file.getContentType())
+                        .contentEncoding(encoding.token())
+                        .metadata(originalSize(file.getSize()))
+                        .contentLength((long) compressed.length)
+                        .build(),
+                RequestBody.fromContentProvider(() -> new ByteArrayInputStream(compressed), compressed.length,
+                        "application/octet-stream"));
+    }
+
+    private static Map<String, String> originalSize(long size) {
+        return Map.of(ORIGINAL_SIZE_METADATA, Long.toString(size));
+    }
+
+    /**
+     * Build a request body that reads the file from its input stream with a known content length
+     *
+     * @param file The file to stream
+     * @return A request body backed by the file's input stream
+     */
+    private RequestBody streamingBody(MultipartFile file) {
+        ContentStreamProvider provider = () -> {
+            try {
+                return file.getInputStream();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open upload stream", e);
+            }
+        };
+        String mimeType = file.getContentType() != null ? file.getContentType() : "application/octet-stream";
+        return RequestBody.fromContentProvider(provider, file.getSize(), mimeType);
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close upload stream", e);
+        }
+    }
+
+    /**
+     * Generate a unique filename to prevent overwriting files in S3; names are time-ordered UUIDs,
+     * so keys list in upload order
      * 
      * @param originalFilename The original file name
      * @return A unique filename
      */
-    private String generateUniqueFileName(String originalFilename) {
+    public String generateUniqueFileName(String originalFilename) {
         String extension = "";
         if (originalFilename != null && originalFilename.contains(".")) {
             extension = originalFilename.substring(originalFilename.lastIndexOf("."));
         }
-        return UUID.randomUUID().toString() + extension;
+        return UuidV7.generate().toString() + extension;
+    }
+    
+    /**
+     * Build the S3 URL of an object in the bucket
+     *
+     * @param key The object key
+     * @return The S3 URL of the object
+     */
+    public String getObjectUrl(String key) {
+        return String.format("https://%s.s3.amazonaws.com/%s", bucketName, key);
     }
     
     /**
      * Extract the key from a S3 URL
      * 
      * @param url The S3 URL
-     * @return The key part of the URL
+     * @return The key part of the URL, or null if the URL does not point into the bucket
      */
-    private String extractKeyFromUrl(String url) {
+    public String extractKeyFromUrl(String url) {
         if (url == null) return null;
         
         // Handle URLs in format https://bucket-name.s3.amazonaws.com/key
@@ -165,4 +816,9 @@ public class S3Service {
         
         return null;
     }
+
+    @PreDestroy
+    public void shutdown() {
+        transferExecutor.shutdown();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,12 @@
+package edu.csye6225.neu.webapp.service;
+
+import java.io.InputStream;
+
+/**
+ * The bytes of an object exactly as stored, which for compressed content are the encoded bytes
+ *
+ * @param content The stored bytes; the caller must close the stream
+ * @param length The number of bytes in the stream
+ */
+public record StoredContent(InputStream content, long length) {
+}
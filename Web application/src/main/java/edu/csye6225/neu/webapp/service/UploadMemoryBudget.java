@@ -0,0 +1,112 @@
+package edu.csye6225.neu.webapp.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide accounting of the bytes held by uploads that are still being received.
+ * <p>
+ * Heap use is bounded by a byte-weighted semaphore: a part is buffered in memory only while permits
+ * are available and spills to disk otherwise, so concurrent uploads never hold more than the budget
+ * on the heap. Separately, the total bytes of all requests being received, wherever they are
+ * buffered, is capped; requests that would go past it are turned away before they are read.
+ */
+@Service
+public class UploadMemoryBudget {
+    private static final Logger logger = LoggerFactory.getLogger(UploadMemoryBudget.class);
+
+    private final MetricsService metricsService;
+    private final int budgetBytes;
+    private final Semaphore memory;
+    private final long maxInFlightBytes;
+    private final AtomicLong inFlightBytes = new AtomicLong();
+    private final Duration retryAfter;
+
+    @Autowired
+    public UploadMemoryBudget(MetricsService metricsService,
+                              @Value("${app.uploads.memory.budget-bytes:268435456}") int budgetBytes,
+                              @Value("${app.uploads.in-flight.max-bytes:10737418240}") long maxInFlightBytes,
+                              @Value("${app.uploads.in-flight.retry-after:PT30S}") Duration retryAfter) {
+        this.metricsService = metricsService;
+        this.budgetBytes = budgetBytes;
+        this.memory = new Semaphore(budgetBytes);
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.retryAfter = retryAfter;
+        logger.info("Upload memory budget {} bytes, in-flight limit {} bytes", budgetBytes, maxInFlightBytes);
+    }
+
+    /**
+     * Take heap permits for a buffer without waiting
+     *
+     * @param bytes The size of the buffer
+     * @return Whether the permits were taken; if not, the caller must buffer on disk
+     */
+    public boolean tryReserveMemory(int bytes) {
+        return memory.tryAcquire(bytes);
+    }
+
+    /**
+     * Return heap permits taken with {@link #tryReserveMemory}
+     */
+    public void releaseMemory(int bytes) {
+        if (bytes > 0) {
+            memory.release(bytes);
+        }
+    }
+
+    /**
+     * Count bytes of an incoming request against the in-flight limit
+     *
+     * @param bytes The bytes about to be received
+     * @return Whether they fit; if not, nothing was counted and the request should be rejected
+     */
+    public boolean tryAdmit(long bytes) {
+        long current;
+        do {
+            current = inFlightBytes.get();
+            if (current + bytes > maxInFlightBytes) {
+                metricsService.incrementApiCounter("uploads.rejected");
+                return false;
+            }
+        } while (!inFlightBytes.compareAndSet(current, current + bytes));
+        return true;
+    }
+
+    /**
+     * Release bytes counted with {@link #tryAdmit} once the request is finished with them
+     */
+    public void releaseAdmission(long bytes) {
+        if (bytes > 0) {
+            inFlightBytes.addAndGet(-bytes);
+        }
+    }
+
+    public long memoryUsedBytes() {
+        return budgetBytes - memory.availablePermits();
+    }
+
+    public long inFlightBytes() {
+        return inFlightBytes.get();
+    }
+
+    /**
+     * How long a rejected client should wait before trying again
+     */
+    public Duration retryAfter() {
+        return retryAfter;
+    }
+
+    @Scheduled(fixedDelayString = "${app.uploads.memory.report-interval:PT10S}")
+    public void reportMetrics() {
+        metricsService.recordGauge("uploads.memory_bytes", memoryUsedBytes());
+        metricsService.recordGauge("uploads.in_flight_bytes", inFlightBytes());
+    }
+}
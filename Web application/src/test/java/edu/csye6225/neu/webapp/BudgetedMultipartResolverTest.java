@@ -0,0 +1,191 @@
+package edu.csye6225.neu.webapp;
+
+import edu.csye6225.neu.webapp.config.BudgetedMultipartResolver;
+import edu.csye6225.neu.webapp.exception.GlobalExceptionHandler;
+import edu.csye6225.neu.webapp.exception.UploadCapacityExceededException;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import edu.csye6225.neu.webapp.service.UploadMemoryBudget;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BudgetedMultipartResolverTest {
+
+    private static final String BOUNDARY = "test-boundary";
+
+    @TempDir
+    Path spillDirectory;
+
+    private final MetricsService metricsService = Mockito.mock(MetricsService.class);
+
+    @Test
+    @DisplayName("Parts within the budget are held in memory until the request is cleaned up")
+    public void testInMemoryPart() throws IOException {
+        UploadMemoryBudget budget = new UploadMemoryBudget(metricsService, 1024 * 1024, 10 * 1024 * 1024, Duration.ofSeconds(30));
+        BudgetedMultipartResolver resolver = resolver(budget);
+        byte[] content = bytes(100_000);
+
+        MultipartHttpServletRequest request = resolver.resolveMultipart(request(content));
+
+        MultipartFile file = request.getFile("file");
+        assertEquals(content.length, file.getSize());
+        assertEquals("report.bin", file.getOriginalFilename());
+        assertEquals("application/octet-stream", file.getContentType());
+        assertArrayEquals(content, readAll(file.getInputStream()));
+        assertEquals("notes", request.getParameter("description"));
+        assertEquals(content.length, budget.memoryUsedBytes());
+        assertEquals(0, spilledFiles());
+
+        resolver.cleanupMultipart(request);
+
+        assertEquals(0, budget.memoryUsedBytes());
+        assertEquals(0, budget.inFlightBytes());
+    }
+
+    @Test
+    @DisplayName("Parts that do not fit the budget spill to a temp file that is deleted on cleanup")
+    public void testSpillToDisk() throws IOException {
+        UploadMemoryBudget budget = new UploadMemoryBudget(metricsService, 64 * 1024, 10 * 1024 * 1024, Duration.ofSeconds(30));
+        BudgetedMultipartResolver resolver = resolver(budget);
+        byte[] content = bytes(300_000);
+
+        MultipartHttpServletRequest request = resolver.resolveMultipart(request(content));
+
+        MultipartFile file = request.getFile("file");
+        assertEquals(content.length, file.getSize());
+        assertArrayEquals(content, readAll(file.getInputStream()));
+        assertEquals(0, budget.memoryUsedBytes());
+        assertEquals(1, spilledFiles());
+        Path copy = spillDirectory.resolve("copy");
+        file.transferTo(copy);
+        assertArrayEquals(content, Files.readAllBytes(copy));
+        Files.delete(copy);
+        Mockito.verify(metricsService).incrementApiCounter("uploads.spilled");
+
+        resolver.cleanupMultipart(request);
+
+        assertEquals(0, spilledFiles());
+        assertEquals(0, budget.inFlightBytes());
+    }
+
+    @Test
+    @DisplayName("Requests past the in-flight limit are refused with 503 and Retry-After")
+    public void testAdmissionControl() throws IOException {
+        UploadMemoryBudget budget = new UploadMemoryBudget(metricsService, 1024 * 1024, 150_000, Duration.ofSeconds(30));
+        BudgetedMultipartResolver resolver = resolver(budget);
+
+        MultipartHttpServletRequest first = resolver.resolveMultipart(request(bytes(100_000)));
+        first.getFileMap();
+        UploadCapacityExceededException ex = assertThrows(UploadCapacityExceededException.class,
+                () -> resolver.resolveMultipart(request(bytes(100_000))).getFileMap());
+        assertEquals(first.getContentLengthLong(), budget.inFlightBytes());
+
+        ResponseEntity<Map<String, Object>> response = new GlobalExceptionHandler().handleUploadCapacityExceeded(ex);
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("30", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+
+        // Capacity frees up once the first request is done
+        resolver.cleanupMultipart(first);
+        MultipartHttpServletRequest retried = resolver.resolveMultipart(request(bytes(100_000)));
+        retried.getFileMap();
+        resolver.cleanupMultipart(retried);
+        assertEquals(0, budget.inFlightBytes());
+    }
+
+    @Test
+    @DisplayName("The body is left unread until the handler asks for the parts")
+    public void testLazyParsing() throws IOException {
+        UploadMemoryBudget budget = new UploadMemoryBudget(metricsService, 1024 * 1024, 10 * 1024 * 1024, Duration.ofSeconds(30));
+        BudgetedMultipartResolver resolver = resolver(budget);
+        MockHttpServletRequest raw = request(bytes(1000));
+
+        MultipartHttpServletRequest request = resolver.resolveMultipart(raw);
+
+        assertEquals(0, budget.inFlightBytes());
+        assertEquals(raw.getContentLength(), readAll(request.getInputStream()).length);
+        resolver.cleanupMultipart(request);
+        assertEquals(0, budget.inFlightBytes());
+    }
+
+    @Test
+    @DisplayName("An async dispatch reuses the request parsed by the original dispatch")
+    public void testAsyncDispatchReusesParsedRequest() throws IOException {
+        UploadMemoryBudget budget = new UploadMemoryBudget(metricsService, 1024 * 1024, 10 * 1024 * 1024, Duration.ofSeconds(30));
+        BudgetedMultipartResolver resolver = resolver(budget);
+        MockHttpServletRequest raw = request(bytes(1000));
+
+        MultipartHttpServletRequest parsed = resolver.resolveMultipart(raw);
+
+        assertSame(parsed, resolver.resolveMultipart(raw));
+        resolver.cleanupMultipart(parsed);
+        assertEquals(0, budget.memoryUsedBytes());
+    }
+
+    private BudgetedMultipartResolver resolver(UploadMemoryBudget budget) {
+        MultipartProperties properties = new MultipartProperties();
+        properties.setMaxFileSize(DataSize.ofMegabytes(10));
+        properties.setMaxRequestSize(DataSize.ofMegabytes(10));
+        properties.setLocation(spillDirectory.toString());
+        return new BudgetedMultipartResolver(budget, metricsService, properties, 256 * 1024);
+    }
+
+    private static MockHttpServletRequest request(byte[] content) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"description\"\r\n\r\n"
+                + "notes\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"report.bin\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        body.write(content);
+        body.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/v1/file");
+        request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+        request.setContent(body.toByteArray());
+        return request;
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private long spilledFiles() throws IOException {
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            return files.count();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package edu.csye6225.neu.webapp;
+
+import edu.csye6225.neu.webapp.entity.FileMetadata;
+import edu.csye6225.neu.webapp.service.CacheInvalidationBus;
+import edu.csye6225.neu.webapp.service.ContentCache;
+import edu.csye6225.neu.webapp.service.FileMetadataCache;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CacheInvalidationBusTest {
+
+    private final JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+    private final FileMetadataCache metadataCache = Mockito.mock(FileMetadataCache.class);
+    private final ContentCache contentCache = Mockito.mock(ContentCache.class);
+    private final MetricsService metricsService = Mockito.mock(MetricsService.class);
+    private final CacheInvalidationBus bus = new CacheInvalidationBus(jdbcTemplate, metadataCache, contentCache,
+            metricsService, true, "file_cache", "", "", "", Duration.ofSeconds(10), Duration.ofSeconds(5));
+
+    @Test
+    @DisplayName("A deletion is applied locally and published with the next epoch")
+    @SuppressWarnings("unchecked")
+    public void testPublishDeletion() {
+        FileMetadata metadata = new FileMetadata();
+        metadata.setId(UUID.randomUUID());
+        metadata.setFileName("content/abc");
+
+        bus.fileDeleted(metadata);
+
+        verify(metadataCache).invalidate(metadata.getId());
+        verify(contentCache).invalidate("content/abc");
+        verify(jdbcTemplate).query(eq("SELECT pg_notify(?, nextval('file_cache_epoch') || ':' || ?)"),
+                any(ResultSetExtractor.class), eq("file_cache"), eq(metadata.getId() + ":content/abc"));
+    }
+
+    @Test
+    @DisplayName("Deleted keys are published in one statement")
+    @SuppressWarnings("unchecked")
+    public void testPublishKeysInOneStatement() {
+        bus.keysDeleted(List.of("content/a", "content/b", "content/streamed/x:y"));
+
+        verify(metadataCache).invalidateKeys(List.of("content/a", "content/b", "content/streamed/x:y"));
+        verify(contentCache).invalidate("content/streamed/x:y");
+        verify(jdbcTemplate, times(1)).query(
+                eq("SELECT pg_notify(?, nextval('file_cache_epoch') || '::' || key) FROM unnest(?::text[]) AS key"),
+                any(ResultSetExtractor.class), eq("file_cache"),
+                aryEq(new String[] {"content/a", "content/b", "content/streamed/x:y"}));
+    }
+
+    @Test
+    @DisplayName("A failed publish does not fail the deletion")
+    @SuppressWarnings("unchecked")
+    public void testPublishFailure() {
+        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), any(), any()))
+                .thenThrow(new QueryTimeoutException("database unavailable"));
+
+        bus.keysDeleted(List.of("content/abc"));
+
+        verify(metadataCache).invalidateKeys(List.of("content/abc"));
+        verify(metricsService).incrementApiCounter("cache.invalidation.publish_error");
+    }
+
+    @Test
+    @DisplayName("Received events invalidate by ID or by key")
+    public void testReceiveEvents() {
+        UUID id = UUID.randomUUID();
+
+        bus.onNotification("7:" + id + ":content/abc");
+        bus.onNotification("8::content/streamed/x:y");
+
+        verify(metadataCache).invalidate(id);
+        verify(contentCache).invalidate("content/abc");
+        verify(metadataCache).invalidateKeys(List.of("content/streamed/x:y"));
+        assertThrows(IllegalArgumentException.class, () -> bus.onNotification("9:not-a-uuid:content/abc"));
+    }
+
+    @Test
+    @DisplayName("Reconnecting drops cached metadata only when events were missed")
+    public void testResyncOnReconnect() {
+        bus.onConnected(5);
+        verify(metadataCache, times(1)).invalidateAll();
+
+        bus.onNotification("6:" + UUID.randomUUID() + ":content/abc");
+        bus.onConnected(6);
+        verify(metadataCache, times(1)).invalidateAll();
+
+        bus.onConnected(9);
+        verify(metadataCache, times(2)).invalidateAll();
+        verify(metricsService, never()).incrementApiCounter("cache.invalidation.listener_error");
+    }
+}
@@ -0,0 +1,157 @@
+package edu.csye6225.neu.webapp;
+
+import edu.csye6225.neu.webapp.service.ContentCache;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import edu.csye6225.neu.webapp.service.S3Service;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ContentCacheTest {
+
+    private static final String KEY = "content/abc";
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path directory;
+
+    private S3Service s3Service;
+    private ContentCache cache;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        s3Service = Mockito.mock(S3Service.class);
+        when(s3Service.getObject(eq(KEY), any(), any())).thenAnswer(invocation -> response(CONTENT));
+        cache = new ContentCache(s3Service, Mockito.mock(MetricsService.class), true, directory, 1024, 64);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        cache.shutdown();
+    }
+
+    @Test
+    @DisplayName("Concurrent misses share one S3 download and later reads are hits")
+    public void testConcurrentMissesShareOneDownload() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(s3Service.getObject(eq(KEY), any(), any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return response(CONTENT);
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> reads = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                reads.add(executor.submit(() -> readAll(cache.open(KEY, CONTENT.length, 0, CONTENT.length - 1))));
+            }
+            release.countDown();
+            for (Future<byte[]> read : reads) {
+                assertArrayEquals(CONTENT, read.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertArrayEquals(CONTENT, readAll(cache.open(KEY, CONTENT.length, 0, CONTENT.length - 1)));
+        verify(s3Service, times(1)).getObject(eq(KEY), any(), any());
+    }
+
+    @Test
+    @DisplayName("Ranges are served from a cached entry but do not fill the cache")
+    public void testRangeReads() throws IOException {
+        assertNull(cache.open(KEY, CONTENT.length, 2, 4));
+        verify(s3Service, never()).getObject(eq(KEY), any(), any());
+
+        readAll(cache.open(KEY, CONTENT.length, 0, CONTENT.length - 1));
+
+        assertArrayEquals("234".getBytes(StandardCharsets.UTF_8), readAll(cache.open(KEY, CONTENT.length, 2, 4)));
+        try (InputStream range = cache.open(KEY, CONTENT.length, 5, 9)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(5, range.transferTo(out));
+            assertArrayEquals("56789".getBytes(StandardCharsets.UTF_8), out.toByteArray());
+        }
+    }
+
+    @Test
+    @DisplayName("Invalidating an entry deletes its file")
+    public void testInvalidate() throws Exception {
+        readAll(cache.open(KEY, CONTENT.length, 0, CONTENT.length - 1));
+        assertEquals(1, cachedFiles());
+
+        cache.invalidate(KEY);
+
+        // Removal listeners run asynchronously
+        for (int i = 0; i < 50 && cachedFiles() > 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, cachedFiles());
+        assertNull(cache.open(KEY, CONTENT.length, 2, 4));
+    }
+
+    @Test
+    @DisplayName("Objects above the entry limit bypass the cache")
+    public void testOversizedObjectBypassesCache() {
+        assertNull(cache.open(KEY, 65, 0, 64));
+        verify(s3Service, never()).getObject(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("A missing object is reported and not cached")
+    public void testMissingObject() throws IOException {
+        when(s3Service.getObject(eq(KEY), any(), any())).thenReturn(null);
+
+        assertThrows(IllegalStateException.class, () -> cache.open(KEY, CONTENT.length, 0, CONTENT.length - 1));
+        assertEquals(0, cachedFiles());
+    }
+
+    private long cachedFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static ResponseInputStream<GetObjectResponse> response(byte[] bytes) {
+        return new ResponseInputStream<>(GetObjectResponse.builder().contentLength((long) bytes.length).build(),
+                AbortableInputStream.create(new ByteArrayInputStream(bytes)));
+    }
+}
@@ -0,0 +1,183 @@
+package edu.csye6225.neu.webapp;
+
+import edu.csye6225.neu.webapp.entity.ContentObject;
+import edu.csye6225.neu.webapp.entity.FileMetadata;
+import edu.csye6225.neu.webapp.entity.UploadStatus;
+import edu.csye6225.neu.webapp.repository.ContentObjectRepository;
+import edu.csye6225.neu.webapp.repository.FileMetadataRepository;
+import edu.csye6225.neu.webapp.service.ContentDigest;
+import edu.csye6225.neu.webapp.service.ContentStore;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import edu.csye6225.neu.webapp.service.S3Service;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ContentStoreTest {
+
+    private ContentObjectRepository contentObjectRepository;
+    private FileMetadataRepository fileMetadataRepository;
+    private S3Service s3Service;
+    private ContentStore contentStore;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        contentObjectRepository = Mockito.mock(ContentObjectRepository.class);
+        s3Service = Mockito.mock(S3Service.class);
+        when(s3Service.getObjectUrl(anyString())).thenAnswer(invocation -> "s3://bucket/" + invocation.getArgument(0));
+
+        MetricsService metricsService = Mockito.mock(MetricsService.class);
+        when(metricsService.timeDatabaseQuery(anyString(), any(Supplier.class)))
+                .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+
+        // Runs the callback in place with synchronization active, as the transaction manager would
+        TransactionTemplate transactionTemplate = Mockito.mock(TransactionTemplate.class);
+        Mockito.doCallRealMethod().when(transactionTemplate).executeWithoutResult(any());
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+        TransactionSynchronizationManager.initSynchronization();
+
+        fileMetadataRepository = Mockito.mock(FileMetadataRepository.class);
+        when(fileMetadataRepository.deleteRow(any(UUID.class))).thenReturn(1);
+
+        contentStore = new ContentStore(contentObjectRepository, fileMetadataRepository,
+                s3Service, metricsService, transactionTemplate);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+        contentStore.shutdown();
+    }
+
+    @Test
+    @DisplayName("Releasing the last reference leaves a tombstone and deletes the object after commit")
+    public void testLastReferenceDeletedAfterCommit() {
+        ContentObject content = content(1);
+        when(contentObjectRepository.findForUpdate("abc")).thenReturn(Optional.of(content));
+
+        contentStore.release(metadata());
+
+        // Nothing leaves S3 while the row lock is held
+        verify(s3Service, never()).deleteFile(anyString());
+        assertEquals(0L, content.getRefCount());
+        assertNotNull(content.getDeletingSince());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        verify(s3Service, timeout(1000)).deleteFile("s3://bucket/content/abc");
+        verify(contentObjectRepository, timeout(1000)).deleteTombstone(eq("abc"), any(LocalDateTime.class));
+    }
+
+    @Test
+    @DisplayName("A rolled-back release keeps the object")
+    public void testRolledBackReleaseKeepsObject() {
+        when(contentObjectRepository.findForUpdate("abc")).thenReturn(Optional.of(content(1)));
+
+        contentStore.release(metadata());
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        verify(s3Service, never()).deleteFile(anyString());
+    }
+
+    @Test
+    @DisplayName("Releasing a shared reference only decrements the count")
+    public void testSharedReferenceDecremented() {
+        ContentObject content = content(3);
+        when(contentObjectRepository.findForUpdate("abc")).thenReturn(Optional.of(content));
+
+        contentStore.release(metadata());
+
+        assertEquals(2L, content.getRefCount());
+        assertTrue(TransactionSynchronizationManager.getSynchronizations().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Releasing the same row twice takes a single reference")
+    public void testDoubleReleaseTakesOneReference() {
+        ContentObject content = content(2);
+        when(contentObjectRepository.findForUpdate("abc")).thenReturn(Optional.of(content));
+        // The second delete finds the row already gone, as after a concurrent delete
+        when(fileMetadataRepository.deleteRow(any(UUID.class))).thenReturn(1).thenReturn(0);
+
+        FileMetadata metadata = metadata();
+        assertTrue(contentStore.release(metadata));
+        assertFalse(contentStore.release(metadata));
+
+        assertEquals(1L, content.getRefCount());
+        assertNull(content.getDeletingSince());
+        verify(contentObjectRepository, times(1)).findForUpdate("abc");
+        assertTrue(TransactionSynchronizationManager.getSynchronizations().isEmpty());
+    }
+
+    @Test
+    @DisplayName("A sweep of a row committed since it was read leaves the row and its content")
+    public void testReleasePendingSkipsCommittedRow() {
+        ContentObject content = content(1);
+        when(contentObjectRepository.findForUpdate("abc")).thenReturn(Optional.of(content));
+        when(fileMetadataRepository.deleteRowInStatus(any(UUID.class), eq(UploadStatus.PENDING))).thenReturn(0);
+
+        assertFalse(contentStore.releasePending(metadata()));
+
+        assertEquals(1L, content.getRefCount());
+        verify(contentObjectRepository, never()).findForUpdate(anyString());
+        verify(fileMetadataRepository, never()).deleteRow(any(UUID.class));
+        verify(s3Service, never()).deleteFile(anyString());
+    }
+
+    @Test
+    @DisplayName("Uploads wait for a tombstone to go before registering the content afresh")
+    public void testAddReferenceWaitsForTombstone() {
+        when(contentObjectRepository.findDeletingSince("abc"))
+                .thenReturn(Optional.of(LocalDateTime.now()))
+                .thenReturn(Optional.empty());
+        when(contentObjectRepository.addReference(eq("abc"), anyString(), anyLong(), any(), any()))
+                .thenReturn(1L);
+
+        FileMetadata metadata = metadata();
+        boolean first = contentStore.addReference(new ContentDigest("abc", null, 3), metadata);
+
+        assertTrue(first);
+        verify(contentObjectRepository, never()).deleteTombstone(anyString(), any(LocalDateTime.class));
+    }
+
+    private static ContentObject content(long refCount) {
+        return new ContentObject("abc", "content/abc", 3L, null, null, refCount, LocalDateTime.now(), null);
+    }
+
+    private static FileMetadata metadata() {
+        FileMetadata metadata = new FileMetadata();
+        metadata.setId(UUID.randomUUID());
+        metadata.setFileName("content/abc");
+        metadata.setContentDigest("abc");
+        return metadata;
+    }
+}
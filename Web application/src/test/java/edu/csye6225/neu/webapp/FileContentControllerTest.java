@@ -0,0 +1,156 @@
+package edu.csye6225.neu.webapp;
+
+import edu.csye6225.neu.webapp.controller.FileContentController;
+import edu.csye6225.neu.webapp.entity.FileMetadata;
+import edu.csye6225.neu.webapp.service.FileService;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import edu.csye6225.neu.webapp.service.StoredContent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.head;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class FileContentControllerTest {
+
+    private static final byte[] CONTENT = "0123456789abcdefghij".getBytes(StandardCharsets.US_ASCII);
+    private static final String ETAG = "\"digest\"";
+
+    private FileService fileService;
+    private MockMvc mockMvc;
+    private final UUID id = UUID.randomUUID();
+
+    @BeforeEach
+    public void setup() {
+        fileService = Mockito.mock(FileService.class);
+        mockMvc = MockMvcBuilders
+                .standaloneSetup(new FileContentController(fileService, Mockito.mock(MetricsService.class)))
+                .build();
+
+        FileMetadata metadata = new FileMetadata();
+        metadata.setId(id);
+        metadata.setOriginalFileName("notes.txt");
+        metadata.setContentType("text/plain");
+        metadata.setSizeBytes((long) CONTENT.length);
+        metadata.setUploadDate(LocalDateTime.now());
+        when(fileService.getFileById(id)).thenReturn(Optional.of(metadata));
+        when(fileService.getContentETag(metadata)).thenReturn(ETAG);
+        when(fileService.openContent(any(FileMetadata.class), anyLong(), anyLong())).thenAnswer(invocation -> {
+            long start = invocation.getArgument(1);
+            long end = invocation.getArgument(2);
+            return new ByteArrayInputStream(Arrays.copyOfRange(CONTENT, (int) start, (int) end + 1));
+        });
+    }
+
+    @Test
+    @DisplayName("Whole file is streamed with validators")
+    public void testDownloadWholeFile() throws Exception {
+        mockMvc.perform(get("/v1/file/{id}/content", id))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, CONTENT.length))
+                .andExpect(content().bytes(CONTENT));
+    }
+
+    @Test
+    @DisplayName("A single range returns 206 with Content-Range")
+    public void testSingleRange() throws Exception {
+        mockMvc.perform(get("/v1/file/{id}/content", id).header(HttpHeaders.RANGE, "bytes=-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 15-19/20"))
+                .andExpect(content().string("fghij"));
+    }
+
+    @Test
+    @DisplayName("Multiple ranges return a multipart/byteranges body of the declared length")
+    public void testMultipleRanges() throws Exception {
+        MvcResult result = mockMvc.perform(get("/v1/file/{id}/content", id).header(HttpHeaders.RANGE, "bytes=0-1,10-12"))
+                .andExpect(status().isPartialContent())
+                .andReturn();
+
+        String body = result.getResponse().getContentAsString();
+        assertTrue(result.getResponse().getContentType().startsWith("multipart/byteranges; boundary="));
+        assertTrue(body.contains("Content-Range: bytes 0-1/20\r\n\r\n01\r\n"), body);
+        assertTrue(body.contains("Content-Range: bytes 10-12/20\r\n\r\nabc\r\n"), body);
+        assertEquals(body.length(), result.getResponse().getContentLengthLong());
+    }
+
+    @Test
+    @DisplayName("Unsatisfiable ranges return 416")
+    public void testUnsatisfiableRange() throws Exception {
+        mockMvc.perform(get("/v1/file/{id}/content", id).header(HttpHeaders.RANGE, "bytes=50-60"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */20"));
+    }
+
+    @Test
+    @DisplayName("A matching If-None-Match returns 304 without touching S3")
+    public void testNotModified() throws Exception {
+        mockMvc.perform(get("/v1/file/{id}/content", id).header(HttpHeaders.IF_NONE_MATCH, "W/\"other\", " + ETAG))
+                .andExpect(status().isNotModified());
+        verify(fileService, never()).openContent(any(FileMetadata.class), anyLong(), anyLong());
+    }
+
+    @Test
+    @DisplayName("HEAD is answered from metadata")
+    public void testHead() throws Exception {
+        mockMvc.perform(head("/v1/file/{id}/content", id))
+                .andExpect(status().isOk())
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, CONTENT.length));
+        verify(fileService, never()).openContent(any(FileMetadata.class), anyLong(), anyLong());
+    }
+
+    @Test
+    @DisplayName("Compressed files are sent as stored to clients that accept the encoding")
+    public void testPrecompressedDownload() throws Exception {
+        FileMetadata metadata = fileService.getFileById(id).orElseThrow();
+        metadata.setContentEncoding("zstd");
+        byte[] stored = "compressed".getBytes(StandardCharsets.US_ASCII);
+        when(fileService.openStoredContent(metadata))
+                .thenReturn(new StoredContent(new ByteArrayInputStream(stored), stored.length));
+
+        mockMvc.perform(get("/v1/file/{id}/content", id).header(HttpHeaders.ACCEPT_ENCODING, "gzip, zstd;q=0.9"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "zstd"))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"digest-zstd\""))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, stored.length))
+                .andExpect(content().bytes(stored));
+
+        // Clients that refuse the encoding, and range requests, get the decoded bytes
+        mockMvc.perform(get("/v1/file/{id}/content", id).header(HttpHeaders.ACCEPT_ENCODING, "gzip, zstd;q=0"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG))
+                .andExpect(content().bytes(CONTENT));
+        mockMvc.perform(get("/v1/file/{id}/content", id)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "zstd")
+                        .header(HttpHeaders.RANGE, "bytes=0-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING));
+    }
+}
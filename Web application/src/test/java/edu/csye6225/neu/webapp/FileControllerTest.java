@@ -2,6 +2,8 @@ package edu.csye6225.neu.webapp;
 
 import edu.csye6225.neu.webapp.entity.FileMetadata;
 import edu.csye6225.neu.webapp.repository.FileMetadataRepository;
+import edu.csye6225.neu.webapp.repository.FileSummary;
+import edu.csye6225.neu.webapp.service.FilePage;
 import edu.csye6225.neu.webapp.service.FileService;
 import io.github.cdimascio.dotenv.Dotenv;
 import org.junit.jupiter.api.*;
@@ -19,7 +21,7 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import java.time.LocalDateTime;
-import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -131,15 +133,16 @@ public class FileControllerTest {
 
     @Test
     @Order(3)
-    @DisplayName("Test get all files")
-    public void testGetAllFiles() throws Exception {
-        when(fileService.getAllFiles()).thenReturn(Arrays.asList(testFileMetadata));
+    @DisplayName("Test list files")
+    public void testListFiles() throws Exception {
+        when(fileService.listFiles(null, 100, null)).thenReturn(new FilePage(List.of(new FileSummary(testFileId,
+                testFileMetadata.getOriginalFileName(), testFileMetadata.getS3BucketPath(), testFileMetadata.getUploadDate())), "next"));
 
-        mockMvc.perform(MockMvcRequestBuilders.get("/api/files"))
+        mockMvc.perform(MockMvcRequestBuilders.get("/v1/file"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$[0].id").value(testFileId.toString()))
-                .andExpect(jsonPath("$[0].fileName").value("original-test-file.jpg"))
-                .andExpect(jsonPath("$[0].fileUrl").value("https://test-bucket.s3.amazonaws.com/test-file.jpg"))
+                .andExpect(jsonPath("$.files[0].id").value(testFileId.toString()))
+                .andExpect(jsonPath("$.files[0].file_name").value("original-test-file.jpg"))
+                .andExpect(jsonPath("$.next_cursor").value("next"))
                 .andExpect(header().string("Cache-Control", "no-cache, no-store, must-revalidate"))
                 .andExpect(header().string("Pragma", "no-cache"))
                 .andExpect(header().string("X-Content-Type-Options", "nosniff"));
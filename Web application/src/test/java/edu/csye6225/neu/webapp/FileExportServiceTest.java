@@ -0,0 +1,95 @@
+package edu.csye6225.neu.webapp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.csye6225.neu.webapp.entity.FileMetadata;
+import edu.csye6225.neu.webapp.entity.UploadStatus;
+import edu.csye6225.neu.webapp.repository.FileMetadataRepository;
+import edu.csye6225.neu.webapp.service.FileExportService;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FileExportServiceTest {
+
+    private final FileMetadataRepository repository = Mockito.mock(FileMetadataRepository.class);
+    private final EntityManager entityManager = Mockito.mock(EntityManager.class);
+    private final MetricsService metricsService = Mockito.mock(MetricsService.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private FileExportService exportService;
+    private List<FileMetadata> rows;
+
+    @BeforeEach
+    public void setup() {
+        exportService = new FileExportService(repository, entityManager, Mockito.mock(PlatformTransactionManager.class),
+                objectMapper, metricsService, 1);
+        LocalDateTime uploaded = LocalDateTime.of(2024, 1, 1, 12, 0);
+        rows = List.of(
+                new FileMetadata(UUID.randomUUID(), "content/abc", "report.pdf", "https://bucket/content/abc",
+                        "application/pdf", 7L, "abc", null, uploaded, uploaded, UploadStatus.COMMITTED),
+                new FileMetadata(UUID.randomUUID(), "content/def", "notes, \"final\".txt", "https://bucket/content/def",
+                        "text/plain", 2048L, "def", "zstd", uploaded, uploaded, UploadStatus.COMMITTED));
+        when(repository.streamByStatus(UploadStatus.COMMITTED)).thenAnswer(invocation -> rows.stream());
+    }
+
+    @Test
+    @DisplayName("NDJSON export writes one object per line and detaches every row")
+    public void testNdjsonExport() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(2, exportService.export(FileExportService.Format.NDJSON, out));
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        JsonNode second = objectMapper.readTree(lines[1]);
+        assertEquals(rows.get(1).getId().toString(), second.get("id").asText());
+        assertEquals("notes, \"final\".txt", second.get("file_name").asText());
+        assertEquals(2048, second.get("size_bytes").asLong());
+        assertEquals("zstd", second.get("content_encoding").asText());
+        assertTrue(objectMapper.readTree(lines[0]).get("content_encoding").isNull());
+        rows.forEach(row -> verify(entityManager).detach(row));
+        verify(metricsService).incrementCounter("file_export.rows", 2);
+    }
+
+    @Test
+    @DisplayName("CSV export writes a header and quotes fields that need it")
+    public void testCsvExport() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exportService.export(FileExportService.Format.CSV, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertEquals(3, lines.length);
+        assertEquals("id,file_name,s3_key,url,content_type,size_bytes,content_digest,content_encoding,upload_date,last_modified",
+                lines[0]);
+        assertEquals(rows.get(0).getId() + ",report.pdf,content/abc,https://bucket/content/abc,application/pdf,7,abc,,"
+                + "2024-01-01T12:00:00,2024-01-01T12:00:00", lines[1]);
+        assertTrue(lines[2].contains(",\"notes, \"\"final\"\".txt\",content/def,"));
+    }
+
+    @Test
+    @DisplayName("An empty table exports nothing but the CSV header")
+    public void testEmptyExport() throws Exception {
+        when(repository.streamByStatus(UploadStatus.COMMITTED)).thenReturn(Stream.empty());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(0, exportService.export(FileExportService.Format.NDJSON, out));
+        assertEquals(0, out.size());
+    }
+}
@@ -0,0 +1,127 @@
+package edu.csye6225.neu.webapp;
+
+import edu.csye6225.neu.webapp.entity.FileMetadata;
+import edu.csye6225.neu.webapp.entity.UploadStatus;
+import edu.csye6225.neu.webapp.service.FileMetadataCache;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FileMetadataCacheTest {
+
+    private final MetricsService metricsService = Mockito.mock(MetricsService.class);
+    private final FileMetadataCache cache = new FileMetadataCache(metricsService, true, 1024 * 1024, Duration.ofMinutes(10));
+
+    @AfterEach
+    public void tearDown() {
+        cache.shutdown();
+    }
+
+    @Test
+    @DisplayName("Concurrent lookups of an uncached ID share one query")
+    public void testConcurrentLookupsCollapse() throws Exception {
+        FileMetadata row = metadata("content/abc");
+        AtomicInteger queries = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Optional<FileMetadata>>> lookups = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                lookups.add(callers.submit(() -> cache.get(row.getId(), () -> {
+                    queries.incrementAndGet();
+                    await(release);
+                    return Optional.of(row);
+                })));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<Optional<FileMetadata>> lookup : lookups) {
+                assertEquals("content/abc", lookup.get(5, TimeUnit.SECONDS).orElseThrow().getFileName());
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(1, queries.get());
+        // Later lookups are hits, and never see the loader's own instance
+        assertNotSame(row, cache.get(row.getId(), Optional::empty).orElseThrow());
+    }
+
+    @Test
+    @DisplayName("Missing rows and failed queries are not cached")
+    public void testMissesNotCached() {
+        UUID id = UUID.randomUUID();
+        FileMetadata row = metadata("content/late");
+        row.setId(id);
+
+        assertTrue(cache.get(id, Optional::empty).isEmpty());
+        assertThrows(IllegalStateException.class, () -> cache.get(id, () -> {
+            throw new IllegalStateException("database unavailable");
+        }));
+        assertEquals("content/late", cache.get(id, () -> Optional.of(row)).orElseThrow().getFileName());
+    }
+
+    @Test
+    @DisplayName("Entries are dropped by ID and by object key")
+    public void testInvalidation() {
+        FileMetadata first = metadata("content/one");
+        FileMetadata second = metadata("content/two");
+        cache.put(first);
+        cache.put(second);
+
+        cache.invalidate(first.getId());
+        cache.invalidateKeys(List.of("content/two"));
+
+        assertTrue(cache.get(first.getId(), Optional::empty).isEmpty());
+        assertTrue(cache.get(second.getId(), Optional::empty).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Hits, misses and size are reported as deltas since the last report")
+    public void testReportMetrics() {
+        FileMetadata row = metadata("content/abc");
+        cache.put(row);
+        cache.get(row.getId(), Optional::empty);
+        cache.get(UUID.randomUUID(), Optional::empty);
+
+        cache.reportMetrics();
+        cache.reportMetrics();
+
+        Mockito.verify(metricsService).incrementCounter("cache.metadata.hits", 1);
+        Mockito.verify(metricsService).incrementCounter("cache.metadata.misses", 1);
+        Mockito.verify(metricsService, Mockito.times(2)).recordGauge("cache.metadata.hit_ratio_percent", 50L);
+    }
+
+    private static FileMetadata metadata(String key) {
+        LocalDateTime now = LocalDateTime.now();
+        return new FileMetadata(UUID.randomUUID(), key, "report.pdf", "https://bucket/" + key,
+                "application/pdf", 7L, "abc", null, now, now, UploadStatus.COMMITTED);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
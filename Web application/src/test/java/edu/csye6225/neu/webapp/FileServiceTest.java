@@ -0,0 +1,402 @@
+package edu.csye6225.neu.webapp;
+
+import edu.csye6225.neu.webapp.entity.FileMetadata;
+import edu.csye6225.neu.webapp.entity.UploadStatus;
+import edu.csye6225.neu.webapp.repository.FileMetadataRepository;
+import edu.csye6225.neu.webapp.repository.FileSummary;
+import edu.csye6225.neu.webapp.service.BatchUploadResult;
+import edu.csye6225.neu.webapp.service.CacheInvalidationBus;
+import edu.csye6225.neu.webapp.service.ContentCache;
+import edu.csye6225.neu.webapp.service.ContentDigest;
+import edu.csye6225.neu.webapp.service.ContentEncoding;
+import edu.csye6225.neu.webapp.service.ContentStore;
+import edu.csye6225.neu.webapp.service.FileMetadataCache;
+import edu.csye6225.neu.webapp.service.FilePage;
+import edu.csye6225.neu.webapp.service.FileService;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import edu.csye6225.neu.webapp.service.S3Service;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FileServiceTest {
+
+    private FileMetadataRepository repository;
+    private S3Service s3Service;
+    private static final String HELLO_SHA256 = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    private ContentStore contentStore;
+    private FileMetadataCache metadataCache;
+    private FileService fileService;
+    private final Set<String> referencedDigests = new HashSet<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        repository = Mockito.mock(FileMetadataRepository.class);
+        s3Service = Mockito.mock(S3Service.class);
+        MetricsService metricsService = Mockito.mock(MetricsService.class);
+        when(metricsService.timeDatabaseQuery(anyString(), any(Supplier.class)))
+                .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+        when(metricsService.timeS3Operation(anyString(), any(Supplier.class)))
+                .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+
+        when(s3Service.getObjectUrl(anyString())).thenAnswer(invocation -> "https://bucket/" + invocation.getArgument(0));
+        when(repository.save(any(FileMetadata.class))).thenAnswer(invocation -> {
+            FileMetadata row = invocation.getArgument(0);
+            row.setId(UUID.randomUUID());
+            return row;
+        });
+        when(repository.updateStatus(any(UUID.class), eq(UploadStatus.COMMITTED), any(LocalDateTime.class))).thenReturn(1);
+        when(repository.updateStatusIn(anyList(), eq(UploadStatus.COMMITTED), any(LocalDateTime.class)))
+                .thenAnswer(invocation -> ((List<?>) invocation.getArgument(0)).size());
+        when(repository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<FileMetadata> rows = invocation.getArgument(0);
+            rows.forEach(row -> row.setId(UUID.randomUUID()));
+            return rows;
+        });
+        when(s3Service.uploadFile(any(MultipartFile.class), anyString(), anyString(), any())).thenAnswer(invocation -> {
+            MultipartFile file = invocation.getArgument(0);
+            if (file.getOriginalFilename().contains("broken")) {
+                throw new RuntimeException("S3 unavailable");
+            }
+            return "https://bucket/" + invocation.getArgument(1);
+        });
+
+        contentStore = Mockito.mock(ContentStore.class);
+        when(contentStore.keyFor(any(ContentDigest.class)))
+                .thenAnswer(invocation -> "content/" + ((ContentDigest) invocation.getArgument(0)).sha256());
+        when(contentStore.addReference(any(ContentDigest.class), any(FileMetadata.class))).thenAnswer(invocation ->
+                referencedDigests.add(((ContentDigest) invocation.getArgument(0)).sha256()));
+        when(contentStore.isStored(anyString())).thenReturn(true);
+
+        TransactionTemplate transactionTemplate = Mockito.mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+
+        metadataCache = new FileMetadataCache(metricsService, true, 1024 * 1024, Duration.ofMinutes(10));
+        CacheInvalidationBus invalidationBus = new CacheInvalidationBus(Mockito.mock(JdbcTemplate.class), metadataCache,
+                Mockito.mock(ContentCache.class), metricsService, false, "file_cache", "", "", "",
+                Duration.ofSeconds(10), Duration.ofSeconds(5));
+        fileService = new FileService(repository, s3Service, metricsService,
+                contentStore, Mockito.mock(ContentCache.class),
+                metadataCache, invalidationBus, transactionTemplate, 4, Duration.ofMinutes(15),
+                "zstd", Set.of("text/plain", "application/json"), 64);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        fileService.shutdown();
+    }
+
+    @Test
+    @DisplayName("Batch upload inserts once, commits successes together and releases failures")
+    @SuppressWarnings("unchecked")
+    public void testBatchUploadReportsPerFileResults() {
+        List<MultipartFile> files = List.of(file("a.pdf", 1), file("broken.pdf", 2), file("c.pdf", 3));
+
+        List<BatchUploadResult> results = fileService.uploadFiles(files);
+
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals("broken.pdf", results.get(1).originalFileName());
+        assertTrue(results.get(2).isSuccess());
+        assertEquals(UploadStatus.COMMITTED, results.get(2).metadata().getStatus());
+
+        verify(repository, times(1)).saveAll(anyList());
+        verify(repository, times(1)).updateStatusIn(
+                Mockito.<List<UUID>>argThat(ids -> ids.size() == 2), eq(UploadStatus.COMMITTED), any(LocalDateTime.class));
+        verify(contentStore).release(Mockito.argThat(row -> row.getOriginalFileName().equals("broken.pdf")));
+    }
+
+    @Test
+    @DisplayName("Batch files whose rows were swept before the commit are reported as failed")
+    public void testBatchUploadReportsSweptRows() {
+        List<MultipartFile> files = List.of(file("a.pdf", 1), file("b.pdf", 2));
+        List<FileMetadata> committed = new ArrayList<>();
+        when(repository.updateStatusIn(anyList(), eq(UploadStatus.COMMITTED), any(LocalDateTime.class))).thenReturn(1);
+        // Only the first row was still PENDING when the commit ran
+        when(repository.findAllById(anyList())).thenAnswer(invocation -> committed);
+        when(repository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<FileMetadata> rows = invocation.getArgument(0);
+            rows.forEach(row -> row.setId(UUID.randomUUID()));
+            FileMetadata first = new FileMetadata();
+            first.setId(rows.get(0).getId());
+            first.setStatus(UploadStatus.COMMITTED);
+            committed.add(first);
+            return rows;
+        });
+
+        List<BatchUploadResult> results = fileService.uploadFiles(files);
+
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals("b.pdf", results.get(1).originalFileName());
+    }
+
+    @Test
+    @DisplayName("A direct upload swept before it is confirmed is not reported as committed")
+    public void testConfirmAfterSweepFails() {
+        FileMetadata pending = new FileMetadata();
+        pending.setId(UUID.randomUUID());
+        pending.setFileName("content/" + HELLO_SHA256);
+        pending.setSizeBytes(5L);
+        pending.setContentDigest(HELLO_SHA256);
+        when(repository.findByIdAndStatus(pending.getId(), UploadStatus.PENDING)).thenReturn(Optional.of(pending));
+        when(s3Service.headObject(pending.getFileName())).thenReturn(HeadObjectResponse.builder().contentLength(5L).build());
+        // The sweeper removed the row between the lookup and the commit
+        when(repository.updateStatus(eq(pending.getId()), eq(UploadStatus.COMMITTED), any(LocalDateTime.class))).thenReturn(0);
+
+        assertThrows(IllegalStateException.class, () -> fileService.confirmDirectUpload(pending.getId()));
+        assertTrue(fileService.getFileById(pending.getId()).isEmpty());
+    }
+
+    @Test
+    @DisplayName("A duplicate upload stores only a metadata row")
+    public void testDuplicateUploadSkipsTransfer() throws Exception {
+        FileMetadata first = fileService.uploadFile(file("report.pdf", 7));
+        FileMetadata second = fileService.uploadFile(file("copy-of-report.pdf", 7));
+
+        assertEquals(first.getFileName(), second.getFileName());
+        assertEquals(first.getContentDigest(), second.getContentDigest());
+        verify(s3Service, times(1)).uploadFile(any(MultipartFile.class), anyString(), anyString(), any());
+        verify(repository, times(2)).updateStatus(any(UUID.class), eq(UploadStatus.COMMITTED), any(LocalDateTime.class));
+    }
+
+    @Test
+    @DisplayName("Transfers in progress renew the lease of their pending row until they finish")
+    public void testTransferLeaseRenewedWhileInProgress() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(s3Service.uploadFile(any(MultipartFile.class), anyString(), anyString(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return "https://bucket/" + invocation.getArgument(1);
+        });
+
+        CompletableFuture<FileMetadata> upload = CompletableFuture.supplyAsync(() -> {
+            try {
+                return fileService.uploadFile(file("large.pdf", 7));
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        fileService.renewTransferLeases();
+        verify(repository).touch(argThat(ids -> ids.size() == 1), eq(UploadStatus.PENDING), any(LocalDateTime.class));
+
+        release.countDown();
+        upload.get(5, TimeUnit.SECONDS);
+        fileService.renewTransferLeases();
+        verify(repository, times(1)).touch(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Uploaded metadata is read from the cache until the file is deleted")
+    public void testMetadataCachedUntilDeleted() throws Exception {
+        FileMetadata uploaded = fileService.uploadFile(file("report.pdf", 7));
+        UUID id = uploaded.getId();
+
+        assertEquals(uploaded.getFileName(), fileService.getFileById(id).orElseThrow().getFileName());
+        verify(repository, times(0)).findByIdAndStatus(id, UploadStatus.COMMITTED);
+
+        when(repository.findByIdAndStatus(id, UploadStatus.COMMITTED)).thenReturn(Optional.of(uploaded));
+        fileService.deleteFile(id);
+        when(repository.findByIdAndStatus(id, UploadStatus.COMMITTED)).thenReturn(Optional.empty());
+
+        assertTrue(fileService.getFileById(id).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Listings page by (upload_date, id) with an opaque cursor")
+    public void testListFilesKeysetPagination() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 12, 0);
+        List<FileSummary> rows = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            rows.add(new FileSummary(UUID.randomUUID(), "file-" + i, "https://bucket/file-" + i, start.plusSeconds(i)));
+        }
+        when(repository.findFirstPage(UploadStatus.COMMITTED, null, PageRequest.of(0, 3))).thenReturn(rows);
+        when(repository.findPageAfter(UploadStatus.COMMITTED, rows.get(1).uploadDate(), rows.get(1).id(), null, PageRequest.of(0, 3)))
+                .thenReturn(rows.subList(2, 3));
+
+        FilePage first = fileService.listFiles(null, 2, null);
+        FilePage second = fileService.listFiles(first.nextCursor(), 2, null);
+
+        assertEquals(rows.subList(0, 2), first.files());
+        assertTrue(first.hasMore());
+        assertEquals(rows.subList(2, 3), second.files());
+        assertFalse(second.hasMore());
+        assertThrows(IllegalArgumentException.class, () -> fileService.listFiles("not-a-cursor", 2, null));
+    }
+
+    @Test
+    @DisplayName("A direct upload is only confirmed when the stored object matches")
+    public void testConfirmDirectUploadChecksObject() {
+        FileMetadata pending = new FileMetadata();
+        pending.setId(UUID.randomUUID());
+        pending.setFileName("content/" + HELLO_SHA256);
+        pending.setSizeBytes(5L);
+        pending.setContentDigest(HELLO_SHA256);
+        when(repository.findByIdAndStatus(pending.getId(), UploadStatus.PENDING)).thenReturn(Optional.of(pending));
+
+        when(s3Service.headObject(pending.getFileName()))
+                .thenReturn(HeadObjectResponse.builder().contentLength(6L).build());
+        assertThrows(IllegalStateException.class, () -> fileService.confirmDirectUpload(pending.getId()));
+
+        when(s3Service.headObject(pending.getFileName())).thenReturn(HeadObjectResponse.builder()
+                .contentLength(5L).checksumSHA256("LPJNul+wow4m6DsqxbninhsWHlwfp0JecwQzYpOLmCQ=").build());
+        assertEquals(UploadStatus.COMMITTED, fileService.confirmDirectUpload(pending.getId()).getStatus());
+    }
+
+    @Test
+    @DisplayName("Compressible uploads are stored compressed and read back decoded")
+    public void testCompressibleUploadIsCompressed() throws Exception {
+        byte[] text = "id,name\n1,alpha\n2,beta\n".repeat(100).getBytes(StandardCharsets.US_ASCII);
+        byte[][] stored = new byte[1][];
+        when(s3Service.uploadFile(any(MultipartFile.class), anyString(), anyString(), eq(ContentEncoding.ZSTD)))
+                .thenAnswer(invocation -> {
+                    try (InputStream in = ContentEncoding.ZSTD.compress(
+                            ((MultipartFile) invocation.getArgument(0)).getInputStream())) {
+                        stored[0] = in.readAllBytes();
+                    }
+                    return "https://bucket/" + invocation.getArgument(1);
+                });
+
+        FileMetadata metadata = fileService.uploadFile(new MockMultipartFile("file", "data.json", "application/json", text));
+        FileMetadata image = fileService.uploadFile(file("scan.pdf", 1));
+
+        assertEquals("zstd", metadata.getContentEncoding());
+        assertEquals(text.length, metadata.getSizeBytes());
+        assertTrue(stored[0].length < text.length / 5);
+        assertNull(image.getContentEncoding());
+
+        when(s3Service.getObject(metadata.getFileName(), null, null)).thenReturn(new ResponseInputStream<>(
+                GetObjectResponse.builder().contentLength((long) stored[0].length).build(),
+                AbortableInputStream.create(new ByteArrayInputStream(stored[0]))));
+        try (InputStream range = fileService.openContent(metadata, 8, 23)) {
+            assertArrayEquals(Arrays.copyOfRange(text, 8, 24), range.readAllBytes());
+        }
+    }
+
+    @Test
+    @DisplayName("Streamed content is registered under its staging key, and a streamed duplicate drops its staged copy")
+    public void testStreamingUpload() throws Exception {
+        when(contentStore.newStagingKey()).thenReturn("content/streamed/first", "content/streamed/second");
+        when(contentStore.addReference(any(ContentDigest.class), any(FileMetadata.class))).thenAnswer(invocation -> {
+            FileMetadata row = invocation.getArgument(1);
+            if (referencedDigests.add(((ContentDigest) invocation.getArgument(0)).sha256())) {
+                return true;
+            }
+            row.setFileName("content/streamed/first");
+            return false;
+        });
+        byte[][] received = new byte[1][];
+        when(s3Service.uploadStream(anyString(), anyString(), any(InputStream.class), any())).thenAnswer(invocation -> {
+            try (InputStream in = invocation.getArgument(2)) {
+                received[0] = in.readAllBytes();
+            }
+            return "https://bucket/" + invocation.getArgument(0);
+        });
+
+        FileMetadata first = fileService.uploadStream("scan.pdf", MediaType.APPLICATION_PDF_VALUE,
+                new ByteArrayInputStream("hello".getBytes(StandardCharsets.US_ASCII)));
+        FileMetadata second = fileService.uploadStream("copy.pdf", MediaType.APPLICATION_PDF_VALUE,
+                new ByteArrayInputStream("hello".getBytes(StandardCharsets.US_ASCII)));
+
+        assertArrayEquals("hello".getBytes(StandardCharsets.US_ASCII), received[0]);
+        assertEquals(HELLO_SHA256, first.getContentDigest());
+        assertEquals(5L, first.getSizeBytes());
+        assertEquals("content/streamed/first", first.getFileName());
+        assertEquals(UploadStatus.COMMITTED, first.getStatus());
+        assertEquals("content/streamed/first", second.getFileName());
+        verify(s3Service).deleteFile("https://bucket/content/streamed/second");
+        verify(s3Service, times(1)).deleteFile(anyString());
+        verify(s3Service, Mockito.never()).copyObject(anyString(), anyString());
+    }
+
+    @Test
+    @DisplayName("A stream that fails part way hands its staging row to the sweeper's cleanup")
+    public void testFailedStreamReleasesStagingRow() throws Exception {
+        when(contentStore.newStagingKey()).thenReturn("content/streamed/broken");
+        when(s3Service.uploadStream(anyString(), anyString(), any(InputStream.class), any()))
+                .thenThrow(new IOException("Connection reset"));
+
+        assertThrows(IOException.class, () -> fileService.uploadStream("scan.pdf",
+                MediaType.APPLICATION_PDF_VALUE, new ByteArrayInputStream("hello".getBytes(StandardCharsets.US_ASCII))));
+
+        // The staged key was held by a PENDING row before any bytes were sent
+        InOrder inOrder = Mockito.inOrder(repository, s3Service, contentStore);
+        inOrder.verify(repository).save(argThat(row -> "content/streamed/broken".equals(row.getFileName())
+                && row.getStatus() == UploadStatus.PENDING && row.getContentDigest() == null));
+        inOrder.verify(s3Service).uploadStream(anyString(), anyString(), any(InputStream.class), any());
+        inOrder.verify(contentStore).releasePending(argThat(row -> "content/streamed/broken".equals(row.getFileName())));
+        verify(s3Service, Mockito.never()).deleteFile(anyString());
+    }
+
+    @Test
+    @DisplayName("SHA-256 and CRC32C are computed in one pass")
+    public void testContentDigest() throws Exception {
+        ContentDigest digest = ContentDigest.of(new ByteArrayInputStream("hello".getBytes(StandardCharsets.US_ASCII)));
+
+        assertEquals(HELLO_SHA256, digest.sha256());
+        // CRC32C("hello") = 0x9a71bb4c
+        assertEquals("mnG7TA==", digest.crc32c());
+        assertEquals(5, digest.size());
+    }
+
+    private static MockMultipartFile file(String name, int fill) {
+        byte[] content = new byte[128];
+        Arrays.fill(content, (byte) fill);
+        return new MockMultipartFile("files", name, MediaType.APPLICATION_PDF_VALUE, content);
+    }
+}
@@ -0,0 +1,130 @@
+package edu.csye6225.neu.webapp;
+
+import edu.csye6225.neu.webapp.service.HealthCheckPartitionManager;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HealthCheckPartitionManagerTest {
+
+    private static final String EXISTS = "SELECT to_regclass(?) IS NOT NULL";
+
+    private final LocalDate today = LocalDate.now();
+    private JdbcTemplate jdbcTemplate;
+    private HealthCheckPartitionManager manager;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        TransactionTemplate transactionTemplate = Mockito.mock(TransactionTemplate.class);
+        Mockito.doAnswer(invocation -> {
+            ((Consumer<Object>) invocation.getArgument(0)).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(jdbcTemplate.queryForObject(startsWith("SELECT pg_try_advisory_xact_lock"), eq(Boolean.class), eq("health_check")))
+                .thenReturn(true);
+        when(jdbcTemplate.queryForObject(eq(EXISTS), eq(Boolean.class), anyString())).thenReturn(false);
+        when(jdbcTemplate.queryForObject(startsWith("SELECT EXISTS"), eq(Boolean.class), any(), any())).thenReturn(false);
+        when(jdbcTemplate.queryForList(startsWith("SELECT c.relname"), eq(String.class), any(), any())).thenReturn(List.of());
+        manager = new HealthCheckPartitionManager(jdbcTemplate, transactionTemplate, Mockito.mock(MetricsService.class),
+                Duration.ofDays(14), 2, Duration.ofSeconds(5));
+    }
+
+    @Test
+    @DisplayName("The table Hibernate created is kept as a legacy table and replaced by a partitioned one")
+    public void testConvert() {
+        when(jdbcTemplate.queryForList(startsWith("SELECT relkind"), eq(String.class), eq("health_check")))
+                .thenReturn(List.of("r"));
+
+        manager.maintain();
+
+        InOrder inOrder = Mockito.inOrder(jdbcTemplate);
+        inOrder.verify(jdbcTemplate).execute("ALTER TABLE health_check RENAME TO health_check_legacy_" + suffix(today));
+        inOrder.verify(jdbcTemplate).execute(Mockito.contains("PARTITION BY RANGE (datetime)"));
+        inOrder.verify(jdbcTemplate).execute("CREATE TABLE health_check_default PARTITION OF health_check DEFAULT");
+        for (int day = 0; day <= 2; day++) {
+            inOrder.verify(jdbcTemplate).execute("CREATE TABLE health_check_p" + suffix(today.plusDays(day))
+                    + " PARTITION OF health_check FOR VALUES FROM ('" + today.plusDays(day) + "') TO ('"
+                    + today.plusDays(day + 1) + "')");
+        }
+    }
+
+    @Test
+    @DisplayName("Only partitions and legacy tables past the retention window are dropped")
+    public void testRetention() {
+        when(jdbcTemplate.queryForList(startsWith("SELECT relkind"), eq(String.class), eq("health_check")))
+                .thenReturn(List.of("p"));
+        when(jdbcTemplate.queryForObject(eq(EXISTS), eq(Boolean.class), anyString())).thenReturn(true);
+        when(jdbcTemplate.queryForList(startsWith("SELECT c.relname"), eq(String.class), any(), any())).thenReturn(List.of(
+                "health_check_default",
+                "health_check_p" + suffix(today.minusDays(20)),
+                "health_check_p" + suffix(today.minusDays(15)),
+                "health_check_p" + suffix(today.minusDays(14)),
+                "health_check_p" + suffix(today),
+                "health_check_legacy_" + suffix(today.minusDays(30))));
+
+        manager.maintain();
+
+        verify(jdbcTemplate, never()).execute(Mockito.contains("RENAME"));
+        verify(jdbcTemplate, never()).execute(startsWith("CREATE TABLE"));
+        verify(jdbcTemplate).execute("DROP TABLE health_check_p" + suffix(today.minusDays(20)));
+        verify(jdbcTemplate).execute("DROP TABLE health_check_p" + suffix(today.minusDays(15)));
+        verify(jdbcTemplate).execute("DROP TABLE health_check_legacy_" + suffix(today.minusDays(30)));
+        verify(jdbcTemplate, times(3)).execute(startsWith("DROP TABLE"));
+    }
+
+    @Test
+    @DisplayName("Rows caught by the default partition move into their day's partition when it is created")
+    public void testStrayRows() {
+        when(jdbcTemplate.queryForList(startsWith("SELECT relkind"), eq(String.class), eq("health_check")))
+                .thenReturn(List.of("p"));
+        when(jdbcTemplate.queryForObject(startsWith("SELECT EXISTS"), eq(Boolean.class), any(), any())).thenReturn(true);
+
+        manager.maintain();
+
+        String partition = "health_check_p" + suffix(today);
+        InOrder inOrder = Mockito.inOrder(jdbcTemplate);
+        inOrder.verify(jdbcTemplate).execute("CREATE TABLE " + partition + " (LIKE health_check INCLUDING DEFAULTS)");
+        inOrder.verify(jdbcTemplate).update(startsWith("INSERT INTO " + partition), any(Timestamp.class), any(Timestamp.class));
+        inOrder.verify(jdbcTemplate).update(startsWith("DELETE FROM health_check_default WHERE datetime >="),
+                any(Timestamp.class), any(Timestamp.class));
+        inOrder.verify(jdbcTemplate).execute(startsWith("ALTER TABLE health_check ATTACH PARTITION " + partition));
+    }
+
+    @Test
+    @DisplayName("Nothing is changed while another instance holds the lock")
+    public void testLocked() {
+        when(jdbcTemplate.queryForObject(startsWith("SELECT pg_try_advisory_xact_lock"), eq(Boolean.class), eq("health_check")))
+                .thenReturn(false);
+
+        manager.maintain();
+
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    private static String suffix(LocalDate day) {
+        return DateTimeFormatter.BASIC_ISO_DATE.format(day);
+    }
+}
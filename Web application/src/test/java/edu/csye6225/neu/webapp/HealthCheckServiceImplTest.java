@@ -0,0 +1,112 @@
+package edu.csye6225.neu.webapp;
+
+import edu.csye6225.neu.webapp.entity.HealthCheck;
+import edu.csye6225.neu.webapp.repository.HealthCheckRepository;
+import edu.csye6225.neu.webapp.service.HealthCheckServiceImpl;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HealthCheckServiceImplTest {
+
+    private HealthCheckRepository healthCheckRepository;
+    private DataSource dataSource;
+    private Connection connection;
+    private MetricsService metricsService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        healthCheckRepository = Mockito.mock(HealthCheckRepository.class);
+        dataSource = Mockito.mock(DataSource.class);
+        connection = Mockito.mock(Connection.class);
+        metricsService = Mockito.mock(MetricsService.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.isValid(anyInt())).thenReturn(true);
+        when(metricsService.timeDatabaseQuery(anyString(), any(Supplier.class)))
+                .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+    }
+
+    @Test
+    @DisplayName("Probes validate a connection and reuse the result for the TTL")
+    public void testCachedValidation() throws Exception {
+        HealthCheckServiceImpl service = service(Duration.ofMinutes(1), 0);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(service.performHealthCheck());
+        }
+        verify(dataSource, times(1)).getConnection();
+        verify(healthCheckRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Concurrent callers share the probe that is already running")
+    public void testCoalescing() throws Exception {
+        CountDownLatch probing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(connection.isValid(anyInt())).thenAnswer(invocation -> {
+            probing.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        });
+        HealthCheckServiceImpl service = service(Duration.ZERO, 0);
+
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            results.add(callers.submit(service::performHealthCheck));
+            assertTrue(probing.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 7; i++) {
+                results.add(callers.submit(service::performHealthCheck));
+            }
+            // Let the followers reach the running probe before it finishes
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        verify(dataSource, times(1)).getConnection();
+    }
+
+    @Test
+    @DisplayName("The deep check inserts a row, and failures report unhealthy")
+    public void testDeepCheckAndFailure() throws Exception {
+        assertTrue(service(Duration.ZERO, 1).performHealthCheck());
+        verify(healthCheckRepository).save(any(HealthCheck.class));
+
+        when(dataSource.getConnection()).thenThrow(new SQLException("connection refused"));
+        assertFalse(service(Duration.ZERO, 0).performHealthCheck());
+    }
+
+    private HealthCheckServiceImpl service(Duration ttl, double deepCheckRate) {
+        return new HealthCheckServiceImpl(healthCheckRepository, dataSource, metricsService,
+                ttl, Duration.ofSeconds(2), deepCheckRate);
+    }
+}
@@ -0,0 +1,93 @@
+package edu.csye6225.neu.webapp;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import edu.csye6225.neu.webapp.service.HikariPoolSizer;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import edu.csye6225.neu.webapp.service.PoolSaturation;
+import edu.csye6225.neu.webapp.service.PoolSaturationMonitor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.time.Duration;
+import java.util.stream.Stream;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HikariPoolSizerTest {
+
+    private HikariDataSource dataSource;
+    private HikariConfigMXBean config;
+    private PoolSaturationMonitor monitor;
+    private HikariPoolSizer sizer;
+
+    // Cumulative acquisition counters fed to the sizer, advanced by each interval
+    private long acquires;
+    private double waitMillis;
+    private long timeouts;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        dataSource = Mockito.mock(HikariDataSource.class);
+        config = Mockito.mock(HikariConfigMXBean.class);
+        monitor = Mockito.mock(PoolSaturationMonitor.class);
+        when(dataSource.getHikariConfigMXBean()).thenReturn(config);
+        when(config.getMaximumPoolSize()).thenReturn(2);
+        when(config.getMinimumIdle()).thenReturn(1);
+
+        ObjectProvider<HikariDataSource> dataSources = Mockito.mock(ObjectProvider.class);
+        when(dataSources.orderedStream()).thenAnswer(invocation -> Stream.of(dataSource));
+        sizer = new HikariPoolSizer(dataSources, monitor, Mockito.mock(MetricsService.class),
+                true, 2, 4, Duration.ofMillis(20), 3);
+    }
+
+    @Test
+    @DisplayName("The pool grows by the number of waiting threads while acquisitions wait, up to the bound")
+    public void testGrow() {
+        interval(0, 0, 0, 0);
+        interval(10, 500, 0, 1);
+        verify(config).setMaximumPoolSize(3);
+
+        when(config.getMaximumPoolSize()).thenReturn(3);
+        interval(10, 10, 1, 5);
+        verify(config).setMaximumPoolSize(4);
+
+        when(config.getMaximumPoolSize()).thenReturn(4);
+        interval(10, 500, 0, 3);
+        verify(config, Mockito.times(1)).setMaximumPoolSize(4);
+    }
+
+    @Test
+    @DisplayName("The pool only shrinks after several calm intervals, and not below the bound")
+    public void testShrink() {
+        when(config.getMaximumPoolSize()).thenReturn(4);
+        interval(0, 0, 0, 0);
+        interval(100, 1, 0, 0);
+        interval(100, 1, 0, 0);
+        verify(config, never()).setMaximumPoolSize(anyInt());
+        interval(100, 1, 0, 0);
+        verify(config).setMaximumPoolSize(3);
+
+        when(config.getMaximumPoolSize()).thenReturn(2);
+        for (int i = 0; i < 6; i++) {
+            interval(100, 1, 0, 0);
+        }
+        verify(config, never()).setMaximumPoolSize(1);
+    }
+
+    private void interval(long newAcquires, double newWaitMillis, long newTimeouts, int pending) {
+        acquires += newAcquires;
+        waitMillis += newWaitMillis;
+        timeouts += newTimeouts;
+        when(monitor.hikari(dataSource)).thenReturn(
+                new PoolSaturation("hikari-primary", 0, 1, pending, 2, acquires, waitMillis, timeouts));
+        sizer.resize();
+    }
+}
@@ -0,0 +1,156 @@
+package edu.csye6225.neu.webapp;
+
+import edu.csye6225.neu.webapp.service.ImageDerivativeService;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import edu.csye6225.neu.webapp.service.S3Service;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.MediaType;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+public class ImageDerivativeServiceTest {
+
+    private static final String KEY = "images/0b6f2c1e-3d4a-4f5b-8c6d-7e8f9a0b1c2d.png";
+
+    private S3Service s3Service;
+    private MetricsService metricsService;
+    private ImageDerivativeService service;
+    private final Map<String, byte[]> uploaded = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    public void setup() {
+        s3Service = Mockito.mock(S3Service.class);
+        metricsService = Mockito.mock(MetricsService.class);
+        when(s3Service.uploadBytes(anyString(), anyString(), any())).thenAnswer(invocation -> {
+            uploaded.put(invocation.getArgument(0), invocation.getArgument(2));
+            return "s3://bucket/" + invocation.getArgument(0);
+        });
+        service = service(1, 1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("Variants are generated for every width below the original, keeping the aspect ratio")
+    public void testGenerate() throws IOException {
+        byte[] original = png(noise(800, 400));
+        when(s3Service.getObject(eq(KEY), any(), any())).thenAnswer(invocation -> response(original, "image/png"));
+
+        service.generate(KEY);
+
+        String small = ImageDerivativeService.derivedKey(KEY, 100, MediaType.IMAGE_JPEG);
+        String medium = ImageDerivativeService.derivedKey(KEY, 400, MediaType.IMAGE_JPEG);
+        assertEquals("images/derived/0b6f2c1e-3d4a-4f5b-8c6d-7e8f9a0b1c2d/100.jpg", small);
+        assertEquals(2, uploaded.size());
+
+        BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(uploaded.get(small)));
+        assertEquals(100, thumbnail.getWidth());
+        assertEquals(50, thumbnail.getHeight());
+        assertEquals(400, ImageIO.read(new ByteArrayInputStream(uploaded.get(medium))).getWidth());
+    }
+
+    @Test
+    @DisplayName("Images above the pixel limit are left alone")
+    public void testPixelLimit() throws IOException {
+        byte[] original = png(new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_RGB));
+        when(s3Service.getObject(eq(KEY), any(), any())).thenAnswer(invocation -> response(original, "image/png"));
+
+        service.generate(KEY);
+
+        assertTrue(uploaded.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Submissions beyond the queue capacity are rejected without blocking")
+    public void testBackpressure() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(s3Service.getObject(anyString(), any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        });
+
+        assertTrue(service.submit(KEY, "image/png"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(service.submit(KEY, "image/png"));
+        assertFalse(service.submit(KEY, "image/png"));
+        Mockito.verify(metricsService).incrementApiCounter("image_derivatives.rejected");
+        release.countDown();
+    }
+
+    @Test
+    @DisplayName("The smallest variant at least as wide as requested is served in an accepted format")
+    public void testOpenVariant() {
+        ResponseInputStream<GetObjectResponse> variant = response(new byte[1], "image/jpeg");
+        ResponseInputStream<GetObjectResponse> original = response(new byte[2], "image/png");
+        when(s3Service.getObject(eq(ImageDerivativeService.derivedKey(KEY, 400, MediaType.IMAGE_JPEG)), any(), any()))
+                .thenReturn(variant);
+        when(s3Service.getObject(eq(KEY), any(), any())).thenReturn(original);
+
+        assertSame(variant, service.openVariant(KEY, 300, MediaType.parseMediaTypes("image/*")));
+        // Wider than every variant, or a format the client does not take
+        assertSame(original, service.openVariant(KEY, 1000, List.of()));
+        assertSame(original, service.openVariant(KEY, 300, MediaType.parseMediaTypes("image/png")));
+        assertSame(original, service.openVariant(KEY, null, List.of()));
+    }
+
+    private ImageDerivativeService service(int workers, int queueCapacity) {
+        return new ImageDerivativeService(s3Service, metricsService, List.of(400, 100), List.of("image/jpeg"),
+                0.8f, 1_000_000, workers, queueCapacity);
+    }
+
+    // Random pixels, so the PNG original is larger than its JPEG variants
+    private static BufferedImage noise(int width, int height) {
+        Random random = new Random(42);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, 0xff000000 | random.nextInt(0x1000000));
+            }
+        }
+        return image;
+    }
+
+    private static byte[] png(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private static ResponseInputStream<GetObjectResponse> response(byte[] bytes, String contentType) {
+        return new ResponseInputStream<>(GetObjectResponse.builder()
+                .contentType(contentType)
+                .contentLength((long) bytes.length)
+                .build(), AbortableInputStream.create(new ByteArrayInputStream(bytes)));
+    }
+}
@@ -0,0 +1,239 @@
+package edu.csye6225.neu.webapp;
+
+import edu.csye6225.neu.webapp.service.MetadataBackfillService;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import edu.csye6225.neu.webapp.service.S3Service;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MetadataBackfillServiceTest {
+
+    private static final Instant OLD = Instant.now().minus(Duration.ofDays(1));
+    private static final byte[] PLAIN_PREFIX = {'%', 'P', 'D', 'F'};
+    private static final byte[] ZSTD_PREFIX = {(byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd};
+    private static final String DIGEST = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    private S3Service s3Service;
+    private JdbcTemplate jdbcTemplate;
+    private final Map<String, Object> checkpoint = new HashMap<>();
+    private final List<String> copied = new ArrayList<>();
+    private final List<String> checkpointedKeys = new ArrayList<>();
+    private final Map<String, HeadObjectResponse> heads = new HashMap<>();
+    private final Map<String, byte[]> prefixes = new HashMap<>();
+    private final TreeSet<String> deferred = new TreeSet<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        s3Service = Mockito.mock(S3Service.class);
+        jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        checkpoint.put("last_key", null);
+        checkpoint.put("completed_at", null);
+
+        when(s3Service.getObjectUrl(anyString())).thenAnswer(invocation -> "https://bucket/" + invocation.getArgument(0));
+        when(s3Service.headObjectAsync(anyString())).thenAnswer(invocation -> {
+            String key = invocation.getArgument(0);
+            return CompletableFuture.completedFuture(key.contains("gone") ? null : heads.getOrDefault(key,
+                    HeadObjectResponse.builder().contentType("text/plain").lastModified(Instant.now()).build()));
+        });
+        when(s3Service.readPrefixAsync(anyString(), anyInt())).thenAnswer(invocation ->
+                CompletableFuture.completedFuture(prefixes.getOrDefault((String) invocation.getArgument(0), PLAIN_PREFIX)));
+
+        when(jdbcTemplate.queryForMap(anyString(), eq("default"))).thenReturn(checkpoint);
+        when(jdbcTemplate.queryForObject(startsWith("SELECT last_key"), eq(String.class), eq("default")))
+                .thenAnswer(invocation -> checkpointedKeys.isEmpty() ? null : checkpointedKeys.get(checkpointedKeys.size() - 1));
+        when(jdbcTemplate.queryForObject(startsWith("WITH inserted"), eq(Long.class))).thenReturn(2L);
+        when(jdbcTemplate.update(startsWith("UPDATE backfill_checkpoint SET last_key"), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    checkpointedKeys.add(invocation.getArgument(1));
+                    return 1;
+                });
+
+        // The deferred table, kept in key order as the follow-up pass pages through it
+        when(jdbcTemplate.batchUpdate(startsWith("INSERT INTO backfill_deferred"), anyList())).thenAnswer(invocation -> {
+            List<Object[]> args = invocation.getArgument(1);
+            args.forEach(row -> deferred.add((String) row[1]));
+            return new int[args.size()];
+        });
+        when(jdbcTemplate.queryForList(startsWith("SELECT object_key FROM backfill_deferred"), eq(String.class),
+                eq("default"), anyString(), anyInt())).thenAnswer(invocation -> deferred.tailSet(invocation.getArgument(3), false)
+                .stream().limit((int) invocation.getArgument(4)).toList());
+        when(jdbcTemplate.update(startsWith("DELETE FROM backfill_deferred"), eq("default"), any(String[].class)))
+                .thenAnswer(invocation -> {
+                    List.of((String[]) invocation.getArgument(2)).forEach(deferred::remove);
+                    return 1;
+                });
+        when(jdbcTemplate.queryForObject(startsWith("SELECT count(*) FROM backfill_deferred"), eq(Long.class), eq("default")))
+                .thenAnswer(invocation -> (long) deferred.size());
+
+        CopyManager copyManager = Mockito.mock(CopyManager.class);
+        when(copyManager.copyIn(anyString(), any(Reader.class))).thenAnswer(invocation -> {
+            Reader reader = invocation.getArgument(1);
+            StringBuilder csv = new StringBuilder();
+            char[] buffer = new char[1024];
+            for (int read; (read = reader.read(buffer)) != -1; ) {
+                csv.append(buffer, 0, read);
+            }
+            copied.add(csv.toString());
+            return 1L;
+        });
+        PGConnection pgConnection = Mockito.mock(PGConnection.class);
+        when(pgConnection.getCopyAPI()).thenReturn(copyManager);
+        Connection connection = Mockito.mock(Connection.class);
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenAnswer(invocation ->
+                ((ConnectionCallback<?>) invocation.getArgument(0)).doInConnection(connection));
+    }
+
+    @Test
+    @DisplayName("Objects are staged with COPY batch by batch and each batch is checkpointed")
+    public void testBackfillInBatches() {
+        listObjects(null, object("a.pdf", OLD), object("content/" + DIGEST, OLD), object("gone.txt", OLD),
+                object("images/derived/a/320.webp", OLD), object("new.txt", Instant.now()));
+
+        MetadataBackfillService.BackfillResult result = backfill().backfill();
+
+        assertEquals(5, result.getObjectsScanned());
+        assertEquals(2, result.getRowsImported());
+        // Batches of two; only the first has anything to load, the rest just move the checkpoint
+        assertEquals(List.of("content/" + DIGEST, "images/derived/a/320.webp", "new.txt"), checkpointedKeys);
+        // The recent object is deferred rather than passed over, so the job is not complete yet
+        assertEquals(Set.of("new.txt"), deferred);
+        assertEquals(1, copied.size());
+        String[] rows = copied.get(0).split("\r\n");
+        // Each row starts with the time-ordered ID the row is inserted with
+        assertEquals(7, UUID.fromString(rows[0].substring(0, 36)).version());
+        assertTrue(rows[0].substring(37).startsWith("a.pdf,a.pdf,https://bucket/a.pdf,text/plain,10,,,,"));
+        assertTrue(rows[1].substring(37).startsWith("content/" + DIGEST + "," + DIGEST + ",https://bucket/content/" + DIGEST
+                + ",text/plain,10," + DIGEST + ",,,"));
+        verify(jdbcTemplate, never()).update(startsWith("UPDATE backfill_checkpoint SET completed_at"), eq("default"));
+    }
+
+    @Test
+    @DisplayName("Deferred objects are imported once old enough, and only then is the job complete")
+    public void testDeferredObjectsImportedLater() {
+        listObjects(null, object("new.txt", Instant.now()), object("newer.txt", Instant.now()));
+        backfill().backfill();
+        assertEquals(Set.of("new.txt", "newer.txt"), deferred);
+
+        // On the next run one of them has aged past min-age, the other has not
+        checkpoint.put("last_key", "newer.txt");
+        listObjects("newer.txt");
+        heads.put("new.txt", HeadObjectResponse.builder().contentType("text/plain").contentLength(10L)
+                .lastModified(OLD).build());
+        heads.put("newer.txt", HeadObjectResponse.builder().contentType("text/plain").contentLength(10L)
+                .lastModified(Instant.now()).build());
+        backfill().backfill();
+
+        assertEquals(Set.of("newer.txt"), deferred);
+        assertEquals(1, copied.size());
+        assertTrue(copied.get(0).substring(37).startsWith("new.txt,new.txt,https://bucket/new.txt,text/plain,10,"));
+        verify(jdbcTemplate, never()).update(startsWith("UPDATE backfill_checkpoint SET completed_at"), eq("default"));
+
+        heads.put("newer.txt", HeadObjectResponse.builder().contentType("text/plain").contentLength(10L)
+                .lastModified(OLD).build());
+        backfill().backfill();
+
+        assertTrue(deferred.isEmpty());
+        verify(jdbcTemplate).update(startsWith("UPDATE backfill_checkpoint SET completed_at"), eq("default"));
+    }
+
+    @Test
+    @DisplayName("Compressed objects are imported with their recorded size, unlabelled ones are skipped")
+    public void testCompressedObjects() {
+        heads.put("labelled.txt", HeadObjectResponse.builder().contentType("text/plain").contentEncoding("zstd")
+                .metadata(Map.of(S3Service.ORIGINAL_SIZE_METADATA, "100")).build());
+        heads.put("unsized.txt", HeadObjectResponse.builder().contentType("text/plain").contentEncoding("zstd").build());
+        heads.put("archive.zst", HeadObjectResponse.builder().contentType("application/zstd").build());
+        prefixes.put("archive.zst", ZSTD_PREFIX);
+        prefixes.put("unlabelled.txt", ZSTD_PREFIX);
+        listObjects(null, object("archive.zst", OLD), object("labelled.txt", OLD),
+                object("unlabelled.txt", OLD), object("unsized.txt", OLD));
+
+        MetadataBackfillService.BackfillResult result = backfill().backfill();
+
+        assertEquals(2, result.getObjectsSkipped());
+        List<String> rows = copied.stream().flatMap(csv -> List.of(csv.split("\r\n")).stream())
+                .map(row -> row.substring(37)).toList();
+        assertEquals(2, rows.size());
+        // A .zst file uploaded as such is stored as it is
+        assertTrue(rows.get(0).startsWith("archive.zst,archive.zst,https://bucket/archive.zst,application/zstd,10,,,,"));
+        assertTrue(rows.get(1).startsWith("labelled.txt,labelled.txt,https://bucket/labelled.txt,text/plain,100,,zstd,,"));
+    }
+
+    @Test
+    @DisplayName("A run resumes after the checkpointed key, and a completed job does nothing")
+    public void testResume() {
+        checkpoint.put("last_key", "b.txt");
+        listObjects("b.txt", object("c.txt", OLD));
+
+        assertEquals(1, backfill().backfill().getObjectsScanned());
+        assertEquals(List.of("c.txt"), checkpointedKeys);
+
+        checkpoint.put("completed_at", Instant.now());
+        assertNull(backfill().backfill());
+    }
+
+    @Test
+    @DisplayName("A batch another instance already loaded is skipped")
+    public void testSkipLoadedBatch() {
+        checkpointedKeys.add("z.txt");
+        listObjects(null, object("a.txt", OLD));
+
+        assertEquals(0, backfill().backfill().getRowsImported());
+        assertTrue(copied.isEmpty());
+        verify(jdbcTemplate, never()).queryForObject(startsWith("WITH inserted"), eq(Long.class));
+    }
+
+    private MetadataBackfillService backfill() {
+        TransactionTemplate transactionTemplate = Mockito.mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+        return new MetadataBackfillService(s3Service, jdbcTemplate, transactionTemplate,
+                Mockito.mock(MetricsService.class), "default", 2, 4, Duration.ofHours(1), List.of("images/"));
+    }
+
+    private void listObjects(String startAfter, S3Object... objects) {
+        when(s3Service.listObjects(null, startAfter)).thenReturn(() -> List.of(objects).iterator());
+    }
+
+    private static S3Object object(String key, Instant lastModified) {
+        return S3Object.builder().key(key).size(10L).lastModified(lastModified).build();
+    }
+}
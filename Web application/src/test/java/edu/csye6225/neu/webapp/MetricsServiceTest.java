@@ -0,0 +1,60 @@
+package edu.csye6225.neu.webapp;
+
+import com.timgroup.statsd.StatsDClient;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class MetricsServiceTest {
+
+    private StatsDClient statsDClient;
+    private MetricsService metricsService;
+
+    @BeforeEach
+    public void setup() {
+        statsDClient = Mockito.mock(StatsDClient.class);
+        metricsService = new MetricsService(statsDClient);
+    }
+
+    @Test
+    @DisplayName("An asynchronous call is timed when its future completes")
+    public void testAsyncTimedOnCompletion() {
+        CompletableFuture<String> work = new CompletableFuture<>();
+
+        CompletableFuture<String> timed = metricsService.timeApiExecutionAsync("file_upload", () -> work);
+
+        verify(statsDClient, never()).recordExecutionTime(eq("api.file_upload.time"), anyLong());
+        work.complete("done");
+        assertEquals("done", timed.join());
+        verify(statsDClient).recordExecutionTime(eq("api.file_upload.time"), anyLong());
+    }
+
+    @Test
+    @DisplayName("A call that throws before returning a future is timed and fails through the future")
+    public void testAsyncSynchronousFailure() {
+        IllegalStateException failure = new IllegalStateException("executor shut down");
+
+        CompletableFuture<String> timed = metricsService.timeApiExecutionAsync("file_upload", () -> {
+            throw failure;
+        });
+
+        assertTrue(timed.isCompletedExceptionally());
+        CompletionException thrown = assertThrows(CompletionException.class, timed::join);
+        assertInstanceOf(IllegalStateException.class, thrown.getCause());
+        verify(statsDClient).recordExecutionTime(eq("api.file_upload.time"), anyLong());
+    }
+}
@@ -0,0 +1,124 @@
+package edu.csye6225.neu.webapp;
+
+import edu.csye6225.neu.webapp.entity.FileMetadata;
+import edu.csye6225.neu.webapp.entity.UploadStatus;
+import edu.csye6225.neu.webapp.repository.FileMetadataRepository;
+import edu.csye6225.neu.webapp.service.ContentStore;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import edu.csye6225.neu.webapp.service.PendingUploadSweeper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.domain.Pageable;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PendingUploadSweeperTest {
+
+    private ContentStore contentStore;
+    private PendingUploadSweeper sweeper;
+    private final List<FileMetadata> rows = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        // Answers the lease query from an in-memory table, as the database would
+        FileMetadataRepository repository = Mockito.mock(FileMetadataRepository.class);
+        when(repository.findByStatusAndLastModifiedBefore(eq(UploadStatus.PENDING), any(LocalDateTime.class),
+                any(Pageable.class))).thenAnswer(invocation -> {
+            LocalDateTime cutoff = invocation.getArgument(1);
+            return rows.stream()
+                    .filter(row -> row.getStatus() == UploadStatus.PENDING)
+                    .filter(row -> row.getLastModified().isBefore(cutoff))
+                    .toList();
+        });
+
+        MetricsService metricsService = Mockito.mock(MetricsService.class);
+        when(metricsService.timeDatabaseQuery(anyString(), any(Supplier.class)))
+                .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+
+        contentStore = Mockito.mock(ContentStore.class);
+        sweeper = new PendingUploadSweeper(repository, contentStore, metricsService,
+                Duration.ofHours(1), Duration.ofMinutes(15), 100);
+    }
+
+    @Test
+    @DisplayName("A pending upload whose lease ran out is removed")
+    public void testExpiredUploadSwept() {
+        FileMetadata expired = pending(Duration.ofHours(3), Duration.ofMinutes(80));
+
+        sweeper.sweepStalePendingUploads();
+
+        verify(contentStore).releasePending(expired);
+    }
+
+    @Test
+    @DisplayName("A transfer still renewing its lease is kept however long it has been running")
+    public void testRenewedUploadKept() {
+        FileMetadata inProgress = pending(Duration.ofHours(6), Duration.ofMinutes(5));
+
+        sweeper.sweepStalePendingUploads();
+
+        verify(contentStore, never()).releasePending(inProgress);
+    }
+
+    @Test
+    @DisplayName("A direct upload gets the presigned URL lifetime on top of the timeout")
+    public void testDirectUploadWithinPresignLifetimeKept() {
+        // Past the timeout alone, but not past presign TTL plus timeout
+        FileMetadata direct = pending(Duration.ofMinutes(70), Duration.ofMinutes(70));
+
+        sweeper.sweepStalePendingUploads();
+
+        verify(contentStore, never()).releasePending(direct);
+    }
+
+    @Test
+    @DisplayName("A row committed after the sweep read it is not counted as swept")
+    public void testRowCommittedDuringSweepKept() {
+        FileMetadata expired = pending(Duration.ofHours(3), Duration.ofMinutes(80));
+        // The row was read as PENDING but the conditional delete finds it committed
+        when(contentStore.releasePending(expired)).thenReturn(false);
+
+        sweeper.sweepStalePendingUploads();
+
+        verify(contentStore).releasePending(expired);
+        verify(contentStore, never()).release(any(FileMetadata.class));
+    }
+
+    @Test
+    @DisplayName("Committed uploads are never swept")
+    public void testCommittedUploadKept() {
+        FileMetadata committed = pending(Duration.ofDays(2), Duration.ofDays(2));
+        committed.setStatus(UploadStatus.COMMITTED);
+
+        sweeper.sweepStalePendingUploads();
+
+        verify(contentStore, never()).releasePending(committed);
+    }
+
+    private FileMetadata pending(Duration sinceUpload, Duration sinceRenewal) {
+        LocalDateTime now = LocalDateTime.now();
+        FileMetadata row = new FileMetadata();
+        row.setId(UUID.randomUUID());
+        row.setFileName("content/" + row.getId());
+        row.setStatus(UploadStatus.PENDING);
+        row.setUploadDate(now.minus(sinceUpload));
+        row.setLastModified(now.minus(sinceRenewal));
+        rows.add(row);
+        return row;
+    }
+}
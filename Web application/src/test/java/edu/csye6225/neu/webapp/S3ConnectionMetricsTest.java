@@ -0,0 +1,65 @@
+package edu.csye6225.neu.webapp;
+
+import edu.csye6225.neu.webapp.service.MetricsService;
+import edu.csye6225.neu.webapp.service.PoolSaturation;
+import edu.csye6225.neu.webapp.service.S3ConnectionMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import software.amazon.awssdk.core.metrics.CoreMetric;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricCollector;
+import software.amazon.awssdk.metrics.MetricPublisher;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class S3ConnectionMetricsTest {
+
+    @Test
+    @DisplayName("Pool counts and acquire waits are read from the HTTP metrics nested in each call")
+    public void testPublish() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        S3ConnectionMetrics metrics = new S3ConnectionMetrics(registry, Mockito.mock(MetricsService.class));
+        MetricPublisher publisher = metrics.publisher("async");
+
+        publisher.publish(call(true, 200, Duration.ofMillis(3), 7));
+        publisher.publish(call(true, 200, Duration.ofMillis(5), 9));
+        // Failed before any response, as an acquire timeout does
+        publisher.publish(call(false, null, null, 10));
+        // Failed with a response, which is not a pool problem
+        publisher.publish(call(false, 503, Duration.ofMillis(1), 9));
+
+        List<PoolSaturation> pools = metrics.snapshot();
+        assertEquals(1, pools.size());
+        PoolSaturation pool = pools.get(0);
+        assertEquals("s3-async", pool.pool());
+        assertEquals(9, pool.active());
+        assertEquals(100, pool.max());
+        assertEquals(3, pool.acquires());
+        assertEquals(9.0, pool.acquireWaitMillis(), 0.001);
+        assertEquals(1, pool.timeouts());
+        assertEquals(3, registry.get("s3.http.acquire").tag("client", "async").timer().count());
+        assertEquals(1.0, registry.get("s3.http.timeout").tag("client", "async").counter().count());
+    }
+
+    private static MetricCollection call(boolean successful, Integer status, Duration acquire, int leased) {
+        MetricCollector apiCall = MetricCollector.create("ApiCall");
+        apiCall.reportMetric(CoreMetric.API_CALL_SUCCESSFUL, successful);
+        MetricCollector attempt = apiCall.createChild("ApiCallAttempt");
+        if (status != null) {
+            attempt.reportMetric(HttpMetric.HTTP_STATUS_CODE, status);
+        }
+        MetricCollector http = attempt.createChild("HttpClient");
+        http.reportMetric(HttpMetric.MAX_CONCURRENCY, 100);
+        http.reportMetric(HttpMetric.LEASED_CONCURRENCY, leased);
+        if (acquire != null) {
+            http.reportMetric(HttpMetric.CONCURRENCY_ACQUIRE_DURATION, acquire);
+        }
+        return apiCall.collect();
+    }
+}
@@ -0,0 +1,157 @@
+package edu.csye6225.neu.webapp;
+
+import edu.csye6225.neu.webapp.service.MetricsService;
+import edu.csye6225.neu.webapp.service.S3MultipartUploader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class S3MultipartUploaderTest {
+
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    private S3Client s3Client;
+    private S3MultipartUploader uploader;
+
+    @BeforeEach
+    public void setup() {
+        s3Client = Mockito.mock(S3Client.class);
+        uploader = new S3MultipartUploader(s3Client, Mockito.mock(MetricsService.class), PART_SIZE, PART_SIZE, 3);
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        uploader.shutdown();
+    }
+
+    @Test
+    @DisplayName("Stream is split into ordered parts and the upload is completed")
+    public void testUploadSplitsIntoParts() throws Exception {
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            RequestBody body = invocation.getArgument(1);
+            try (InputStream in = body.contentStreamProvider().newStream()) {
+                assertEquals(request.contentLength(), in.readAllBytes().length);
+            }
+            return UploadPartResponse.builder().eTag("etag-" + request.partNumber()).build();
+        });
+
+        uploader.upload("test-bucket", "large.bin", "application/pdf",
+                new ByteArrayInputStream(new byte[3 * PART_SIZE + 100]));
+
+        verify(s3Client, times(4)).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete =
+                ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3Client).completeMultipartUpload(complete.capture());
+        List<CompletedPart> parts = complete.getValue().multipartUpload().parts();
+        assertEquals(4, parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            assertEquals(i + 1, parts.get(i).partNumber());
+            assertEquals("etag-" + (i + 1), parts.get(i).eTag());
+        }
+        verify(s3Client, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    }
+
+    @Test
+    @DisplayName("A failed part aborts the multipart upload")
+    public void testFailedPartAbortsUpload() {
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenThrow(S3Exception.builder().message("part failed").build());
+
+        assertThrows(S3Exception.class, () -> uploader.upload("test-bucket", "large.bin", "application/pdf",
+                new ByteArrayInputStream(new byte[2 * PART_SIZE + 1])));
+
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    @DisplayName("A failed part stops the stream being read and aborts the upload")
+    public void testFailedPartStopsReading() {
+        S3MultipartUploader serialUploader =
+                new S3MultipartUploader(s3Client, Mockito.mock(MetricsService.class), PART_SIZE, PART_SIZE, 1);
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenThrow(S3Exception.builder().message("part failed").build());
+        CountingStream in = new CountingStream(20L * PART_SIZE);
+
+        try {
+            assertThrows(S3Exception.class, () -> serialUploader.upload("test-bucket", "large.bin", "application/pdf", in));
+        } finally {
+            serialUploader.shutdown();
+        }
+
+        // Only the part in flight when the failure came was read
+        assertTrue(in.read <= 2L * PART_SIZE, "read " + in.read + " bytes");
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    @DisplayName("A stream shorter than one part is sent with a single PutObject")
+    public void testShortStreamUsesSinglePut() throws Exception {
+        uploader.upload("test-bucket", "small.bin", "application/pdf", new ByteArrayInputStream(new byte[1024]));
+
+        verify(s3Client).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        verify(s3Client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    }
+
+    // Zero-filled stream of the given length that counts the bytes handed out
+    private static class CountingStream extends InputStream {
+        private final long length;
+        private long read;
+
+        CountingStream(long length) {
+            this.length = length;
+        }
+
+        @Override
+        public int read() {
+            if (read >= length) {
+                return -1;
+            }
+            read++;
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (read >= length) {
+                return -1;
+            }
+            int n = (int) Math.min(len, length - read);
+            Arrays.fill(b, off, off + n, (byte) 0);
+            read += n;
+            return n;
+        }
+    }
+}
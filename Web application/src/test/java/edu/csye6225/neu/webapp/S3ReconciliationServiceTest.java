@@ -0,0 +1,189 @@
+package edu.csye6225.neu.webapp;
+
+import edu.csye6225.neu.webapp.repository.ContentObjectRepository;
+import edu.csye6225.neu.webapp.repository.FileMetadataRepository;
+import edu.csye6225.neu.webapp.service.CacheInvalidationBus;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import edu.csye6225.neu.webapp.service.S3ReconciliationService;
+import edu.csye6225.neu.webapp.service.S3Service;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+public class S3ReconciliationServiceTest {
+
+    private static final Instant OLD = Instant.now().minus(Duration.ofDays(1));
+
+    private S3Service s3Service;
+    private FileMetadataRepository repository;
+    private ContentObjectRepository contentObjectRepository;
+    private final List<String> deletedObjects = new ArrayList<>();
+    private final List<String> deletedRowKeys = new ArrayList<>();
+    // Digest of each metadata row by key, and the content_object ref_count by digest
+    private final Map<String, List<String>> rowDigests = new HashMap<>();
+    private final Map<String, Long> refCounts = new HashMap<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        s3Service = Mockito.mock(S3Service.class);
+        repository = Mockito.mock(FileMetadataRepository.class);
+        contentObjectRepository = Mockito.mock(ContentObjectRepository.class);
+
+        when(s3Service.deleteObjects(anyList())).thenAnswer(invocation -> {
+            deletedObjects.addAll(invocation.getArgument(0));
+            return 0;
+        });
+        when(repository.deleteByKeys(anyList(), eq("COMMITTED"), any(LocalDateTime.class)))
+                .thenAnswer(invocation -> {
+                    List<String> keys = invocation.getArgument(0);
+                    deletedRowKeys.addAll(keys);
+                    List<String> digests = new ArrayList<>();
+                    for (String key : keys) {
+                        digests.addAll(rowDigests.getOrDefault(key, Collections.singletonList(null)));
+                    }
+                    return digests;
+                });
+        when(contentObjectRepository.releaseReferences(anyCollection(), anyLong())).thenAnswer(invocation -> {
+            Collection<String> digests = invocation.getArgument(0);
+            long count = invocation.getArgument(1);
+            digests.forEach(digest -> refCounts.computeIfPresent(digest, (d, refs) -> refs - count));
+            return digests.size();
+        });
+        when(contentObjectRepository.deleteUnreferenced(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> digests = invocation.getArgument(0);
+            int removed = 0;
+            for (String digest : digests) {
+                if (refCounts.containsKey(digest) && refCounts.get(digest) <= 0) {
+                    refCounts.remove(digest);
+                    removed++;
+                }
+            }
+            return removed;
+        });
+    }
+
+    @Test
+    @DisplayName("Merge-join removes orphan objects and dangling rows across pages")
+    public void testMergeJoinAcrossPages() {
+        listObjects(
+                object("a.pdf", OLD),
+                object("b.pdf", OLD),           // orphan
+                object("c.pdf", OLD),
+                object("e.pdf", Instant.now()), // too recent
+                object("images/x.png", OLD)     // excluded prefix
+        );
+        // Page size 2 forces several keyset pages
+        rowKeys("a.pdf", "c.pdf", "d.pdf", "f.pdf");
+
+        S3ReconciliationService.ReconciliationResult result = reconciler(false).reconcile();
+
+        assertEquals(List.of("b.pdf"), deletedObjects);
+        assertEquals(List.of("d.pdf", "f.pdf"), deletedRowKeys);
+        assertEquals(5, result.getObjectsScanned());
+        assertEquals(4, result.getRowKeysScanned());
+        assertEquals(1, result.getOrphanObjectsDeleted());
+        assertEquals(2, result.getDanglingRowsDeleted());
+    }
+
+    @Test
+    @DisplayName("Deleting dangling rows drops their content references")
+    public void testDanglingRowsReleaseContentReferences() {
+        listObjects(object("content/live", OLD));
+        rowKeys("content/gone", "content/live", "content/shared");
+        // Two rows share the missing object; the other content keeps a reference from a pending row
+        rowDigests.put("content/gone", List.of("gone", "gone"));
+        rowDigests.put("content/shared", List.of("shared"));
+        refCounts.put("gone", 2L);
+        refCounts.put("shared", 2L);
+        refCounts.put("live", 1L);
+
+        S3ReconciliationService.ReconciliationResult result = reconciler(false).reconcile();
+
+        assertEquals(List.of("content/gone", "content/shared"), deletedRowKeys);
+        assertEquals(3, result.getDanglingRowsDeleted());
+        assertFalse(refCounts.containsKey("gone"));
+        assertEquals(1L, refCounts.get("shared"));
+        assertEquals(1L, refCounts.get("live"));
+    }
+
+    @Test
+    @DisplayName("Dry run deletes nothing")
+    public void testDryRun() {
+        listObjects(object("orphan.pdf", OLD));
+        rowKeys("dangling.pdf");
+
+        reconciler(true).reconcile();
+
+        assertTrue(deletedObjects.isEmpty());
+        assertTrue(deletedRowKeys.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Keys compare in UTF-8 byte order")
+    public void testCompareKeysUsesCodePointOrder() {
+        // U+FF5E sorts before U+1F600 in UTF-8 but after its surrogate pair in UTF-16
+        assertTrue(S3ReconciliationService.compareKeys("～", "😀") < 0);
+        assertTrue(S3ReconciliationService.compareKeys("a", "ab") < 0);
+        assertEquals(0, S3ReconciliationService.compareKeys("same", "same"));
+    }
+
+    private S3ReconciliationService reconciler(boolean dryRun) {
+        MetricsService metricsService = Mockito.mock(MetricsService.class);
+        when(metricsService.timeDatabaseQuery(anyString(), any(Supplier.class)))
+                .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+        TransactionTemplate transactionTemplate = Mockito.mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+        return new S3ReconciliationService(s3Service, repository, contentObjectRepository, metricsService,
+                Mockito.mock(CacheInvalidationBus.class), transactionTemplate, Mockito.mock(JdbcTemplate.class),
+                Duration.ofHours(1), 2, 1000, List.of("images/"), dryRun);
+    }
+
+    private void listObjects(S3Object... objects) {
+        when(s3Service.listObjects(any())).thenReturn(() -> List.of(objects).iterator());
+    }
+
+    private void rowKeys(String... keys) {
+        when(repository.findKeysAfter(anyString(), anyInt())).thenAnswer(invocation -> {
+            String after = invocation.getArgument(0);
+            int limit = invocation.getArgument(1);
+            return List.of(keys).stream()
+                    .filter(key -> key.compareTo(after) > 0)
+                    .limit(limit)
+                    .toList();
+        });
+    }
+
+    private static S3Object object(String key, Instant lastModified) {
+        return S3Object.builder().key(key).lastModified(lastModified).build();
+    }
+}
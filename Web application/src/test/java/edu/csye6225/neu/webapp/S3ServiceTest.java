@@ -0,0 +1,163 @@
+package edu.csye6225.neu.webapp;
+
+import edu.csye6225.neu.webapp.service.ContentEncoding;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import edu.csye6225.neu.webapp.service.S3MultipartUploader;
+import edu.csye6225.neu.webapp.service.S3Service;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+public class S3ServiceTest {
+
+    private static final int DRAIN_BUFFER_SIZE = 8 * 1024;
+
+    private S3Client s3Client;
+    private S3Service s3Service;
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final byte[] drainBuffer = new byte[DRAIN_BUFFER_SIZE];
+
+    @BeforeEach
+    public void setup() {
+        s3Client = Mockito.mock(S3Client.class);
+        MetricsService metricsService = Mockito.mock(MetricsService.class);
+        S3MultipartUploader multipartUploader = new S3MultipartUploader(
+                s3Client, metricsService, 64L * 1024 * 1024, 8 * 1024 * 1024, 2);
+        // Presigning only signs locally, so a real presigner works without network access
+        S3Presigner presigner = S3Presigner.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create("AKIAEXAMPLE", "secret")))
+                .build();
+        s3Service = new S3Service(s3Client, Mockito.mock(S3AsyncClient.class), "test-bucket",
+                metricsService, multipartUploader, presigner);
+
+        // Drain the request body the way the HTTP client would, through a fixed buffer
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            RequestBody body = invocation.getArgument(1);
+            try (InputStream in = body.contentStreamProvider().newStream()) {
+                int read;
+                while ((read = in.read(drainBuffer)) != -1) {
+                    bytesReceived.addAndGet(read);
+                }
+            }
+            return PutObjectResponse.builder().build();
+        });
+    }
+
+    @Test
+    @DisplayName("Upload streams the file without copying it onto the heap")
+    public void testUploadAllocationDoesNotScaleWithFileSize() throws Exception {
+        MockMultipartFile small = file(64 * 1024);
+        MockMultipartFile large = file(16 * 1024 * 1024);
+
+        // Warm up so class loading and mock setup are not counted
+        s3Service.uploadFile(small);
+        s3Service.uploadFile(large);
+
+        long smallAllocated = allocatedDuring(small);
+        long largeAllocated = allocatedDuring(large);
+
+        assertTrue(largeAllocated < 1024 * 1024,
+                "16 MB upload allocated " + largeAllocated + " bytes");
+        assertTrue(largeAllocated < smallAllocated + 256 * 1024,
+                "Allocation grew with file size: small=" + smallAllocated + ", large=" + largeAllocated);
+    }
+
+    @Test
+    @DisplayName("Upload sends the full content with its declared length")
+    public void testUploadSendsContentLength() throws Exception {
+        MockMultipartFile upload = file(3 * DRAIN_BUFFER_SIZE + 17);
+        bytesReceived.set(0);
+
+        s3Service.uploadFile(upload);
+
+        assertEquals(upload.getSize(), bytesReceived.get());
+        Mockito.verify(s3Client).putObject(
+                Mockito.<PutObjectRequest>argThat(request -> request.contentLength() == upload.getSize()),
+                any(RequestBody.class));
+    }
+
+    @Test
+    @DisplayName("Small compressed files are sent with one PutObject carrying their encoding and original size")
+    public void testSmallCompressedUploadIsSinglePut() throws Exception {
+        MockMultipartFile upload = file(64 * 1024);
+
+        s3Service.uploadFile(upload, "content/abc", null, ContentEncoding.ZSTD);
+
+        Mockito.verify(s3Client).putObject(Mockito.<PutObjectRequest>argThat(request ->
+                        "zstd".equals(request.contentEncoding())
+                                && Map.of(S3Service.ORIGINAL_SIZE_METADATA, "65536").equals(request.metadata())
+                                && request.contentLength() < upload.getSize()),
+                any(RequestBody.class));
+        Mockito.verify(s3Client, Mockito.never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    }
+
+    @Test
+    @DisplayName("Streamed compressed uploads carry their encoding but no original size")
+    public void testStreamedCompressedUploadCarriesEncoding() throws Exception {
+        s3Service.uploadStream("content/streamed/abc", MediaType.APPLICATION_PDF_VALUE,
+                new ByteArrayInputStream(new byte[1024]), ContentEncoding.ZSTD);
+
+        Mockito.verify(s3Client).putObject(Mockito.<PutObjectRequest>argThat(request ->
+                        "zstd".equals(request.contentEncoding()) && request.metadata().isEmpty()),
+                any(RequestBody.class));
+    }
+
+    @Test
+    @DisplayName("Presigned uploads sign the content length and SHA-256")
+    public void testPresignUploadSignsChecksum() {
+        String checksum = "LPJNul+wow4m6DsqxbninhsWHlwfp0JecwQzYpOLmCQ=";
+
+        PresignedPutObjectRequest presigned = s3Service.presignUpload(
+                "content/abc", MediaType.APPLICATION_PDF_VALUE, 5, checksum, Duration.ofMinutes(15));
+
+        String url = presigned.url().toString();
+        assertTrue(url.startsWith("https://test-bucket.s3.amazonaws.com/content/abc?"), url);
+        assertTrue(url.contains("X-Amz-Signature="), url);
+        assertEquals(List.of(checksum), presigned.signedHeaders().get("x-amz-checksum-sha256"));
+        assertEquals(List.of("5"), presigned.signedHeaders().get("content-length"));
+        assertTrue(presigned.expiration().isAfter(Instant.now().plus(Duration.ofMinutes(14))));
+    }
+
+    private long allocatedDuring(MockMultipartFile upload) throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        s3Service.uploadFile(upload);
+        return threadMXBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    private static MockMultipartFile file(int size) {
+        return new MockMultipartFile("file", "upload.bin", MediaType.APPLICATION_PDF_VALUE, new byte[size]);
+    }
+}
@@ -0,0 +1,105 @@
+package edu.csye6225.neu.webapp;
+
+import edu.csye6225.neu.webapp.controller.FileController;
+import edu.csye6225.neu.webapp.exception.EmptyUploadException;
+import edu.csye6225.neu.webapp.exception.GlobalExceptionHandler;
+import edu.csye6225.neu.webapp.service.FileService;
+import edu.csye6225.neu.webapp.service.MetricsService;
+import edu.csye6225.neu.webapp.service.UploadMemoryBudget;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class StreamingUploadControllerTest {
+
+    private static final String BOUNDARY = "upload-boundary";
+
+    private FileService fileService;
+    private UploadMemoryBudget budget;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        fileService = Mockito.mock(FileService.class);
+        MetricsService metricsService = Mockito.mock(MetricsService.class);
+        when(metricsService.timeApiExecution(anyString(), any(Supplier.class)))
+                .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+        budget = new UploadMemoryBudget(metricsService, 1024 * 1024, 1024, Duration.ofSeconds(30));
+
+        FileController controller = new FileController(fileService, metricsService, budget);
+        ReflectionTestUtils.setField(controller, "maxFileSize", 1024L * 1024);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+    }
+
+    @Test
+    @DisplayName("A streamed upload past the in-flight limit is refused before it is read")
+    public void testStreamingUploadRefusedOverCapacity() throws Exception {
+        mockMvc.perform(post("/v1/file/stream")
+                        .contentType("multipart/form-data; boundary=" + BOUNDARY)
+                        .content(body("x".repeat(2048))))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "30"));
+
+        verify(fileService, never()).uploadStream(anyString(), anyString(), any(InputStream.class));
+        assertEquals(0, budget.inFlightBytes());
+    }
+
+    @Test
+    @DisplayName("An empty streamed upload is a 400 and returns its admission")
+    public void testEmptyStreamingUpload() throws Exception {
+        when(fileService.uploadStream(anyString(), anyString(), any(InputStream.class)))
+                .thenThrow(new EmptyUploadException());
+
+        mockMvc.perform(post("/v1/file/stream")
+                        .contentType("multipart/form-data; boundary=" + BOUNDARY)
+                        .content(body("")))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("File cannot be empty"));
+
+        assertEquals(0, budget.inFlightBytes());
+    }
+
+    @Test
+    @DisplayName("Other invalid arguments are not reported as an empty file")
+    public void testStreamingUploadFailureNotReportedAsEmpty() throws Exception {
+        when(fileService.uploadStream(anyString(), anyString(), any(InputStream.class)))
+                .thenThrow(new IllegalArgumentException("Unsupported content encoding: br"));
+
+        mockMvc.perform(post("/v1/file/stream")
+                        .contentType("multipart/form-data; boundary=" + BOUNDARY)
+                        .content(body("hello")))
+                .andExpect(status().isInternalServerError());
+    }
+
+    private static byte[] body(String content) {
+        return ("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"notes.txt\"\r\n"
+                + "Content-Type: text/plain\r\n\r\n"
+                + content + "\r\n"
+                + "--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+}
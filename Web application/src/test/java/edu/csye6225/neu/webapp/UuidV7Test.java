@@ -0,0 +1,58 @@
+package edu.csye6225.neu.webapp;
+
+import edu.csye6225.neu.webapp.entity.UuidV7;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UuidV7Test {
+
+    private static final long NOW = Instant.parse("2025-01-01T00:00:00Z").toEpochMilli();
+
+    @Test
+    @DisplayName("IDs carry version 7, the RFC variant and their creation time")
+    public void testLayout() {
+        UuidV7 generator = new UuidV7(() -> NOW, new Random(1));
+        UUID uuid = generator.next();
+
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+        assertEquals(Instant.ofEpochMilli(NOW), UuidV7.timestamp(uuid));
+        assertEquals(7, UuidV7.generate().version());
+    }
+
+    @Test
+    @DisplayName("IDs increase within a millisecond, past counter overflow and when the clock steps back")
+    public void testMonotonic() {
+        AtomicLong clock = new AtomicLong(NOW);
+        UuidV7 generator = new UuidV7(clock::get, new Random(1));
+
+        UUID previous = generator.next();
+        for (int i = 0; i < 10_000; i++) {
+            if (i == 5_000) {
+                clock.set(NOW - 1_000);
+            }
+            UUID next = generator.next();
+            assertTrue(compareUnsigned(previous, next) < 0, previous + " >= " + next);
+            previous = next;
+        }
+        // 10,000 IDs in one millisecond overflow the 12-bit counter, carrying the timestamp forward
+        assertTrue(UuidV7.timestamp(previous).toEpochMilli() > NOW);
+
+        clock.set(NOW + 60_000);
+        assertEquals(Instant.ofEpochMilli(NOW + 60_000), UuidV7.timestamp(generator.next()));
+    }
+
+    // Postgres compares UUIDs as unsigned bytes, unlike UUID.compareTo
+    private static int compareUnsigned(UUID a, UUID b) {
+        int high = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return high != 0 ? high : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+}